@@ -16,6 +16,7 @@
 
 package org.springframework.cloud.stream.binder.kafka.properties;
 
+import java.time.Duration;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -107,6 +108,60 @@ public class KafkaBinderConfigurationProperties {
 	 */
 	private String headerMapperBeanName;
 
+	/**
+	 * When true, producer bindings and DLQ senders with an equivalent effective
+	 * configuration share a single, reference-counted producer.
+	 */
+	private boolean producerPoolEnabled;
+
+	/**
+	 * When set, consumer lag is sampled in the background at this interval and the lag
+	 * gauges report the cached sample, instead of querying the broker on each read.
+	 */
+	private Duration lagRefreshInterval;
+
+	/**
+	 * Age after which a lag sample is no longer reported; defaults to three times the
+	 * refresh interval.
+	 */
+	private Duration lagStaleness;
+
+	/**
+	 * When true (and lag sampling is enabled), a lag gauge is also registered for each
+	 * partition.
+	 */
+	private boolean partitionLagMetricsEnabled;
+
+	/**
+	 * When true (and lag sampling is enabled), gauges reporting the age of the oldest
+	 * unconsumed record are registered.
+	 */
+	private boolean timeLagMetricsEnabled;
+
+	/**
+	 * When true, the native metrics of the consumers and producers created by the binder
+	 * are registered with the {@code MeterRegistry}.
+	 */
+	private boolean clientMetricsEnabled;
+
+	/**
+	 * When true, topic provisioning uses a single, long-lived admin client and the
+	 * metadata of all declared destinations is fetched with one batched request.
+	 */
+	private boolean batchProvisioningEnabled;
+
+	/**
+	 * How long the topic metadata fetched for batch provisioning is used before it is
+	 * fetched again.
+	 */
+	private Duration batchProvisioningMetadataTtl = Duration.ofSeconds(30);
+
+	/**
+	 * When set, the partition count of the topics of producer bindings is refreshed at
+	 * this interval, so that partitions added at runtime are used without a restart.
+	 */
+	private Duration partitionRefreshInterval;
+
 	public KafkaBinderConfigurationProperties(KafkaProperties kafkaProperties) {
 		Assert.notNull(kafkaProperties, "'kafkaProperties' cannot be null");
 		this.kafkaProperties = kafkaProperties;
@@ -346,6 +401,78 @@ public class KafkaBinderConfigurationProperties {
 		this.headerMapperBeanName = headerMapperBeanName;
 	}
 
+	public boolean isProducerPoolEnabled() {
+		return this.producerPoolEnabled;
+	}
+
+	public void setProducerPoolEnabled(boolean producerPoolEnabled) {
+		this.producerPoolEnabled = producerPoolEnabled;
+	}
+
+	public Duration getLagRefreshInterval() {
+		return this.lagRefreshInterval;
+	}
+
+	public void setLagRefreshInterval(Duration lagRefreshInterval) {
+		this.lagRefreshInterval = lagRefreshInterval;
+	}
+
+	public Duration getLagStaleness() {
+		return this.lagStaleness;
+	}
+
+	public void setLagStaleness(Duration lagStaleness) {
+		this.lagStaleness = lagStaleness;
+	}
+
+	public boolean isPartitionLagMetricsEnabled() {
+		return this.partitionLagMetricsEnabled;
+	}
+
+	public void setPartitionLagMetricsEnabled(boolean partitionLagMetricsEnabled) {
+		this.partitionLagMetricsEnabled = partitionLagMetricsEnabled;
+	}
+
+	public boolean isTimeLagMetricsEnabled() {
+		return this.timeLagMetricsEnabled;
+	}
+
+	public void setTimeLagMetricsEnabled(boolean timeLagMetricsEnabled) {
+		this.timeLagMetricsEnabled = timeLagMetricsEnabled;
+	}
+
+	public boolean isClientMetricsEnabled() {
+		return this.clientMetricsEnabled;
+	}
+
+	public void setClientMetricsEnabled(boolean clientMetricsEnabled) {
+		this.clientMetricsEnabled = clientMetricsEnabled;
+	}
+
+	public boolean isBatchProvisioningEnabled() {
+		return this.batchProvisioningEnabled;
+	}
+
+	public void setBatchProvisioningEnabled(boolean batchProvisioningEnabled) {
+		this.batchProvisioningEnabled = batchProvisioningEnabled;
+	}
+
+	public Duration getBatchProvisioningMetadataTtl() {
+		return this.batchProvisioningMetadataTtl;
+	}
+
+	public void setBatchProvisioningMetadataTtl(Duration batchProvisioningMetadataTtl) {
+		this.batchProvisioningMetadataTtl = batchProvisioningMetadataTtl;
+	}
+
+	public Duration getPartitionRefreshInterval() {
+		return this.partitionRefreshInterval;
+	}
+
+	public void setPartitionRefreshInterval(Duration partitionRefreshInterval) {
+		this.partitionRefreshInterval = partitionRefreshInterval;
+	}
+
 	/**
 	 * Domain class that models transaction capabilities in Kafka.
 	 */
@@ -355,6 +482,18 @@ public class KafkaBinderConfigurationProperties {
 
 		private String transactionIdPrefix;
 
+		/**
+		 * The number of records of a record listener whose consumer transactions are
+		 * committed in one Kafka transaction; 1 commits each one.
+		 */
+		private int commitBatchSize = 1;
+
+		/**
+		 * The maximum time a Kafka transaction is kept open when the commit batch size is
+		 * greater than 1.
+		 */
+		private Duration commitBatchTimeout = Duration.ofMillis(100);
+
 		public String getTransactionIdPrefix() {
 			return this.transactionIdPrefix;
 		}
@@ -363,6 +502,22 @@ public class KafkaBinderConfigurationProperties {
 			this.transactionIdPrefix = transactionIdPrefix;
 		}
 
+		public int getCommitBatchSize() {
+			return this.commitBatchSize;
+		}
+
+		public void setCommitBatchSize(int commitBatchSize) {
+			this.commitBatchSize = commitBatchSize;
+		}
+
+		public Duration getCommitBatchTimeout() {
+			return this.commitBatchTimeout;
+		}
+
+		public void setCommitBatchTimeout(Duration commitBatchTimeout) {
+			this.commitBatchTimeout = commitBatchTimeout;
+		}
+
 		public CombinedProducerProperties getProducer() {
 			return this.producer;
 		}
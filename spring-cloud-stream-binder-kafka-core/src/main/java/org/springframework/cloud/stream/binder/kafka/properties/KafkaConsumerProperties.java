@@ -16,6 +16,7 @@
 
 package org.springframework.cloud.stream.binder.kafka.properties;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -125,6 +126,24 @@ public class KafkaConsumerProperties {
 	 */
 	private long pollTimeout = org.springframework.kafka.listener.ConsumerProperties.DEFAULT_POLL_TIMEOUT;
 
+	/**
+	 * Delays of the retry topics that failed records are republished to, in order,
+	 * instead of retrying on the consumer thread.
+	 */
+	private Duration[] retryTopicDelays;
+
+	/**
+	 * Number of workers that records are dispatched to, by key, within each partition;
+	 * 0 disables key-ordered processing.
+	 */
+	private int keyOrderedConcurrency;
+
+	/**
+	 * Number of records queued for a key-ordered worker at which the partition of the
+	 * last queued record is paused, until the queue is half empty again.
+	 */
+	private int keyOrderedQueueCapacity = 256;
+
 	public boolean isAckEachRecord() {
 		return this.ackEachRecord;
 	}
@@ -288,4 +307,28 @@ public class KafkaConsumerProperties {
 	public void setPollTimeout(long pollTimeout) {
 		this.pollTimeout = pollTimeout;
 	}
+
+	public Duration[] getRetryTopicDelays() {
+		return this.retryTopicDelays;
+	}
+
+	public void setRetryTopicDelays(Duration[] retryTopicDelays) {
+		this.retryTopicDelays = retryTopicDelays;
+	}
+
+	public int getKeyOrderedConcurrency() {
+		return this.keyOrderedConcurrency;
+	}
+
+	public void setKeyOrderedConcurrency(int keyOrderedConcurrency) {
+		this.keyOrderedConcurrency = keyOrderedConcurrency;
+	}
+
+	public int getKeyOrderedQueueCapacity() {
+		return this.keyOrderedQueueCapacity;
+	}
+
+	public void setKeyOrderedQueueCapacity(int keyOrderedQueueCapacity) {
+		this.keyOrderedQueueCapacity = keyOrderedQueueCapacity;
+	}
 }
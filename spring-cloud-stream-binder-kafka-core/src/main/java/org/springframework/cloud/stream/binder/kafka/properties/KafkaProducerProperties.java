@@ -55,6 +55,14 @@ public class KafkaProducerProperties {
 
 	private String recordMetadataChannel;
 
+	private boolean messageKeyPassthrough;
+
+	private int maxInFlight;
+
+	private long maxInFlightTimeout = 60000;
+
+	private boolean batchMode;
+
 	public int getBufferSize() {
 		return this.bufferSize;
 	}
@@ -144,6 +152,38 @@ public class KafkaProducerProperties {
 		this.recordMetadataChannel = recordMetadataChannel;
 	}
 
+	public boolean isMessageKeyPassthrough() {
+		return this.messageKeyPassthrough;
+	}
+
+	public void setMessageKeyPassthrough(boolean messageKeyPassthrough) {
+		this.messageKeyPassthrough = messageKeyPassthrough;
+	}
+
+	public int getMaxInFlight() {
+		return this.maxInFlight;
+	}
+
+	public void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = maxInFlight;
+	}
+
+	public long getMaxInFlightTimeout() {
+		return this.maxInFlightTimeout;
+	}
+
+	public void setMaxInFlightTimeout(long maxInFlightTimeout) {
+		this.maxInFlightTimeout = maxInFlightTimeout;
+	}
+
+	public boolean isBatchMode() {
+		return this.batchMode;
+	}
+
+	public void setBatchMode(boolean batchMode) {
+		this.batchMode = batchMode;
+	}
+
 	/**
 	 * Enumeration for compression types.
 	 */
@@ -16,8 +16,13 @@
 
 package org.springframework.cloud.stream.binder.kafka.provisioning;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -42,6 +47,7 @@ import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.errors.TopicExistsException;
 import org.apache.kafka.common.errors.UnknownTopicOrPartitionException;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.cloud.stream.binder.BinderException;
@@ -79,7 +85,7 @@ public class KafkaTopicProvisioner implements
 		// @checkstyle:off
 		ProvisioningProvider<ExtendedConsumerProperties<KafkaConsumerProperties>, ExtendedProducerProperties<KafkaProducerProperties>>,
 		// @checkstyle:on
-		InitializingBean {
+		InitializingBean, DisposableBean {
 
 	private static final Log logger = LogFactory.getLog(KafkaTopicProvisioner.class);
 
@@ -91,8 +97,20 @@ public class KafkaTopicProvisioner implements
 
 	private final Map<String, Object> adminClientProperties;
 
+	private final Object metadataMonitor = new Object();
+
+	private final Map<String, Integer> partitionCounts = new HashMap<>();
+
 	private RetryOperations metadataRetryOperations;
 
+	private Set<String> declaredTopics = Collections.emptySet();
+
+	private AdminClient sharedAdminClient;
+
+	private Set<String> existingTopics;
+
+	private long metadataLoaded;
+
 	public KafkaTopicProvisioner(
 			KafkaBinderConfigurationProperties kafkaBinderConfigurationProperties,
 			KafkaProperties kafkaProperties) {
@@ -111,6 +129,18 @@ public class KafkaTopicProvisioner implements
 		this.metadataRetryOperations = metadataRetryOperations;
 	}
 
+	/**
+	 * Set the topics that are expected to be provisioned (destinations, DLQs and retry
+	 * topics); when batch provisioning is enabled, they are described with a single
+	 * request before the first destination is provisioned.
+	 * @param declaredTopics the topics.
+	 * @since 3.0
+	 * @see KafkaBinderConfigurationProperties#isBatchProvisioningEnabled()
+	 */
+	public void setDeclaredTopics(Collection<String> declaredTopics) {
+		this.declaredTopics = new LinkedHashSet<>(declaredTopics);
+	}
+
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		if (this.metadataRetryOperations == null) {
@@ -129,6 +159,18 @@ public class KafkaTopicProvisioner implements
 		}
 	}
 
+	@Override
+	public void destroy() {
+		synchronized (this.metadataMonitor) {
+			if (this.sharedAdminClient != null) {
+				this.sharedAdminClient.close(Duration.ofSeconds(this.operationTimeout));
+				this.sharedAdminClient = null;
+			}
+			this.existingTopics = null;
+			this.partitionCounts.clear();
+		}
+	}
+
 	@Override
 	public ProducerDestination provisionProducerDestination(final String name,
 			ExtendedProducerProperties<KafkaProducerProperties> properties) {
@@ -137,29 +179,25 @@ public class KafkaTopicProvisioner implements
 			this.logger.info("Using kafka topic for outbound: " + name);
 		}
 		KafkaTopicUtils.validateTopicName(name);
-		try (AdminClient adminClient = AdminClient.create(this.adminClientProperties)) {
+		AdminClient adminClient = obtainAdminClient();
+		try {
 			createTopic(adminClient, name, properties.getPartitionCount(), false,
 					properties.getExtension().getTopic());
 			int partitions = 0;
 			if (this.configurationProperties.isAutoCreateTopics()) {
-				DescribeTopicsResult describeTopicsResult = adminClient
-						.describeTopics(Collections.singletonList(name));
-				KafkaFuture<Map<String, TopicDescription>> all = describeTopicsResult
-						.all();
-
-				Map<String, TopicDescription> topicDescriptions = null;
 				try {
-					topicDescriptions = all.get(this.operationTimeout, TimeUnit.SECONDS);
+					partitions = getPartitionCount(adminClient, name);
 				}
 				catch (Exception ex) {
 					throw new ProvisioningException(
 							"Problems encountered with partitions finding", ex);
 				}
-				TopicDescription topicDescription = topicDescriptions.get(name);
-				partitions = topicDescription.partitions().size();
 			}
 			return new KafkaProducerDestination(name, partitions);
 		}
+		finally {
+			releaseAdminClient(adminClient);
+		}
 	}
 
 	@Override
@@ -185,6 +223,8 @@ public class KafkaTopicProvisioner implements
 		if (properties.getExtension().isDestinationIsPattern()) {
 			Assert.isTrue(!properties.getExtension().isEnableDlq(),
 					"enableDLQ is not allowed when listening to topic patterns");
+			Assert.isTrue(ObjectUtils.isEmpty(properties.getExtension().getRetryTopicDelays()),
+					"retryTopicDelays is not allowed when listening to topic patterns");
 			if (this.logger.isDebugEnabled()) {
 				this.logger.debug("Listening to a topic pattern - " + name
 						+ " - no provisioning performed");
@@ -195,25 +235,23 @@ public class KafkaTopicProvisioner implements
 		boolean anonymous = !StringUtils.hasText(group);
 		Assert.isTrue(!anonymous || !properties.getExtension().isEnableDlq(),
 				"DLQ support is not available for anonymous subscriptions");
+		Assert.isTrue(!anonymous || ObjectUtils.isEmpty(properties.getExtension().getRetryTopicDelays()),
+				"Retry topics are not available for anonymous subscriptions");
 		if (properties.getInstanceCount() == 0) {
 			throw new IllegalArgumentException("Instance count cannot be zero");
 		}
 		int partitionCount = properties.getInstanceCount() * properties.getConcurrency();
 		ConsumerDestination consumerDestination = new KafkaConsumerDestination(name);
-		try (AdminClient adminClient = createAdminClient()) {
+		AdminClient adminClient = obtainAdminClient();
+		try {
 			createTopic(adminClient, name, partitionCount,
 					properties.getExtension().isAutoRebalanceEnabled(),
 					properties.getExtension().getTopic());
 			if (this.configurationProperties.isAutoCreateTopics()) {
-				DescribeTopicsResult describeTopicsResult = adminClient
-						.describeTopics(Collections.singletonList(name));
-				KafkaFuture<Map<String, TopicDescription>> all = describeTopicsResult
-						.all();
 				try {
-					Map<String, TopicDescription> topicDescriptions = all
-							.get(this.operationTimeout, TimeUnit.SECONDS);
-					TopicDescription topicDescription = topicDescriptions.get(name);
-					int partitions = topicDescription.partitions().size();
+					int partitions = getPartitionCount(adminClient, name);
+					createRetryTopicsIfNeedBe(adminClient, name, group, properties,
+							partitions);
 					consumerDestination = createDlqIfNeedBe(adminClient, name, group,
 							properties, anonymous, partitions);
 					if (consumerDestination == null) {
@@ -226,6 +264,9 @@ public class KafkaTopicProvisioner implements
 				}
 			}
 		}
+		finally {
+			releaseAdminClient(adminClient);
+		}
 		return consumerDestination;
 	}
 
@@ -233,6 +274,127 @@ public class KafkaTopicProvisioner implements
 		return AdminClient.create(this.adminClientProperties);
 	}
 
+	private AdminClient obtainAdminClient() {
+		if (!this.configurationProperties.isBatchProvisioningEnabled()) {
+			return createAdminClient();
+		}
+		synchronized (this.metadataMonitor) {
+			if (this.sharedAdminClient == null) {
+				this.sharedAdminClient = createAdminClient();
+			}
+			return this.sharedAdminClient;
+		}
+	}
+
+	private void releaseAdminClient(AdminClient adminClient) {
+		synchronized (this.metadataMonitor) {
+			if (adminClient == this.sharedAdminClient) {
+				return;
+			}
+		}
+		adminClient.close();
+	}
+
+	/*
+	 * With batch provisioning, the first call lists the topics and describes all the
+	 * declared topics that exist; the results are then maintained as topics are created
+	 * or enlarged.
+	 */
+	private void loadMetadata(AdminClient adminClient) throws Exception {
+		synchronized (this.metadataMonitor) {
+			expireMetadata();
+			if (this.existingTopics == null) {
+				Set<String> names = new HashSet<>(adminClient.listTopics().names()
+						.get(this.operationTimeout, TimeUnit.SECONDS));
+				List<String> toDescribe = new ArrayList<>();
+				for (String topic : this.declaredTopics) {
+					if (names.contains(topic)) {
+						toDescribe.add(topic);
+					}
+				}
+				if (!toDescribe.isEmpty()) {
+					adminClient.describeTopics(toDescribe).all()
+							.get(this.operationTimeout, TimeUnit.SECONDS)
+							.forEach((topic, description) -> this.partitionCounts.put(topic,
+									description.partitions().size()));
+				}
+				this.existingTopics = names;
+				this.metadataLoaded = System.currentTimeMillis();
+			}
+		}
+	}
+
+	private void expireMetadata() {
+		if (this.existingTopics != null && System.currentTimeMillis() - this.metadataLoaded
+				> this.configurationProperties.getBatchProvisioningMetadataTtl().toMillis()) {
+			this.existingTopics = null;
+			this.partitionCounts.clear();
+		}
+	}
+
+	/**
+	 * Forget the partition count of a topic fetched for batch provisioning, for example
+	 * because partitions have been added to it; it is fetched again when needed.
+	 * @param topicName the topic.
+	 * @since 3.0
+	 */
+	public void evictMetadata(String topicName) {
+		synchronized (this.metadataMonitor) {
+			this.partitionCounts.remove(topicName);
+		}
+	}
+
+	private boolean topicExists(AdminClient adminClient, String topicName) throws Exception {
+		if (!this.configurationProperties.isBatchProvisioningEnabled()) {
+			ListTopicsResult listTopicsResult = adminClient.listTopics();
+			KafkaFuture<Set<String>> namesFutures = listTopicsResult.names();
+			return namesFutures.get(this.operationTimeout, TimeUnit.SECONDS).contains(topicName);
+		}
+		synchronized (this.metadataMonitor) {
+			loadMetadata(adminClient);
+			return this.existingTopics.contains(topicName);
+		}
+	}
+
+	private int getPartitionCount(AdminClient adminClient, String topicName) throws Exception {
+		if (this.configurationProperties.isBatchProvisioningEnabled()) {
+			synchronized (this.metadataMonitor) {
+				expireMetadata();
+				Integer partitionCount = this.partitionCounts.get(topicName);
+				if (partitionCount != null) {
+					return partitionCount;
+				}
+			}
+		}
+		DescribeTopicsResult describeTopicsResult = adminClient
+				.describeTopics(Collections.singletonList(topicName));
+		KafkaFuture<Map<String, TopicDescription>> topicDescriptionsFuture = describeTopicsResult
+				.all();
+		Map<String, TopicDescription> topicDescriptions = topicDescriptionsFuture
+				.get(this.operationTimeout, TimeUnit.SECONDS);
+		int partitionCount = topicDescriptions.get(topicName).partitions().size();
+		updateMetadata(topicName, partitionCount);
+		return partitionCount;
+	}
+
+	/*
+	 * Record a topic that exists with the partition count, or with an unknown partition
+	 * count when null.
+	 */
+	private void updateMetadata(String topicName, Integer partitionCount) {
+		synchronized (this.metadataMonitor) {
+			if (this.existingTopics != null) {
+				this.existingTopics.add(topicName);
+				if (partitionCount != null) {
+					this.partitionCounts.put(topicName, partitionCount);
+				}
+				else {
+					this.partitionCounts.remove(topicName);
+				}
+			}
+		}
+	}
+
 	/**
 	 * In general, binder properties supersede boot kafka properties. The one exception is
 	 * the bootstrap servers. In that case, we should only override the boot properties if
@@ -300,6 +462,32 @@ public class KafkaTopicProvisioner implements
 		return null;
 	}
 
+	private void createRetryTopicsIfNeedBe(AdminClient adminClient, String name,
+			String group, ExtendedConsumerProperties<KafkaConsumerProperties> properties,
+			int partitions) {
+
+		Duration[] retryTopicDelays = properties.getExtension().getRetryTopicDelays();
+		if (!ObjectUtils.isEmpty(retryTopicDelays)) {
+			for (Duration delay : retryTopicDelays) {
+				String retryTopic = KafkaTopicUtils.retryTopicName(name, group, delay);
+				KafkaTopicUtils.validateTopicName(retryTopic);
+				try {
+					createTopicAndPartitions(adminClient, retryTopic, partitions,
+							properties.getExtension().isAutoRebalanceEnabled(),
+							properties.getExtension().getTopic());
+				}
+				catch (Throwable throwable) {
+					if (throwable instanceof Error) {
+						throw (Error) throwable;
+					}
+					else {
+						throw new ProvisioningException("provisioning exception", throwable);
+					}
+				}
+			}
+		}
+	}
+
 	private void createTopic(AdminClient adminClient, String name, int partitionCount,
 			boolean tolerateLowerPartitionsOnBroker, KafkaTopicProperties properties) {
 		try {
@@ -349,11 +537,7 @@ public class KafkaTopicProvisioner implements
 			final int partitionCount, boolean tolerateLowerPartitionsOnBroker,
 			KafkaTopicProperties topicProperties) throws Throwable {
 
-		ListTopicsResult listTopicsResult = adminClient.listTopics();
-		KafkaFuture<Set<String>> namesFutures = listTopicsResult.names();
-
-		Set<String> names = namesFutures.get(this.operationTimeout, TimeUnit.SECONDS);
-		if (names.contains(topicName)) {
+		if (topicExists(adminClient, topicName)) {
 			// only consider minPartitionCount for resizing if autoAddPartitions is true
 			int effectivePartitionCount = this.configurationProperties
 					.isAutoAddPartitions()
@@ -361,20 +545,14 @@ public class KafkaTopicProvisioner implements
 									this.configurationProperties.getMinPartitionCount(),
 									partitionCount)
 							: partitionCount;
-			DescribeTopicsResult describeTopicsResult = adminClient
-					.describeTopics(Collections.singletonList(topicName));
-			KafkaFuture<Map<String, TopicDescription>> topicDescriptionsFuture = describeTopicsResult
-					.all();
-			Map<String, TopicDescription> topicDescriptions = topicDescriptionsFuture
-					.get(this.operationTimeout, TimeUnit.SECONDS);
-			TopicDescription topicDescription = topicDescriptions.get(topicName);
-			int partitionSize = topicDescription.partitions().size();
+			int partitionSize = getPartitionCount(adminClient, topicName);
 			if (partitionSize < effectivePartitionCount) {
 				if (this.configurationProperties.isAutoAddPartitions()) {
 					CreatePartitionsResult partitions = adminClient
 							.createPartitions(Collections.singletonMap(topicName,
 									NewPartitions.increaseTo(effectivePartitionCount)));
 					partitions.all().get(this.operationTimeout, TimeUnit.SECONDS);
+					updateMetadata(topicName, effectivePartitionCount);
 				}
 				else if (tolerateLowerPartitionsOnBroker) {
 					this.logger.warn("The number of expected partitions was: "
@@ -422,6 +600,9 @@ public class KafkaTopicProvisioner implements
 						.createTopics(Collections.singletonList(newTopic));
 				try {
 					createTopicsResult.all().get(this.operationTimeout, TimeUnit.SECONDS);
+					updateMetadata(topicName, replicasAssignments != null && replicasAssignments.size() > 0
+							? replicasAssignments.size()
+							: effectivePartitionCount);
 				}
 				catch (Exception ex) {
 					if (ex instanceof ExecutionException) {
@@ -430,6 +611,7 @@ public class KafkaTopicProvisioner implements
 								this.logger.warn("Attempt to create topic: " + topicName
 										+ ". Topic already exists.");
 							}
+							updateMetadata(topicName, null);
 						}
 						else {
 							this.logger.error("Failed to create topics", ex.getCause());
@@ -470,8 +652,8 @@ public class KafkaTopicProvisioner implements
 				// In some cases, the above partition query may not throw an UnknownTopic..Exception for various reasons.
 				// For that, we are forcing another query to ensure that the topic is present on the server.
 				if (CollectionUtils.isEmpty(partitions)) {
-					try (AdminClient adminClient = AdminClient
-							.create(this.adminClientProperties)) {
+					AdminClient adminClient = obtainAdminClient();
+					try {
 						final DescribeTopicsResult describeTopicsResult = adminClient
 							.describeTopics(Collections.singletonList(topicName));
 
@@ -487,6 +669,9 @@ public class KafkaTopicProvisioner implements
 									+ "). This will affect the health check.");
 						}
 					}
+					finally {
+						releaseAdminClient(adminClient);
+					}
 				}
 				// do a sanity check on the partition set
 				int partitionSize = CollectionUtils.isEmpty(partitions) ? 0 : partitions.size();
@@ -17,6 +17,7 @@
 package org.springframework.cloud.stream.binder.kafka.utils;
 
 import java.io.UnsupportedEncodingException;
+import java.time.Duration;
 
 /**
  * Utility methods releated to Kafka topics.
@@ -51,4 +52,30 @@ public final class KafkaTopicUtils {
 		}
 	}
 
+	/**
+	 * Return the name of the retry topic for the given delay; for example
+	 * {@code retry-10s.<topic>.<group>}.
+	 * @param topic the name of the topic the failed record was consumed from.
+	 * @param group the consumer group.
+	 * @param delay the retry delay.
+	 * @return the retry topic name.
+	 */
+	public static String retryTopicName(String topic, String group, Duration delay) {
+		return "retry-" + delayToString(delay) + "." + topic + "." + group;
+	}
+
+	private static String delayToString(Duration delay) {
+		long millis = delay.toMillis();
+		if (millis % 3_600_000 == 0) {
+			return (millis / 3_600_000) + "h";
+		}
+		else if (millis % 60_000 == 0) {
+			return (millis / 60_000) + "m";
+		}
+		else if (millis % 1000 == 0) {
+			return (millis / 1000) + "s";
+		}
+		return millis + "ms";
+	}
+
 }
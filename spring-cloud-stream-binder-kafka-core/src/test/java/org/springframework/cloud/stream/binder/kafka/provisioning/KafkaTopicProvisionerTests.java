@@ -16,24 +16,46 @@
 
 package org.springframework.cloud.stream.binder.kafka.provisioning;
 
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.kafka.clients.CommonClientConfigs;
 import org.apache.kafka.clients.admin.AdminClient;
 import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.CreateTopicsResult;
+import org.apache.kafka.clients.admin.DescribeTopicsResult;
+import org.apache.kafka.clients.admin.ListTopicsResult;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.TopicPartitionInfo;
 import org.apache.kafka.common.config.SslConfigs;
 import org.apache.kafka.common.network.SslChannelBuilder;
 import org.junit.Test;
 
 import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.cloud.stream.binder.ExtendedConsumerProperties;
+import org.springframework.cloud.stream.binder.ExtendedProducerProperties;
 import org.springframework.cloud.stream.binder.kafka.properties.KafkaBinderConfigurationProperties;
+import org.springframework.cloud.stream.binder.kafka.properties.KafkaConsumerProperties;
+import org.springframework.cloud.stream.binder.kafka.properties.KafkaProducerProperties;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.kafka.test.utils.KafkaTestUtils;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 /**
  * @author Gary Russell
@@ -115,4 +137,78 @@ public class KafkaTopicProvisionerTests {
 		}
 	}
 
+	@Test
+	@SuppressWarnings("unchecked")
+	public void batchProvisioningUsesOneAdminClient() throws Exception {
+		KafkaProperties bootConfig = new KafkaProperties();
+		KafkaBinderConfigurationProperties binderConfig = new KafkaBinderConfigurationProperties(
+				bootConfig);
+		binderConfig.setBatchProvisioningEnabled(true);
+		AdminClient adminClient = mock(AdminClient.class);
+		ListTopicsResult listTopicsResult = mock(ListTopicsResult.class);
+		given(listTopicsResult.names()).willReturn(
+				KafkaFuture.completedFuture(new HashSet<>(Arrays.asList("foo", "bar", "other"))));
+		given(adminClient.listTopics()).willReturn(listTopicsResult);
+		Map<String, TopicDescription> descriptions = new HashMap<>();
+		descriptions.put("foo", description("foo", 2));
+		descriptions.put("bar", description("bar", 1));
+		DescribeTopicsResult describeTopicsResult = mock(DescribeTopicsResult.class);
+		given(describeTopicsResult.all()).willReturn(KafkaFuture.completedFuture(descriptions));
+		given(adminClient.describeTopics(anyCollection())).willReturn(describeTopicsResult);
+		CreateTopicsResult createTopicsResult = mock(CreateTopicsResult.class);
+		given(createTopicsResult.all()).willReturn(KafkaFuture.completedFuture(null));
+		given(adminClient.createTopics(anyCollection())).willReturn(createTopicsResult);
+		AtomicInteger created = new AtomicInteger();
+		KafkaTopicProvisioner provisioner = new KafkaTopicProvisioner(binderConfig, bootConfig) {
+
+			@Override
+			AdminClient createAdminClient() {
+				created.incrementAndGet();
+				return adminClient;
+			}
+
+		};
+		provisioner.setDeclaredTopics(Arrays.asList("foo", "bar", "baz"));
+		provisioner.afterPropertiesSet();
+
+		provisioner.provisionProducerDestination("foo",
+				new ExtendedProducerProperties<>(new KafkaProducerProperties()));
+		provisioner.provisionProducerDestination("baz",
+				new ExtendedProducerProperties<>(new KafkaProducerProperties()));
+		provisioner.provisionConsumerDestination("bar", "group",
+				new ExtendedConsumerProperties<>(new KafkaConsumerProperties()));
+		provisioner.provisionConsumerDestination("baz", "group",
+				new ExtendedConsumerProperties<>(new KafkaConsumerProperties()));
+
+		assertThat(created.get()).isEqualTo(1);
+		verify(adminClient, times(1)).listTopics();
+		verify(adminClient, times(1)).describeTopics(Arrays.asList("foo", "bar"));
+		verify(adminClient, times(1)).describeTopics(anyCollection());
+		verify(adminClient, times(1)).createTopics(anyCollection());
+		verify(adminClient, never()).close();
+
+		provisioner.evictMetadata("foo");
+		provisioner.provisionProducerDestination("foo",
+				new ExtendedProducerProperties<>(new KafkaProducerProperties()));
+		verify(adminClient, times(1)).describeTopics(Collections.singletonList("foo"));
+		verify(adminClient, times(1)).listTopics();
+
+		binderConfig.setBatchProvisioningMetadataTtl(Duration.ZERO);
+		Thread.sleep(10);
+		provisioner.provisionProducerDestination("foo",
+				new ExtendedProducerProperties<>(new KafkaProducerProperties()));
+		verify(adminClient, times(2)).listTopics();
+		provisioner.destroy();
+		verify(adminClient).close(any(Duration.class));
+	}
+
+	private static TopicDescription description(String topic, int partitions) {
+		TopicPartitionInfo[] infos = new TopicPartitionInfo[partitions];
+		for (int i = 0; i < partitions; i++) {
+			infos[i] = new TopicPartitionInfo(i, null, Collections.emptyList(),
+					Collections.emptyList());
+		}
+		return new TopicDescription(topic, false, Arrays.asList(infos));
+	}
+
 }
@@ -45,6 +45,7 @@ import org.springframework.cloud.stream.binder.kafka.properties.KafkaConsumerPro
 import org.springframework.cloud.stream.binder.kafka.streams.properties.KafkaStreamsBinderConfigurationProperties;
 import org.springframework.cloud.stream.binder.kafka.streams.properties.KafkaStreamsConsumerProperties;
 import org.springframework.cloud.stream.binder.kafka.streams.properties.KafkaStreamsExtendedBindingProperties;
+import org.springframework.cloud.stream.binder.kafka.streams.properties.KafkaStreamsStateStoreProperties;
 import org.springframework.cloud.stream.config.BindingProperties;
 import org.springframework.cloud.stream.config.BindingServiceProperties;
 import org.springframework.context.ApplicationContext;
@@ -311,18 +312,40 @@ public abstract class AbstractKafkaStreamsBinderProcessor implements Application
 		}
 	}
 
+	/**
+	 * Make the RocksDB settings of a store available to the binder provided
+	 * {@link KafkaStreamsRocksDBConfigSetter}, when it is enabled.
+	 * @param storeProperties the store properties.
+	 */
+	@SuppressWarnings("unchecked")
+	protected void registerStateStoreProperties(KafkaStreamsStateStoreProperties storeProperties) {
+		Map<String, Object> streamConfigGlobalProperties = this.applicationContext
+				.getBean("streamConfigGlobalProperties", Map.class);
+		Map<String, KafkaStreamsStateStoreProperties> stores =
+				(Map<String, KafkaStreamsStateStoreProperties>) streamConfigGlobalProperties
+						.get(KafkaStreamsRocksDBConfigSetter.STORE_PROPERTIES_CONFIG);
+		if (stores != null) {
+			stores.put(storeProperties.getName(), storeProperties);
+		}
+	}
+
 	private <K, V> KTable<K, V> materializedAs(StreamsBuilder streamsBuilder, String destination, String storeName,
 											Serde<K> k, Serde<V> v, Topology.AutoOffsetReset autoOffsetReset, KafkaStreamsConsumerProperties kafkaStreamsConsumerProperties) {
 
 		final Consumed<K, V> consumed = getConsumed(kafkaStreamsConsumerProperties, k, v, autoOffsetReset);
 		return streamsBuilder.table(this.bindingServiceProperties.getBindingDestination(destination),
-				consumed, getMaterialized(storeName, k, v));
+				consumed, getMaterialized(storeName, k, v, kafkaStreamsConsumerProperties));
 	}
 
 	private <K, V> Materialized<K, V, KeyValueStore<Bytes, byte[]>> getMaterialized(
-			String storeName, Serde<K> k, Serde<V> v) {
-		return Materialized.<K, V, KeyValueStore<Bytes, byte[]>>as(storeName)
-				.withKeySerde(k).withValueSerde(v);
+			String storeName, Serde<K> k, Serde<V> v, KafkaStreamsConsumerProperties kafkaStreamsConsumerProperties) {
+		KafkaStreamsStateStoreProperties.Storage storage = kafkaStreamsConsumerProperties.getMaterializedAsStorage();
+		Materialized<K, V, KeyValueStore<Bytes, byte[]>> materialized = storage == null
+				|| storage == KafkaStreamsStateStoreProperties.Storage.PERSISTENT
+						? Materialized.as(storeName)
+						: Materialized.as(KafkaStreamsBinderUtils.keyValueStoreSupplier(storeName, storage,
+								kafkaStreamsConsumerProperties.getMaterializedAsMaxEntries()));
+		return materialized.withKeySerde(k).withValueSerde(v);
 	}
 
 	private <K, V> GlobalKTable<K, V> materializedAsGlobalKTable(
@@ -332,7 +355,7 @@ public abstract class AbstractKafkaStreamsBinderProcessor implements Application
 		return streamsBuilder.globalTable(
 				this.bindingServiceProperties.getBindingDestination(destination),
 				consumed,
-				getMaterialized(storeName, k, v));
+				getMaterialized(storeName, k, v, kafkaStreamsConsumerProperties));
 	}
 
 	private GlobalKTable<?, ?> getGlobalKTable(KafkaStreamsConsumerProperties kafkaStreamsConsumerProperties,
@@ -16,25 +16,47 @@
 
 package org.springframework.cloud.stream.binder.kafka.streams;
 
-import java.util.Iterator;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.common.serialization.Serializer;
 import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.StreamsConfig;
 import org.apache.kafka.streams.errors.InvalidStateStoreException;
 import org.apache.kafka.streams.state.HostInfo;
 import org.apache.kafka.streams.state.QueryableStoreType;
+import org.apache.kafka.streams.state.QueryableStoreTypes;
+import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
 import org.apache.kafka.streams.state.StreamsMetadata;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cloud.stream.binder.kafka.streams.properties.KafkaStreamsBinderConfigurationProperties;
+import org.springframework.kafka.config.StreamsBuilderFactoryBean;
 import org.springframework.retry.RetryPolicy;
 import org.springframework.retry.backoff.FixedBackOffPolicy;
 import org.springframework.retry.policy.SimpleRetryPolicy;
 import org.springframework.retry.support.RetryTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.util.StringUtils;
 
 /**
@@ -47,7 +69,7 @@ import org.springframework.util.StringUtils;
  * @author Renwei Han
  * @since 2.1.0
  */
-public class InteractiveQueryService {
+public class InteractiveQueryService implements DisposableBean {
 
 	private static final Log LOG = LogFactory.getLog(InteractiveQueryService.class);
 
@@ -55,6 +77,18 @@ public class InteractiveQueryService {
 
 	private final KafkaStreamsBinderConfigurationProperties binderConfigurationProperties;
 
+	private final Map<StoreKey, CachedStore> stores = new ConcurrentHashMap<>();
+
+	private final Map<String, StoreSerdes> exposedStores = new ConcurrentHashMap<>();
+
+	private final Map<String, RemoteQueryCache> nearCaches = new ConcurrentHashMap<>();
+
+	private volatile RetryTemplate retryTemplate;
+
+	private volatile RemoteQueryClient remoteQueryClient;
+
+	private ExecutorService remoteQueryExecutor;
+
 	/**
 	 * Constructor for InteractiveQueryService.
 	 * @param kafkaStreamsRegistry holding {@link KafkaStreamsRegistry}
@@ -68,43 +102,267 @@ public class InteractiveQueryService {
 
 	/**
 	 * Retrieve and return a queryable store by name created in the application.
+	 *
+	 * Stores are cached by name and type once found. A cached store is returned as long
+	 * as the {@link KafkaStreams} hosting it is running, for instance not rebalancing;
+	 * otherwise it is evicted and looked up again, with retries, until the store is ready.
 	 * @param storeName name of the queryable store
 	 * @param storeType type of the queryable store
 	 * @param <T> generic queryable store
 	 * @return queryable store.
 	 */
+	@SuppressWarnings("unchecked")
 	public <T> T getQueryableStore(String storeName, QueryableStoreType<T> storeType) {
+		StoreKey storeKey = new StoreKey(storeName, storeType);
+		CachedStore cached = this.stores.get(storeKey);
+		if (cached != null) {
+			if (cached.kafkaStreams.state() == KafkaStreams.State.RUNNING) {
+				return (T) cached.store;
+			}
+			this.stores.remove(storeKey, cached);
+		}
+
+		CachedStore found = getRetryTemplate().execute(context -> findStore(storeName, storeType));
+		this.stores.put(storeKey, found);
+		return (T) found.store;
+	}
+
+	private <T> CachedStore findStore(String storeName, QueryableStoreType<T> storeType) {
+		Throwable throwable = null;
+		for (KafkaStreams kafkaStreams : this.kafkaStreamsRegistry.getKafkaStreams()) {
+			try {
+				T store = kafkaStreams.store(storeName, storeType);
+				if (store != null) {
+					return new CachedStore(kafkaStreams, store);
+				}
+			}
+			catch (InvalidStateStoreException e) {
+				// pass through..
+				throwable = e;
+			}
+		}
+		throw new IllegalStateException("Error when retrieving state store: j " + storeName, throwable);
+	}
+
+	private RetryTemplate getRetryTemplate() {
+		RetryTemplate retryTemplate = this.retryTemplate;
+		if (retryTemplate == null) {
+			retryTemplate = new RetryTemplate();
 
-		RetryTemplate retryTemplate = new RetryTemplate();
+			KafkaStreamsBinderConfigurationProperties.StateStoreRetry stateStoreRetry = this.binderConfigurationProperties.getStateStoreRetry();
+			RetryPolicy retryPolicy = new SimpleRetryPolicy(stateStoreRetry.getMaxAttempts());
+			FixedBackOffPolicy backOffPolicy = new FixedBackOffPolicy();
+			backOffPolicy.setBackOffPeriod(stateStoreRetry.getBackoffPeriod());
+
+			retryTemplate.setBackOffPolicy(backOffPolicy);
+			retryTemplate.setRetryPolicy(retryPolicy);
+			this.retryTemplate = retryTemplate;
+		}
+		return retryTemplate;
+	}
+
+	/**
+	 * Allow other instances of the application to query a local key/value store through
+	 * {@link #getAll} and the {@link KafkaStreamsQueryEndpoint}.
+	 * @param storeName the store name
+	 * @param keySerde {@link Serde} for the keys of the store
+	 * @param valueSerde {@link Serde} for the values of the store
+	 * @param <K> type of the keys
+	 * @param <V> type of the values
+	 * @since 3.0
+	 */
+	public <K, V> void exposeStore(String storeName, Serde<K> keySerde, Serde<V> valueSerde) {
+		this.exposedStores.put(storeName, new StoreSerdes(keySerde, valueSerde));
+	}
 
-		KafkaStreamsBinderConfigurationProperties.StateStoreRetry stateStoreRetry = this.binderConfigurationProperties.getStateStoreRetry();
-		RetryPolicy retryPolicy = new SimpleRetryPolicy(stateStoreRetry.getMaxAttempts());
-		FixedBackOffPolicy backOffPolicy = new FixedBackOffPolicy();
-		backOffPolicy.setBackOffPeriod(stateStoreRetry.getBackoffPeriod());
+	/**
+	 * Cache the values that {@link #getAll} fetches from other instances for a store.
+	 * Cached keys are invalidated when they are written to the changelog topic of the
+	 * store, which is tailed from the first {@link #getAll} call.
+	 * @param storeName the store name
+	 * @param maxSize the maximum number of cached keys, least recently used keys are evicted
+	 * @param timeToLive how long a value is cached
+	 * @since 3.0
+	 */
+	public void enableNearCache(String storeName, int maxSize, Duration timeToLive) {
+		RemoteQueryCache nearCache = new RemoteQueryCache(storeName, maxSize, timeToLive);
+		RemoteQueryCache previous = this.nearCaches.put(storeName, nearCache);
+		if (previous != null) {
+			previous.stop();
+		}
+		KafkaStreamsBinderMetrics metrics = this.kafkaStreamsRegistry.getKafkaStreamsBinderMetrics();
+		if (metrics != null) {
+			metrics.addNearCacheMetrics(nearCache);
+		}
+	}
 
-		retryTemplate.setBackOffPolicy(backOffPolicy);
-		retryTemplate.setRetryPolicy(retryPolicy);
+	/**
+	 * Look up several keys of a key/value store, wherever they are hosted. Keys are
+	 * grouped by the instance hosting them: keys hosted by this instance (or whose host
+	 * is not known) are looked up in the local store and the others are sent in one
+	 * request per instance, concurrently. The store must be exposed with
+	 * {@link #exposeStore} on the other instances, whose query endpoint must be reachable
+	 * at their `application.server` address.
+	 * @param storeName the store name
+	 * @param keys the keys
+	 * @param keySerde {@link Serde} for the keys
+	 * @param valueSerde {@link Serde} for the values
+	 * @param <K> type of the keys
+	 * @param <V> type of the values
+	 * @return the values of the keys that were found
+	 * @since 3.0
+	 */
+	public <K, V> Map<K, V> getAll(String storeName, Collection<K> keys, Serde<K> keySerde,
+			Serde<V> valueSerde) {
 
-		return retryTemplate.execute(context -> {
-			T store = null;
+		RemoteQueryCache nearCache = this.nearCaches.get(storeName);
+		if (nearCache != null && !nearCache.isInvalidating()) {
+			tailChangelog(nearCache);
+		}
+		Map<K, V> results = new HashMap<>();
+		HostInfo currentHost = getCurrentHostInfo();
+		List<K> localKeys = new ArrayList<>();
+		Map<HostInfo, Map<String, K>> remoteKeys = new LinkedHashMap<>();
+		for (K key : keys) {
+			HostInfo hostInfo = getHostInfo(storeName, key, keySerde.serializer());
+			if (hostInfo == null || hostInfo.port() < 0 || hostInfo.equals(currentHost)) {
+				localKeys.add(key);
+			}
+			else {
+				String encodedKey = encode(keySerde.serializer().serialize(storeName, key));
+				Optional<String> cached = nearCache != null ? nearCache.get(encodedKey) : null;
+				if (cached != null) {
+					cached.ifPresent((value) -> results.put(key,
+							valueSerde.deserializer().deserialize(storeName, decode(value))));
+				}
+				else {
+					remoteKeys.computeIfAbsent(hostInfo, (host) -> new LinkedHashMap<>()).put(encodedKey, key);
+				}
+			}
+		}
+		long version = nearCache != null ? nearCache.getVersion() : 0;
+		Map<HostInfo, CompletableFuture<Map<String, String>>> responses = new LinkedHashMap<>();
+		remoteKeys.forEach((hostInfo, batch) -> responses.put(hostInfo, CompletableFuture.supplyAsync(() -> {
+			try {
+				return getRemoteQueryClient().query(hostInfo, storeName, new ArrayList<>(batch.keySet()));
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, getRemoteQueryExecutor())));
 
-			final Set<KafkaStreams> kafkaStreams = InteractiveQueryService.this.kafkaStreamsRegistry.getKafkaStreams();
-			final Iterator<KafkaStreams> iterator = kafkaStreams.iterator();
-			Throwable throwable = null;
-			while (iterator.hasNext()) {
-				try {
-					store = iterator.next().store(storeName, storeType);
+		if (!localKeys.isEmpty()) {
+			ReadOnlyKeyValueStore<K, V> store = getQueryableStore(storeName, QueryableStoreTypes.keyValueStore());
+			for (K key : localKeys) {
+				V value = store.get(key);
+				if (value != null) {
+					results.put(key, value);
+				}
+			}
+		}
+		for (Map.Entry<HostInfo, CompletableFuture<Map<String, String>>> response : responses.entrySet()) {
+			Map<String, K> batch = remoteKeys.get(response.getKey());
+			try {
+				Map<String, String> values = response.getValue().join();
+				values.forEach((encodedKey, encodedValue) -> results.put(batch.get(encodedKey),
+						valueSerde.deserializer().deserialize(storeName, decode(encodedValue))));
+				if (nearCache != null) {
+					batch.keySet().forEach((encodedKey) -> nearCache.put(encodedKey, values.get(encodedKey),
+							version));
 				}
-				catch (InvalidStateStoreException e) {
-					// pass through..
-					throwable = e;
+			}
+			catch (CompletionException e) {
+				throw new IllegalStateException("Error when querying state store " + storeName + " on "
+						+ response.getKey().host() + ":" + response.getKey().port(), e.getCause());
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Look up serialized keys in a local store exposed with {@link #exposeStore}.
+	 * @param storeName the store name
+	 * @param keys the Base64 encoded serialized keys
+	 * @return the Base64 encoded serialized values of the keys that were found
+	 */
+	@SuppressWarnings("unchecked")
+	Map<String, String> queryLocalStore(String storeName, List<String> keys) {
+		StoreSerdes storeSerdes = this.exposedStores.get(storeName);
+		if (storeSerdes == null) {
+			throw new IllegalArgumentException("Store is not exposed for remote queries: " + storeName);
+		}
+		Serde<Object> keySerde = (Serde<Object>) storeSerdes.keySerde;
+		Serde<Object> valueSerde = (Serde<Object>) storeSerdes.valueSerde;
+		ReadOnlyKeyValueStore<Object, Object> store = getQueryableStore(storeName,
+				QueryableStoreTypes.keyValueStore());
+		Map<String, String> values = new HashMap<>();
+		for (String encodedKey : keys) {
+			Object value = store.get(keySerde.deserializer().deserialize(storeName, decode(encodedKey)));
+			if (value != null) {
+				values.put(encodedKey, encode(valueSerde.serializer().serialize(storeName, value)));
+			}
+		}
+		return values;
+	}
+
+	private void tailChangelog(RemoteQueryCache nearCache) {
+		for (KafkaStreams kafkaStreams : this.kafkaStreamsRegistry.getKafkaStreams()) {
+			StreamsBuilderFactoryBean streamsBuilderFactoryBean =
+					this.kafkaStreamsRegistry.streamBuilderFactoryBean(kafkaStreams);
+			Properties streamsConfiguration = streamsBuilderFactoryBean != null
+					? streamsBuilderFactoryBean.getStreamsConfiguration() : null;
+			try {
+				if (streamsConfiguration == null
+						|| kafkaStreams.allMetadataForStore(nearCache.getStoreName()).isEmpty()) {
+					continue;
 				}
 			}
-			if (store != null) {
-				return store;
+			catch (IllegalStateException e) {
+				// not running yet
+				continue;
 			}
-			throw new IllegalStateException("Error when retrieving state store: j " + storeName, throwable);
-		});
+			String applicationId = streamsConfiguration.getProperty(StreamsConfig.APPLICATION_ID_CONFIG);
+			Map<String, Object> consumerConfigs = new StreamsConfig(streamsConfiguration)
+					.getRestoreConsumerConfigs(applicationId + "-near-cache-" + nearCache.getStoreName());
+			nearCache.startInvalidation(new KafkaConsumer<>(consumerConfigs, new ByteArrayDeserializer(),
+					new ByteArrayDeserializer()), applicationId + "-" + nearCache.getStoreName() + "-changelog");
+			return;
+		}
+	}
+
+	private RemoteQueryClient getRemoteQueryClient() {
+		RemoteQueryClient remoteQueryClient = this.remoteQueryClient;
+		if (remoteQueryClient == null) {
+			remoteQueryClient = new RemoteQueryClient(this.binderConfigurationProperties.getRemoteQuery());
+			this.remoteQueryClient = remoteQueryClient;
+		}
+		return remoteQueryClient;
+	}
+
+	private synchronized ExecutorService getRemoteQueryExecutor() {
+		if (this.remoteQueryExecutor == null) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("kafka-streams-remote-query-");
+			threadFactory.setDaemon(true);
+			this.remoteQueryExecutor = Executors.newCachedThreadPool(threadFactory);
+		}
+		return this.remoteQueryExecutor;
+	}
+
+	@Override
+	public synchronized void destroy() {
+		this.nearCaches.values().forEach(RemoteQueryCache::stop);
+		if (this.remoteQueryExecutor != null) {
+			this.remoteQueryExecutor.shutdownNow();
+			this.remoteQueryExecutor = null;
+		}
+	}
+
+	private static String encode(byte[] bytes) {
+		return Base64.getEncoder().encodeToString(bytes);
+	}
+
+	private static byte[] decode(String value) {
+		return Base64.getDecoder().decode(value);
 	}
 
 	/**
@@ -153,4 +411,60 @@ public class InteractiveQueryService {
 		return streamsMetadata != null ? streamsMetadata.hostInfo() : null;
 	}
 
+	private static final class StoreKey {
+
+		private final String storeName;
+
+		private final Class<?> storeType;
+
+		StoreKey(String storeName, QueryableStoreType<?> storeType) {
+			this.storeName = storeName;
+			this.storeType = storeType.getClass();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			StoreKey that = (StoreKey) o;
+			return this.storeName.equals(that.storeName) && this.storeType.equals(that.storeType);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * this.storeName.hashCode() + this.storeType.hashCode();
+		}
+
+	}
+
+	private static final class StoreSerdes {
+
+		private final Serde<?> keySerde;
+
+		private final Serde<?> valueSerde;
+
+		StoreSerdes(Serde<?> keySerde, Serde<?> valueSerde) {
+			this.keySerde = keySerde;
+			this.valueSerde = valueSerde;
+		}
+
+	}
+
+	private static final class CachedStore {
+
+		private final KafkaStreams kafkaStreams;
+
+		private final Object store;
+
+		CachedStore(KafkaStreams kafkaStreams, Object store) {
+			this.kafkaStreams = kafkaStreams;
+			this.store = store;
+		}
+
+	}
+
 }
@@ -16,81 +16,256 @@
 
 package org.springframework.cloud.stream.binder.kafka.streams;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.function.ToDoubleFunction;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import io.micrometer.core.instrument.FunctionCounter;
 import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
 import io.micrometer.core.instrument.MeterRegistry;
-import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
 import org.apache.kafka.common.Metric;
 import org.apache.kafka.common.MetricName;
 import org.apache.kafka.streams.KafkaStreams;
 
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
 /**
  * Kafka Streams binder metrics implementation that exports the metrics available
  * through {@link KafkaStreams#metrics()} into a micrometer {@link io.micrometer.core.instrument.MeterRegistry}.
  *
+ * The metrics of every registered {@link KafkaStreams} are exported, tagged with the
+ * {@code application.id} when known. Kafka Streams creates and removes thread, task and
+ * store level metrics as tasks are assigned and revoked, so the metrics are reconciled
+ * periodically: meters are added for new metrics and removed for the ones that are gone.
+ * Cumulative metrics ({@code -total}) are exported as function counters, the others as
+ * gauges.
+ *
  * @author Soby Chacko
  * @since 3.0.0
  */
-public class KafkaStreamsBinderMetrics {
+public class KafkaStreamsBinderMetrics implements DisposableBean {
 
-	private KafkaStreams kafkaStreams;
+	private static final String APPLICATION_ID_TAG = "application.id";
 
 	private final MeterRegistry meterRegistry;
 
-	private MeterBinder meterBinder;
+	private final Map<KafkaStreams, BoundStreams> boundStreams = new ConcurrentHashMap<>();
+
+	private final long refreshInterval;
+
+	private ScheduledExecutorService scheduler;
 
 	public KafkaStreamsBinderMetrics(MeterRegistry meterRegistry) {
+		this(meterRegistry, Duration.ofMinutes(1));
+	}
+
+	/**
+	 * Construct an instance.
+	 * @param meterRegistry the meter registry.
+	 * @param refreshInterval how often the metrics are reconciled.
+	 * @since 3.0
+	 */
+	public KafkaStreamsBinderMetrics(MeterRegistry meterRegistry, Duration refreshInterval) {
 		this.meterRegistry = meterRegistry;
+		this.refreshInterval = refreshInterval.toMillis();
 	}
 
+	/**
+	 * Reconcile the meters of all registered {@link KafkaStreams} with their current
+	 * metrics.
+	 * @param meterRegistry ignored; meters are registered with the registry provided at
+	 * construction time.
+	 */
 	public void bindTo(MeterRegistry meterRegistry) {
-		if (this.meterBinder == null) {
-			this.meterBinder = new MeterBinder() {
-				@Override
-				@SuppressWarnings("unchecked")
-				public void bindTo(MeterRegistry registry) {
-					if (KafkaStreamsBinderMetrics.this.kafkaStreams != null) {
-						final Map<MetricName, ? extends Metric> metrics = KafkaStreamsBinderMetrics.this.kafkaStreams.metrics();
-
-						for (Map.Entry<MetricName, ? extends Metric> metric : metrics.entrySet()) {
-							final Gauge.Builder<KafkaStreamsBinderMetrics> builder =
-									Gauge.builder(sanitize(metric.getKey().group() + "." + metric.getKey().name()), this,
-											toDoubleFunction(metric.getValue()));
-							final Map<String, String> tags = metric.getKey().tags();
-							for (Map.Entry<String, String> tag : tags.entrySet()) {
-								builder.tag(tag.getKey(), tag.getValue());
-							}
-							builder.description(metric.getKey().description())
-									.register(meterRegistry);
-						}
-					}
-				}
+		refresh();
+	}
 
-				ToDoubleFunction toDoubleFunction(Metric metric) {
-					return (o) -> {
-						if (metric.metricValue() instanceof Number) {
-							return (Double) metric.metricValue();
-						}
-						else {
-							return 0.0;
-						}
-					};
-				}
-			};
+	public void addMetrics(KafkaStreams kafkaStreams) {
+		addMetrics(kafkaStreams, null);
+	}
+
+	/**
+	 * Export the metrics of a {@link KafkaStreams}.
+	 * @param kafkaStreams the {@link KafkaStreams}.
+	 * @param applicationId the application id used to tag the meters; may be null.
+	 * @since 3.0
+	 */
+	public void addMetrics(KafkaStreams kafkaStreams, String applicationId) {
+		BoundStreams bound = new BoundStreams(kafkaStreams, applicationId);
+		BoundStreams previous = this.boundStreams.put(kafkaStreams, bound);
+		if (previous != null) {
+			previous.remove();
+		}
+		bound.reconcile();
+		synchronized (this) {
+			if (this.scheduler == null) {
+				CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(
+						"kafka-streams-binder-metrics-");
+				threadFactory.setDaemon(true);
+				this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+				this.scheduler.scheduleWithFixedDelay(this::refresh, this.refreshInterval,
+						this.refreshInterval, TimeUnit.MILLISECONDS);
+			}
 		}
-		this.meterBinder.bindTo(this.meterRegistry);
 	}
 
-	public void addMetrics(KafkaStreams kafkaStreams) {
-		synchronized (KafkaStreamsBinderMetrics.this) {
-			this.kafkaStreams = kafkaStreams;
-			this.bindTo(this.meterRegistry);
+	/**
+	 * Remove the meters of a {@link KafkaStreams}.
+	 * @param kafkaStreams the {@link KafkaStreams}.
+	 * @since 3.0
+	 */
+	public void removeMetrics(KafkaStreams kafkaStreams) {
+		BoundStreams bound = this.boundStreams.remove(kafkaStreams);
+		if (bound != null) {
+			bound.remove();
+		}
+	}
+
+	/**
+	 * Register the hit, miss and eviction counters and the size of a near-cache of
+	 * {@link InteractiveQueryService}.
+	 * @param nearCache the near-cache.
+	 */
+	void addNearCacheMetrics(RemoteQueryCache nearCache) {
+		Tags tags = Tags.of("store", nearCache.getStoreName());
+		this.meterRegistry.find("kafka.streams.near.cache.hits").tags(tags).meters()
+				.forEach(this.meterRegistry::remove);
+		this.meterRegistry.find("kafka.streams.near.cache.misses").tags(tags).meters()
+				.forEach(this.meterRegistry::remove);
+		this.meterRegistry.find("kafka.streams.near.cache.evictions").tags(tags).meters()
+				.forEach(this.meterRegistry::remove);
+		this.meterRegistry.find("kafka.streams.near.cache.size").tags(tags).meters()
+				.forEach(this.meterRegistry::remove);
+		FunctionCounter.builder("kafka.streams.near.cache.hits", nearCache, RemoteQueryCache::getHits)
+				.tags(tags)
+				.description("Remote interactive query lookups answered from the near-cache")
+				.register(this.meterRegistry);
+		FunctionCounter.builder("kafka.streams.near.cache.misses", nearCache, RemoteQueryCache::getMisses)
+				.tags(tags)
+				.description("Remote interactive query lookups not answered from the near-cache")
+				.register(this.meterRegistry);
+		FunctionCounter.builder("kafka.streams.near.cache.evictions", nearCache, RemoteQueryCache::getEvictions)
+				.tags(tags)
+				.description("Near-cache entries evicted for size or expiry")
+				.register(this.meterRegistry);
+		Gauge.builder("kafka.streams.near.cache.size", nearCache, RemoteQueryCache::size)
+				.tags(tags)
+				.description("Number of entries in the near-cache")
+				.register(this.meterRegistry);
+	}
+
+	/**
+	 * Reconcile the meters of all registered {@link KafkaStreams} with their current
+	 * metrics.
+	 * @since 3.0
+	 */
+	public void refresh() {
+		this.boundStreams.values().forEach(BoundStreams::reconcile);
+	}
+
+	@Override
+	public synchronized void destroy() {
+		if (this.scheduler != null) {
+			this.scheduler.shutdownNow();
+			this.scheduler = null;
+		}
+	}
+
+	int getMeterCount() {
+		int count = 0;
+		for (BoundStreams bound : this.boundStreams.values()) {
+			count += bound.getMeterCount();
 		}
+		return count;
+	}
+
+	private static double value(Metric metric) {
+		Object value = metric.metricValue();
+		return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
 	}
 
 	private static String sanitize(String value) {
 		return value.replaceAll("-", ".");
 	}
+
+	private final class BoundStreams {
+
+		private final KafkaStreams kafkaStreams;
+
+		private final String applicationId;
+
+		private final Map<MetricName, Meter> meters = new HashMap<>();
+
+		private boolean removed;
+
+		BoundStreams(KafkaStreams kafkaStreams, String applicationId) {
+			this.kafkaStreams = kafkaStreams;
+			this.applicationId = applicationId;
+		}
+
+		synchronized void reconcile() {
+			if (this.removed) {
+				return;
+			}
+			Map<MetricName, ? extends Metric> metrics = this.kafkaStreams.metrics();
+			Iterator<Map.Entry<MetricName, Meter>> iterator = this.meters.entrySet().iterator();
+			while (iterator.hasNext()) {
+				Map.Entry<MetricName, Meter> entry = iterator.next();
+				if (!metrics.containsKey(entry.getKey())) {
+					KafkaStreamsBinderMetrics.this.meterRegistry.remove(entry.getValue());
+					iterator.remove();
+				}
+			}
+			for (Map.Entry<MetricName, ? extends Metric> entry : metrics.entrySet()) {
+				MetricName metricName = entry.getKey();
+				Metric metric = entry.getValue();
+				if (this.meters.containsKey(metricName) || !(metric.metricValue() instanceof Number)) {
+					continue;
+				}
+				this.meters.put(metricName, register(metricName, metric));
+			}
+		}
+
+		private Meter register(MetricName metricName, Metric metric) {
+			List<Tag> tags = new ArrayList<>();
+			if (this.applicationId != null) {
+				tags.add(Tag.of(APPLICATION_ID_TAG, this.applicationId));
+			}
+			metricName.tags().forEach((key, value) -> tags.add(Tag.of(key, value)));
+			String name = sanitize(metricName.group() + "." + metricName.name());
+			if (metricName.name().endsWith("-total")) {
+				return FunctionCounter.builder(name, metric, KafkaStreamsBinderMetrics::value)
+						.tags(tags)
+						.description(metricName.description())
+						.register(KafkaStreamsBinderMetrics.this.meterRegistry);
+			}
+			return Gauge.builder(name, metric, KafkaStreamsBinderMetrics::value)
+					.tags(tags)
+					.description(metricName.description())
+					.register(KafkaStreamsBinderMetrics.this.meterRegistry);
+		}
+
+		synchronized int getMeterCount() {
+			return this.meters.size();
+		}
+
+		synchronized void remove() {
+			this.removed = true;
+			this.meters.values().forEach(KafkaStreamsBinderMetrics.this.meterRegistry::remove);
+			this.meters.clear();
+		}
+
+	}
+
 }
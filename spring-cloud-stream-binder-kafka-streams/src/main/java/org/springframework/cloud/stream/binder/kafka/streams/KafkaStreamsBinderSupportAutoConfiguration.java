@@ -21,6 +21,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import io.micrometer.core.instrument.MeterRegistry;
@@ -31,6 +32,7 @@ import org.apache.kafka.streams.errors.LogAndFailExceptionHandler;
 
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
@@ -42,6 +44,7 @@ import org.springframework.cloud.stream.binder.BinderConfiguration;
 import org.springframework.cloud.stream.binder.kafka.streams.function.FunctionDetectorCondition;
 import org.springframework.cloud.stream.binder.kafka.streams.properties.KafkaStreamsBinderConfigurationProperties;
 import org.springframework.cloud.stream.binder.kafka.streams.properties.KafkaStreamsExtendedBindingProperties;
+import org.springframework.cloud.stream.binder.kafka.streams.properties.KafkaStreamsStateStoreProperties;
 import org.springframework.cloud.stream.binder.kafka.streams.serde.CompositeNonNativeSerde;
 import org.springframework.cloud.stream.binder.kafka.streams.serde.MessageConverterDelegateSerde;
 import org.springframework.cloud.stream.binding.BindingService;
@@ -240,6 +243,15 @@ public class KafkaStreamsBinderSupportAutoConfiguration {
 			properties.put(RecoveringDeserializationExceptionHandler.KSTREAM_DESERIALIZATION_RECOVERER, sendToDlqAndContinue);
 		}
 
+		KafkaStreamsBinderConfigurationProperties.RocksDb rocksDb = configProperties.getRocksDb();
+		if (rocksDb.isEnabled()) {
+			properties.putIfAbsent(StreamsConfig.ROCKSDB_CONFIG_SETTER_CLASS_CONFIG,
+					KafkaStreamsRocksDBConfigSetter.class);
+			properties.put(KafkaStreamsRocksDBConfigSetter.ROCKSDB_PROPERTIES_CONFIG, rocksDb);
+			properties.put(KafkaStreamsRocksDBConfigSetter.STORE_PROPERTIES_CONFIG,
+					new ConcurrentHashMap<String, KafkaStreamsStateStoreProperties>());
+		}
+
 		if (!ObjectUtils.isEmpty(configProperties.getConfiguration())) {
 			properties.putAll(configProperties.getConfiguration());
 		}
@@ -385,6 +397,23 @@ public class KafkaStreamsBinderSupportAutoConfiguration {
 		return new EncodingDecodingBindAdviceHandler();
 	}
 
+	@Configuration
+	@ConditionalOnClass(name = "org.springframework.boot.actuate.endpoint.annotation.Endpoint")
+	protected class KafkaStreamsEndpointConfiguration {
+
+		@Bean
+		@ConditionalOnAvailableEndpoint
+		public KafkaStreamsSerdesEndpoint kafkaStreamsSerdesEndpoint(KeyValueSerdeResolver keyValueSerdeResolver) {
+			return new KafkaStreamsSerdesEndpoint(keyValueSerdeResolver);
+		}
+
+		@Bean
+		@ConditionalOnAvailableEndpoint
+		public KafkaStreamsQueryEndpoint kafkaStreamsQueryEndpoint(InteractiveQueryService interactiveQueryService) {
+			return new KafkaStreamsQueryEndpoint(interactiveQueryService);
+		}
+	}
+
 	@Configuration
 	@ConditionalOnMissingBean(value = KafkaStreamsBinderMetrics.class, name = "outerContext")
 	@ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
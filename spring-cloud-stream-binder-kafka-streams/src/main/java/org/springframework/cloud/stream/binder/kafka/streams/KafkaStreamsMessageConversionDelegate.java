@@ -16,7 +16,10 @@
 
 package org.springframework.cloud.stream.binder.kafka.streams;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -24,20 +27,24 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.common.header.Header;
-import org.apache.kafka.common.header.Headers;
 import org.apache.kafka.common.header.internals.RecordHeader;
 import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.common.serialization.Serializer;
-import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.kstream.KStream;
-import org.apache.kafka.streams.processor.Processor;
+import org.apache.kafka.streams.kstream.ValueTransformer;
+import org.apache.kafka.streams.kstream.ValueTransformerSupplier;
+import org.apache.kafka.streams.kstream.ValueTransformerWithKey;
+import org.apache.kafka.streams.kstream.ValueTransformerWithKeySupplier;
 import org.apache.kafka.streams.processor.ProcessorContext;
 
 import org.springframework.cloud.stream.binder.kafka.streams.properties.KafkaStreamsBinderConfigurationProperties;
+import org.springframework.cloud.stream.binder.kafka.streams.serde.ContentTypeHeaders;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MessageConversionException;
 import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.support.GenericMessage;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
@@ -56,8 +63,6 @@ public class KafkaStreamsMessageConversionDelegate {
 	private static final Log LOG = LogFactory
 			.getLog(KafkaStreamsMessageConversionDelegate.class);
 
-	private static final ThreadLocal<KeyValue<Object, Object>> keyValueThreadLocal = new ThreadLocal<>();
-
 	private final CompositeMessageConverter compositeMessageConverter;
 
 	private final SendToDlqAndContinue sendToDlqAndContinue;
@@ -66,7 +71,7 @@ public class KafkaStreamsMessageConversionDelegate {
 
 	private final KafkaStreamsBinderConfigurationProperties kstreamBinderConfigurationProperties;
 
-	Exception[] failedWithDeserException = new Exception[1];
+	private final ObjectMapper objectMapper = new ObjectMapper();
 
 	KafkaStreamsMessageConversionDelegate(
 			CompositeMessageConverter compositeMessageConverter,
@@ -80,7 +85,10 @@ public class KafkaStreamsMessageConversionDelegate {
 	}
 
 	/**
-	 * Serialize {@link KStream} records on outbound based on contentType.
+	 * Serialize {@link KStream} records on outbound based on contentType. The value is
+	 * converted and the content type header is set by a single value transformer; the
+	 * encoded header is cached for each content type and, when the binding has a content
+	 * type, the converter is resolved once for each payload type.
 	 * @param outboundBindTarget outbound KStream target
 	 * @return serialized KStream
 	 */
@@ -88,63 +96,124 @@ public class KafkaStreamsMessageConversionDelegate {
 	public KStream serializeOnOutbound(KStream<?, ?> outboundBindTarget) {
 		String contentType = this.kstreamBindingInformationCatalogue
 				.getContentType(outboundBindTarget);
-		MessageConverter messageConverter = this.compositeMessageConverter;
-		final PerRecordContentTypeHolder perRecordContentTypeHolder = new PerRecordContentTypeHolder();
-
-		final KStream<?, ?> kStreamWithEnrichedHeaders = outboundBindTarget
+		ValueTransformerSupplier<Object, Object> transformerSupplier =
+				() -> new OutboundConversionTransformer(contentType);
+		return outboundBindTarget
 			.filter((k, v) -> v != null)
-			.mapValues((v) -> {
-				Message<?> message = v instanceof Message<?> ? (Message<?>) v
-						: MessageBuilder.withPayload(v).build();
-				Map<String, Object> headers = new HashMap<>(message.getHeaders());
-				if (!StringUtils.isEmpty(contentType)) {
-					headers.put(MessageHeaders.CONTENT_TYPE, contentType);
-				}
-				MessageHeaders messageHeaders = new MessageHeaders(headers);
-				final Message<?> convertedMessage = messageConverter.toMessage(message.getPayload(), messageHeaders);
-				perRecordContentTypeHolder.setContentType((String) messageHeaders.get(MessageHeaders.CONTENT_TYPE));
-				return convertedMessage.getPayload();
-			});
+			.transformValues(transformerSupplier);
+	}
 
-		kStreamWithEnrichedHeaders.process(() -> new Processor() {
+	/**
+	 * Converts outbound values; a new instance is created for each stream task.
+	 */
+	private final class OutboundConversionTransformer implements ValueTransformer<Object, Object> {
 
-			ProcessorContext context;
+		private final String contentType;
 
-			@Override
-			public void init(ProcessorContext context) {
-				this.context = context;
-			}
+		private final MessageHeaders headers;
+
+		private final Map<Class<?>, MessageConverter> converters = new HashMap<>();
+
+		private final Map<String, Header> contentTypeHeaders = new HashMap<>();
 
-			@Override
-			public void process(Object key, Object value) {
-				if (perRecordContentTypeHolder.contentType != null) {
+		private ProcessorContext context;
+
+		OutboundConversionTransformer(String contentType) {
+			this.contentType = StringUtils.hasText(contentType) ? contentType : null;
+			this.headers = new ContentTypeHeaders(this.contentType != null
+					? Collections.singletonMap(MessageHeaders.CONTENT_TYPE, this.contentType)
+					: Collections.emptyMap());
+		}
+
+		@Override
+		public void init(ProcessorContext context) {
+			this.context = context;
+		}
+
+		@Override
+		public Object transform(Object value) {
+			Object payload = value;
+			MessageHeaders messageHeaders = this.headers;
+			if (value instanceof Message<?>) {
+				Message<?> message = (Message<?>) value;
+				payload = message.getPayload();
+				if (this.contentType != null) {
+					Map<String, Object> headers = new HashMap<>(message.getHeaders());
+					headers.put(MessageHeaders.CONTENT_TYPE, this.contentType);
+					messageHeaders = new MessageHeaders(headers);
+				}
+				else {
+					messageHeaders = message.getHeaders();
+				}
+			}
+			final Message<?> convertedMessage = convert(payload, messageHeaders);
+			if (convertedMessage == null) {
+				throw new MessageConversionException("Could not convert outbound payload of type "
+						+ payload.getClass().getName());
+			}
+			Object resolvedContentType = messageHeaders.get(MessageHeaders.CONTENT_TYPE);
+			if (resolvedContentType != null) {
+				Header header = contentTypeHeader(resolvedContentType.toString());
+				if (header != null) {
 					this.context.headers().remove(MessageHeaders.CONTENT_TYPE);
-					final Header header;
-					try {
-						header = new RecordHeader(MessageHeaders.CONTENT_TYPE,
-									new ObjectMapper().writeValueAsBytes(perRecordContentTypeHolder.contentType));
-						this.context.headers().add(header);
+					this.context.headers().add(header);
+				}
+			}
+			return convertedMessage.getPayload();
+		}
+
+		private Message<?> convert(Object payload, MessageHeaders messageHeaders) {
+			MessageConverter converter = this.converters.get(payload.getClass());
+			if (converter != null) {
+				Message<?> message = converter.toMessage(payload, messageHeaders);
+				if (message != null) {
+					return message;
+				}
+			}
+			for (MessageConverter candidate : KafkaStreamsMessageConversionDelegate.this.compositeMessageConverter
+					.getConverters()) {
+				Message<?> message = candidate.toMessage(payload, messageHeaders);
+				if (message != null) {
+					// the content type only varies per record when the binding has none
+					if (this.contentType != null) {
+						this.converters.put(payload.getClass(), candidate);
 					}
-					catch (Exception e) {
-						if (LOG.isDebugEnabled()) {
-							LOG.debug("Could not add content type header");
-						}
+					return message;
+				}
+			}
+			return null;
+		}
+
+		private Header contentTypeHeader(String resolvedContentType) {
+			Header header = this.contentTypeHeaders.get(resolvedContentType);
+			if (header == null) {
+				try {
+					header = new RecordHeader(MessageHeaders.CONTENT_TYPE,
+							KafkaStreamsMessageConversionDelegate.this.objectMapper
+									.writeValueAsBytes(resolvedContentType));
+					this.contentTypeHeaders.put(resolvedContentType, header);
+				}
+				catch (Exception e) {
+					if (LOG.isDebugEnabled()) {
+						LOG.debug("Could not add content type header");
 					}
-					perRecordContentTypeHolder.unsetContentType();
 				}
 			}
+			return header;
+		}
 
-			@Override
-			public void close() {
+		@Override
+		public void close() {
 
-			}
-		});
+		}
 
-		return kStreamWithEnrichedHeaders;
 	}
 
 	/**
-	 * Deserialize incoming {@link KStream} based on content type.
+	 * Deserialize incoming {@link KStream} based on content type. The conversion is
+	 * performed by a single value transformer, which reads the content type from the
+	 * record headers and handles the records that cannot be converted (DLQ or serde error
+	 * policy); tombstones and such records are not forwarded.
 	 * @param valueClass on KStream value
 	 * @param bindingTarget inbound KStream target
 	 * @return deserialized KStream
@@ -152,192 +221,143 @@ public class KafkaStreamsMessageConversionDelegate {
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public KStream deserializeOnInbound(Class<?> valueClass,
 			KStream<?, ?> bindingTarget) {
-		MessageConverter messageConverter = this.compositeMessageConverter;
-		final PerRecordContentTypeHolder perRecordContentTypeHolder = new PerRecordContentTypeHolder();
-
-		resolvePerRecordContentType(bindingTarget, perRecordContentTypeHolder);
-
-		// Deserialize using a branching strategy
-		KStream<?, ?>[] branch = bindingTarget.branch(
-				// First filter where the message is converted and return true if
-				// everything went well, return false otherwise.
-				(o, o2) -> {
-					boolean isValidRecord = false;
-
-					try {
-						// if the record is a tombstone, ignore and exit from processing
-						// further.
-						if (o2 != null) {
-							if (o2 instanceof Message || o2 instanceof String
-									|| o2 instanceof byte[]) {
-								Message<?> m1 = null;
-								if (o2 instanceof Message) {
-									m1 = perRecordContentTypeHolder.contentType != null
-											? MessageBuilder.fromMessage((Message<?>) o2)
-													.setHeader(
-															MessageHeaders.CONTENT_TYPE,
-															perRecordContentTypeHolder.contentType)
-													.build()
-											: (Message<?>) o2;
-								}
-								else {
-									m1 = perRecordContentTypeHolder.contentType != null
-											? MessageBuilder.withPayload(o2).setHeader(
-													MessageHeaders.CONTENT_TYPE,
-													perRecordContentTypeHolder.contentType)
-													.build()
-											: MessageBuilder.withPayload(o2).build();
-								}
-								convertAndSetMessage(o, valueClass, messageConverter, m1);
-							}
-							else {
-								keyValueThreadLocal.set(new KeyValue<>(o, o2));
-							}
-							isValidRecord = true;
-						}
-						else {
-							LOG.info(
-									"Received a tombstone record. This will be skipped from further processing.");
-						}
-					}
-					catch (Exception e) {
-						LOG.warn(
-								"Deserialization has failed. This will be skipped from further processing.",
-								e);
-						// pass through
-						failedWithDeserException[0] = e;
-					}
-					return isValidRecord;
-				},
-				// second filter that catches any messages for which an exception thrown
-				// in the first filter above.
-				(k, v) -> true);
-		// process errors from the second filter in the branch above.
-		processErrorFromDeserialization(bindingTarget, branch[1], failedWithDeserException);
-
-		// first branch above is the branch where the messages are converted, let it go
-		// through further processing.
-		return branch[0].mapValues((o2) -> {
-			Object objectValue = keyValueThreadLocal.get().value;
-			keyValueThreadLocal.remove();
-			return objectValue;
-		});
+		ValueTransformerWithKeySupplier<Object, Object, Iterable<Object>> transformerSupplier =
+				() -> new InboundConversionTransformer(valueClass, bindingTarget);
+		return ((KStream) bindingTarget).flatTransformValues(transformerSupplier);
 	}
 
-	@SuppressWarnings({ "unchecked", "rawtypes" })
-	private void resolvePerRecordContentType(KStream<?, ?> outboundBindTarget,
-			PerRecordContentTypeHolder perRecordContentTypeHolder) {
-		outboundBindTarget.process(() -> new Processor() {
+	/**
+	 * Converts inbound values in one pass; a new instance is created for each stream
+	 * task, so there is no state shared between stream threads. The message headers
+	 * used for conversion are cached for the last content type seen.
+	 */
+	private final class InboundConversionTransformer
+			implements ValueTransformerWithKey<Object, Object, Iterable<Object>> {
 
-			ProcessorContext context;
+		private final Class<?> valueClass;
 
-			@Override
-			public void init(ProcessorContext context) {
-				this.context = context;
-			}
+		private final KStream<?, ?> bindingTarget;
 
-			@Override
-			public void process(Object key, Object value) {
-				final Headers headers = this.context.headers();
-				final Iterable<Header> contentTypes = headers
-						.headers(MessageHeaders.CONTENT_TYPE);
-				if (contentTypes != null && contentTypes.iterator().hasNext()) {
-					final String contentType = new String(
-							contentTypes.iterator().next().value());
-					// remove leading and trailing quotes
-					final String cleanContentType = StringUtils.replace(contentType, "\"",
-							"");
-					perRecordContentTypeHolder.setContentType(cleanContentType);
-				}
-			}
+		private ProcessorContext context;
 
-			@Override
-			public void close() {
+		private byte[] lastContentType;
 
-			}
-		});
-	}
+		private MessageHeaders lastHeaders = new ContentTypeHeaders(Collections.emptyMap());
 
-	private void convertAndSetMessage(Object o, Class<?> valueClass,
-			MessageConverter messageConverter, Message<?> msg) {
-		Object result = valueClass.isAssignableFrom(msg.getPayload().getClass())
-				? msg.getPayload() : messageConverter.fromMessage(msg, valueClass);
+		private boolean lastHasContentType;
 
-		Assert.notNull(result, "Failed to convert message " + msg);
+		InboundConversionTransformer(Class<?> valueClass, KStream<?, ?> bindingTarget) {
+			this.valueClass = valueClass;
+			this.bindingTarget = bindingTarget;
+		}
 
-		keyValueThreadLocal.set(new KeyValue<>(o, result));
-	}
+		@Override
+		public void init(ProcessorContext context) {
+			this.context = context;
+		}
 
-	@SuppressWarnings({ "unchecked", "rawtypes" })
-	private void processErrorFromDeserialization(KStream<?, ?> bindingTarget,
-			KStream<?, ?> branch, Exception[] exception) {
-		branch.process(() -> new Processor() {
-			ProcessorContext context;
-
-			@Override
-			public void init(ProcessorContext context) {
-				this.context = context;
+		@Override
+		public Iterable<Object> transform(Object key, Object value) {
+			// if the record is a tombstone, ignore and exit from processing further.
+			if (value == null) {
+				LOG.info("Received a tombstone record. This will be skipped from further processing.");
+				return Collections.emptyList();
 			}
-
-			@Override
-			public void process(Object o, Object o2) {
-				// Only continue if the record was not a tombstone.
-				if (o2 != null) {
-					if (KafkaStreamsMessageConversionDelegate.this.kstreamBindingInformationCatalogue
-							.isDlqEnabled(bindingTarget)) {
-						if (o2 instanceof Message) {
-							Message message = (Message) o2;
-
-							// We need to convert the key to a byte[] before sending to DLQ.
-							Serde keySerde = kstreamBindingInformationCatalogue.getKeySerde(bindingTarget);
-							Serializer keySerializer = keySerde.serializer();
-							byte[] keyBytes = keySerializer.serialize(null, o);
-
-							ConsumerRecord consumerRecord = new ConsumerRecord(this.context.topic(), this.context.partition(), this.context.offset(),
-									keyBytes, message.getPayload());
-
-							KafkaStreamsMessageConversionDelegate.this.sendToDlqAndContinue
-									.sendToDlq(consumerRecord, exception[0]);
-						}
-						else {
-							ConsumerRecord consumerRecord = new ConsumerRecord(this.context.topic(), this.context.partition(), this.context.offset(),
-									o, o2);
-							KafkaStreamsMessageConversionDelegate.this.sendToDlqAndContinue
-									.sendToDlq(consumerRecord, exception[0]);
-						}
-					}
-					else if (KafkaStreamsMessageConversionDelegate.this.kstreamBinderConfigurationProperties
-							.getSerdeError() == KafkaStreamsBinderConfigurationProperties.SerdeError.logAndFail) {
-						throw new IllegalStateException("Inbound deserialization failed. "
-								+ "Stopping further processing of records.");
-					}
-					else if (KafkaStreamsMessageConversionDelegate.this.kstreamBinderConfigurationProperties
-							.getSerdeError() == KafkaStreamsBinderConfigurationProperties.SerdeError.logAndContinue) {
-						// quietly passing through. No action needed, this is similar to
-						// log and continue.
-						LOG.error(
-								"Inbound deserialization failed. Skipping this record and continuing.");
-					}
-				}
+			try {
+				return Collections.singletonList(convert(value));
 			}
-
-			@Override
-			public void close() {
-
+			catch (Exception e) {
+				LOG.warn("Deserialization has failed. This will be skipped from further processing.", e);
+				handleDeserializationError(key, value, e);
+				return Collections.emptyList();
 			}
-		});
-	}
+		}
 
-	private static class PerRecordContentTypeHolder {
+		private Object convert(Object value) {
+			if (!(value instanceof Message || value instanceof String
+					|| value instanceof byte[])) {
+				return value;
+			}
+			MessageHeaders headers = resolveHeaders();
+			Message<?> message;
+			if (value instanceof Message) {
+				message = this.lastHasContentType
+						? MessageBuilder.fromMessage((Message<?>) value)
+								.setHeader(MessageHeaders.CONTENT_TYPE,
+										headers.get(MessageHeaders.CONTENT_TYPE))
+								.build()
+						: (Message<?>) value;
+			}
+			else {
+				message = new GenericMessage<>(value, headers);
+			}
+			Object payload = message.getPayload();
+			Object result = this.valueClass.isAssignableFrom(payload.getClass())
+					? payload
+					: KafkaStreamsMessageConversionDelegate.this.compositeMessageConverter
+							.fromMessage(message, this.valueClass);
+			Assert.notNull(result, () -> "Failed to convert message " + message);
+			return result;
+		}
 
-		String contentType;
+		private MessageHeaders resolveHeaders() {
+			Iterator<Header> contentTypes = this.context.headers()
+					.headers(MessageHeaders.CONTENT_TYPE).iterator();
+			byte[] contentType = contentTypes.hasNext() ? contentTypes.next().value() : null;
+			if (!Arrays.equals(contentType, this.lastContentType)) {
+				if (contentType != null) {
+					// remove leading and trailing quotes
+					String cleanContentType = StringUtils.replace(new String(contentType), "\"", "");
+					this.lastHeaders = new ContentTypeHeaders(
+							Collections.singletonMap(MessageHeaders.CONTENT_TYPE, cleanContentType));
+				}
+				else {
+					this.lastHeaders = new ContentTypeHeaders(Collections.emptyMap());
+				}
+				this.lastContentType = contentType;
+				this.lastHasContentType = contentType != null;
+			}
+			return this.lastHeaders;
+		}
 
-		void setContentType(String contentType) {
-			this.contentType = contentType;
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private void handleDeserializationError(Object key, Object value, Exception exception) {
+			KafkaStreamsBindingInformationCatalogue catalogue =
+					KafkaStreamsMessageConversionDelegate.this.kstreamBindingInformationCatalogue;
+			if (catalogue.isDlqEnabled(this.bindingTarget)) {
+				ConsumerRecord consumerRecord;
+				if (value instanceof Message) {
+					// We need to convert the key to a byte[] before sending to DLQ.
+					Serde keySerde = catalogue.getKeySerde(this.bindingTarget);
+					Serializer keySerializer = keySerde.serializer();
+					byte[] keyBytes = keySerializer.serialize(null, key);
+					consumerRecord = new ConsumerRecord(this.context.topic(), this.context.partition(),
+							this.context.offset(), keyBytes, ((Message) value).getPayload());
+				}
+				else {
+					consumerRecord = new ConsumerRecord(this.context.topic(), this.context.partition(),
+							this.context.offset(), key, value);
+				}
+				KafkaStreamsMessageConversionDelegate.this.sendToDlqAndContinue
+						.sendToDlq(consumerRecord, exception);
+			}
+			else if (KafkaStreamsMessageConversionDelegate.this.kstreamBinderConfigurationProperties
+					.getSerdeError() == KafkaStreamsBinderConfigurationProperties.SerdeError.logAndFail) {
+				throw new IllegalStateException("Inbound deserialization failed. "
+						+ "Stopping further processing of records.");
+			}
+			else if (KafkaStreamsMessageConversionDelegate.this.kstreamBinderConfigurationProperties
+					.getSerdeError() == KafkaStreamsBinderConfigurationProperties.SerdeError.logAndContinue) {
+				// quietly passing through. No action needed, this is similar to
+				// log and continue.
+				LOG.error(
+						"Inbound deserialization failed. Skipping this record and continuing.");
+			}
 		}
 
-		void unsetContentType() {
-			this.contentType = null;
+		@Override
+		public void close() {
+
 		}
 
 	}
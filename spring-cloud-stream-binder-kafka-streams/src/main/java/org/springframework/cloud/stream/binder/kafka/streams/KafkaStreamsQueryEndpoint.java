@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka.streams;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+
+/**
+ * Actuator endpoint that lets other instances of the application query the local state
+ * stores exposed with {@link InteractiveQueryService#exposeStore}; this is what
+ * {@link InteractiveQueryService#getAll} calls for the keys hosted elsewhere.
+ *
+ * @author agent
+ * @since 3.0
+ */
+@Endpoint(id = "kafkastreamsquery")
+public class KafkaStreamsQueryEndpoint {
+
+	private final InteractiveQueryService interactiveQueryService;
+
+	public KafkaStreamsQueryEndpoint(InteractiveQueryService interactiveQueryService) {
+		this.interactiveQueryService = interactiveQueryService;
+	}
+
+	/**
+	 * Look up keys in a local store.
+	 * @param store the store name.
+	 * @param keys the Base64 encoded serialized keys.
+	 * @return the Base64 encoded serialized values of the keys that were found.
+	 */
+	@WriteOperation
+	public Map<String, String> query(@Selector String store, List<String> keys) {
+		return this.interactiveQueryService.queryLocalStore(store, keys);
+	}
+
+}
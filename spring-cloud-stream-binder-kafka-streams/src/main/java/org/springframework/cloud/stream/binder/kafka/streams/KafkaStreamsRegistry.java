@@ -19,9 +19,11 @@ package org.springframework.cloud.stream.binder.kafka.streams;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 
 import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.StreamsConfig;
 
 import org.springframework.kafka.config.StreamsBuilderFactoryBean;
 
@@ -43,6 +45,10 @@ class KafkaStreamsRegistry {
 
 	private final Set<KafkaStreams> kafkaStreams = new HashSet<>();
 
+	KafkaStreamsBinderMetrics getKafkaStreamsBinderMetrics() {
+		return this.kafkaStreamsBinderMetrics;
+	}
+
 	Set<KafkaStreams> getKafkaStreams() {
 		return this.kafkaStreams;
 	}
@@ -53,11 +59,31 @@ class KafkaStreamsRegistry {
 	 */
 	void registerKafkaStreams(KafkaStreams kafkaStreams) {
 		if (this.kafkaStreamsBinderMetrics != null) {
-			this.kafkaStreamsBinderMetrics.addMetrics(kafkaStreams);
+			this.kafkaStreamsBinderMetrics.addMetrics(kafkaStreams, applicationId(kafkaStreams));
 		}
 		this.kafkaStreams.add(kafkaStreams);
 	}
 
+	/**
+	 * Remove a {@link KafkaStreams} object that is being stopped, along with its metrics.
+	 * @param kafkaStreams {@link KafkaStreams} object
+	 */
+	void unregisterKafkaStreams(KafkaStreams kafkaStreams) {
+		if (this.kafkaStreamsBinderMetrics != null) {
+			this.kafkaStreamsBinderMetrics.removeMetrics(kafkaStreams);
+		}
+		this.kafkaStreams.remove(kafkaStreams);
+		this.streamsStreamsBuilderFactoryBeanMap.remove(kafkaStreams);
+	}
+
+	private String applicationId(KafkaStreams kafkaStreams) {
+		StreamsBuilderFactoryBean streamsBuilderFactoryBean = streamBuilderFactoryBean(kafkaStreams);
+		Properties streamsConfiguration = streamsBuilderFactoryBean != null
+				? streamsBuilderFactoryBean.getStreamsConfiguration() : null;
+		return streamsConfiguration != null
+				? streamsConfiguration.getProperty(StreamsConfig.APPLICATION_ID_CONFIG) : null;
+	}
+
 	/**
 	 * Make an association between {@link KafkaStreams} and its corresponding {@link StreamsBuilderFactoryBean}.
 	 *
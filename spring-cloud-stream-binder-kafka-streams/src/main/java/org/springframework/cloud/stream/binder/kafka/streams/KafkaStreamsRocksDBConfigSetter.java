@@ -0,0 +1,175 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.stream.binder.kafka.streams;
+
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.kafka.streams.state.RocksDBConfigSetter;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.Cache;
+import org.rocksdb.CompactionStyle;
+import org.rocksdb.LRUCache;
+import org.rocksdb.Options;
+import org.rocksdb.WriteBufferManager;
+
+import org.springframework.cloud.stream.binder.kafka.streams.properties.KafkaStreamsBinderConfigurationProperties;
+import org.springframework.cloud.stream.binder.kafka.streams.properties.KafkaStreamsStateStoreProperties;
+
+/**
+ * {@link RocksDBConfigSetter} that bounds the off-heap memory of all the persistent
+ * stores in the JVM: the stores share one LRU block cache, which also holds their index
+ * and filter blocks, and one {@link WriteBufferManager} that charges the memtables
+ * against that cache. The bloom filter and the compaction style can be set per store.
+ * <p>
+ * Kafka Streams creates an instance per store; the settings are read from the streams
+ * configuration, where the binder adds them when
+ * {@code spring.cloud.stream.kafka.streams.binder.rocks-db.enabled} is true. The cache
+ * and the write buffer manager are created from the settings of the first store opened
+ * and are kept until the JVM exits.
+ *
+ * @author agent
+ * @since 3.0
+ */
+public class KafkaStreamsRocksDBConfigSetter implements RocksDBConfigSetter {
+
+	/**
+	 * Streams configuration key of the
+	 * {@link KafkaStreamsBinderConfigurationProperties.RocksDb} settings.
+	 */
+	public static final String ROCKSDB_PROPERTIES_CONFIG = "spring.cloud.stream.kafka.streams.binder.rocksdb";
+
+	/**
+	 * Streams configuration key of the map of {@link KafkaStreamsStateStoreProperties}
+	 * by store name.
+	 */
+	public static final String STORE_PROPERTIES_CONFIG = "spring.cloud.stream.kafka.streams.binder.rocksdb.stores";
+
+	private static final Log LOG = LogFactory.getLog(KafkaStreamsRocksDBConfigSetter.class);
+
+	private static SharedMemory sharedMemory;
+
+	private BloomFilter filter;
+
+	@Override
+	public void setConfig(String storeName, Options options, Map<String, Object> configs) {
+		KafkaStreamsBinderConfigurationProperties.RocksDb settings =
+				(KafkaStreamsBinderConfigurationProperties.RocksDb) configs.get(ROCKSDB_PROPERTIES_CONFIG);
+		if (settings == null) {
+			settings = new KafkaStreamsBinderConfigurationProperties.RocksDb();
+		}
+		SharedMemory memory = sharedMemory(settings);
+		KafkaStreamsStateStoreProperties store = storeProperties(storeName, configs);
+
+		BlockBasedTableConfig tableConfig = (BlockBasedTableConfig) options.tableFormatConfig();
+		tableConfig.setBlockCache(memory.cache);
+		tableConfig.setCacheIndexAndFilterBlocks(true);
+		tableConfig.setCacheIndexAndFilterBlocksWithHighPriority(true);
+		tableConfig.setPinL0FilterAndIndexBlocksInCache(true);
+		int bitsPerKey = store != null && store.getBloomFilterBitsPerKey() != null
+				? store.getBloomFilterBitsPerKey() : settings.getBloomFilterBitsPerKey();
+		if (bitsPerKey > 0) {
+			this.filter = new BloomFilter(bitsPerKey);
+		}
+		tableConfig.setFilter(this.filter);
+		options.setTableFormatConfig(tableConfig);
+		options.setWriteBufferManager(memory.writeBufferManager);
+
+		CompactionStyle compactionStyle = store != null && store.getCompactionStyle() != null
+				? store.getCompactionStyle() : settings.getCompactionStyle();
+		if (compactionStyle != null) {
+			options.setCompactionStyle(compactionStyle);
+		}
+	}
+
+	@Override
+	public void close(String storeName, Options options) {
+		if (this.filter != null) {
+			this.filter.close();
+			this.filter = null;
+		}
+	}
+
+	/**
+	 * Find the properties of a store; the segments of window and session stores are named
+	 * after the store, followed by a dot and the segment id.
+	 */
+	@SuppressWarnings("unchecked")
+	private static KafkaStreamsStateStoreProperties storeProperties(String storeName,
+			Map<String, Object> configs) {
+
+		Map<String, KafkaStreamsStateStoreProperties> stores =
+				(Map<String, KafkaStreamsStateStoreProperties>) configs.get(STORE_PROPERTIES_CONFIG);
+		if (stores == null) {
+			return null;
+		}
+		KafkaStreamsStateStoreProperties store = stores.get(storeName);
+		int dot = storeName.lastIndexOf('.');
+		if (store == null && dot > 0) {
+			store = stores.get(storeName.substring(0, dot));
+		}
+		return store;
+	}
+
+	static synchronized SharedMemory sharedMemory(
+			KafkaStreamsBinderConfigurationProperties.RocksDb settings) {
+
+		if (sharedMemory == null) {
+			Cache cache = new LRUCache(settings.getTotalMemory(), -1, false,
+					settings.getHighPriorityPoolRatio());
+			WriteBufferManager writeBufferManager = new WriteBufferManager(
+					(long) (settings.getTotalMemory() * settings.getWriteBufferRatio()), cache);
+			sharedMemory = new SharedMemory(settings.getTotalMemory(), cache, writeBufferManager);
+			if (LOG.isInfoEnabled()) {
+				LOG.info("RocksDB stores share " + settings.getTotalMemory() + " bytes of block cache");
+			}
+		}
+		else if (sharedMemory.totalMemory != settings.getTotalMemory()) {
+			LOG.warn("RocksDB stores already share " + sharedMemory.totalMemory
+					+ " bytes of block cache; ignoring " + settings.getTotalMemory());
+		}
+		return sharedMemory;
+	}
+
+	static final class SharedMemory {
+
+		private final long totalMemory;
+
+		private final Cache cache;
+
+		private final WriteBufferManager writeBufferManager;
+
+		SharedMemory(long totalMemory, Cache cache, WriteBufferManager writeBufferManager) {
+			this.totalMemory = totalMemory;
+			this.cache = cache;
+			this.writeBufferManager = writeBufferManager;
+		}
+
+		Cache getCache() {
+			return this.cache;
+		}
+
+		WriteBufferManager getWriteBufferManager() {
+			return this.writeBufferManager;
+		}
+
+	}
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka.streams;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+/**
+ * Actuator endpoint that shows the {@link org.apache.kafka.common.serialization.Serde}
+ * beans known to the binder, with the type each one handles, and the Serde bean chosen
+ * for each type resolved so far.
+ *
+ * @author agent
+ * @since 3.0
+ */
+@Endpoint(id = "kafkastreamsserdes")
+public class KafkaStreamsSerdesEndpoint {
+
+	private final KeyValueSerdeResolver keyValueSerdeResolver;
+
+	public KafkaStreamsSerdesEndpoint(KeyValueSerdeResolver keyValueSerdeResolver) {
+		this.keyValueSerdeResolver = keyValueSerdeResolver;
+	}
+
+	@ReadOperation
+	public Map<String, Object> serdes() {
+		SerdeBeanIndex serdeBeanIndex = this.keyValueSerdeResolver.getSerdeBeanIndex();
+		Map<String, String> serdeBeans = new LinkedHashMap<>();
+		serdeBeanIndex.getSerdeTypes().forEach((beanName, type) -> serdeBeans.put(beanName, type.getName()));
+		Map<String, String> resolvedTypes = new TreeMap<>();
+		serdeBeanIndex.getLookups().forEach((type, beanName) -> resolvedTypes.put(type.getName(),
+				beanName.orElse(null)));
+		Map<String, Object> serdes = new LinkedHashMap<>();
+		serdes.put("serdeBeans", serdeBeans);
+		serdes.put("resolvedTypes", resolvedTypes);
+		return serdes;
+	}
+
+}
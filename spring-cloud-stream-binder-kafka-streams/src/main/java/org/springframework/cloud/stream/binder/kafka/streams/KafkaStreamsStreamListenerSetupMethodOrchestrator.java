@@ -17,6 +17,7 @@
 package org.springframework.cloud.stream.binder.kafka.streams;
 
 import java.lang.reflect.Method;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -35,6 +36,7 @@ import org.apache.kafka.streams.kstream.KStream;
 import org.apache.kafka.streams.kstream.KTable;
 import org.apache.kafka.streams.state.StoreBuilder;
 import org.apache.kafka.streams.state.Stores;
+import org.rocksdb.CompactionStyle;
 
 import org.springframework.beans.factory.BeanInitializationException;
 import org.springframework.cloud.stream.annotation.Input;
@@ -329,22 +331,33 @@ class KafkaStreamsStreamListenerSetupMethodOrchestrator extends AbstractKafkaStr
 			Serde<?> valueSerde = this.keyValueSerdeResolver
 					.getStateStoreValueSerde(spec.getValueSerdeString());
 			StoreBuilder builder;
+			boolean inMemory = spec.getStorage() == KafkaStreamsStateStoreProperties.Storage.IN_MEMORY;
 			switch (spec.getType()) {
 				case KEYVALUE:
 					builder = Stores.keyValueStoreBuilder(
-							Stores.persistentKeyValueStore(spec.getName()), keySerde,
-							valueSerde);
+							KafkaStreamsBinderUtils.keyValueStoreSupplier(spec.getName(),
+									spec.getStorage(), spec.getMaxEntries()),
+							keySerde, valueSerde);
 					break;
 				case WINDOW:
+					Assert.isTrue(spec.getStorage() != KafkaStreamsStateStoreProperties.Storage.LRU,
+							"LRU storage is only supported for keyvalue stores");
 					builder = Stores
-							.windowStoreBuilder(
-									Stores.persistentWindowStore(spec.getName(),
-											spec.getRetention(), 3, spec.getLength(), false),
+							.windowStoreBuilder(inMemory
+									? Stores.inMemoryWindowStore(spec.getName(),
+											Duration.ofMillis(spec.getRetention()),
+											Duration.ofMillis(spec.getLength()), false)
+									: Stores.persistentWindowStore(spec.getName(),
+											spec.getRetention(), spec.getSegments(), spec.getLength(), false),
 									keySerde, valueSerde);
 					break;
 				case SESSION:
-					builder = Stores.sessionStoreBuilder(Stores.persistentSessionStore(
-							spec.getName(), spec.getRetention()), keySerde, valueSerde);
+					Assert.isTrue(spec.getStorage() != KafkaStreamsStateStoreProperties.Storage.LRU,
+							"LRU storage is only supported for keyvalue stores");
+					builder = Stores.sessionStoreBuilder(inMemory
+							? Stores.inMemorySessionStore(spec.getName(), Duration.ofMillis(spec.getRetention()))
+							: Stores.persistentSessionStore(spec.getName(), spec.getRetention()),
+							keySerde, valueSerde);
 					break;
 				default:
 					throw new UnsupportedOperationException(
@@ -356,6 +369,7 @@ class KafkaStreamsStreamListenerSetupMethodOrchestrator extends AbstractKafkaStr
 			if (spec.isLoggingDisabled()) {
 				builder = builder.withLoggingDisabled();
 			}
+			registerStateStoreProperties(spec);
 			return builder;
 		}
 		catch (Exception ex) {
@@ -469,12 +483,21 @@ class KafkaStreamsStreamListenerSetupMethodOrchestrator extends AbstractKafkaStr
 				KafkaStreamsStateStoreProperties props = new KafkaStreamsStateStoreProperties();
 				props.setName(spec.name());
 				props.setType(spec.type());
+				props.setStorage(spec.storage());
+				props.setMaxEntries(spec.maxEntries());
+				props.setSegments(spec.segments());
 				props.setLength(spec.lengthMs());
 				props.setKeySerdeString(spec.keySerde());
 				props.setRetention(spec.retentionMs());
 				props.setValueSerdeString(spec.valueSerde());
 				props.setCacheEnabled(spec.cache());
 				props.setLoggingDisabled(!spec.logging());
+				if (spec.bloomFilterBitsPerKey() >= 0) {
+					props.setBloomFilterBitsPerKey(spec.bloomFilterBitsPerKey());
+				}
+				if (StringUtils.hasText(spec.compactionStyle())) {
+					props.setCompactionStyle(CompactionStyle.valueOf(spec.compactionStyle()));
+				}
 				return props;
 			}
 		}
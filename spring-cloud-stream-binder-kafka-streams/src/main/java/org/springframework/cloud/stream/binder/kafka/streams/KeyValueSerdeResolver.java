@@ -16,10 +16,9 @@
 
 package org.springframework.cloud.stream.binder.kafka.streams;
 
-import java.lang.reflect.Method;
-import java.util.Arrays;
 import java.util.Map;
-import java.util.Optional;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.UUID;
 
 import org.apache.commons.logging.Log;
@@ -32,18 +31,19 @@ import org.apache.kafka.streams.kstream.KStream;
 import org.apache.kafka.streams.kstream.KTable;
 
 import org.springframework.beans.BeansException;
-import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
 import org.springframework.cloud.stream.binder.ConsumerProperties;
 import org.springframework.cloud.stream.binder.ProducerProperties;
 import org.springframework.cloud.stream.binder.kafka.streams.properties.KafkaStreamsBinderConfigurationProperties;
 import org.springframework.cloud.stream.binder.kafka.streams.properties.KafkaStreamsConsumerProperties;
 import org.springframework.cloud.stream.binder.kafka.streams.properties.KafkaStreamsProducerProperties;
+import org.springframework.cloud.stream.binder.kafka.streams.serde.PrimitiveSerdes;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.core.ResolvableType;
 import org.springframework.kafka.support.serializer.JsonSerde;
-import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
 
 /**
@@ -70,7 +70,8 @@ import org.springframework.util.StringUtils;
  * @author Soby Chacko
  * @author Lei Chen
  */
-public class KeyValueSerdeResolver implements ApplicationContextAware {
+public class KeyValueSerdeResolver implements ApplicationContextAware,
+		ApplicationListener<ContextRefreshedEvent> {
 
 	private static final Log LOG = LogFactory.getLog(KeyValueSerdeResolver.class);
 
@@ -80,6 +81,8 @@ public class KeyValueSerdeResolver implements ApplicationContextAware {
 
 	private ConfigurableApplicationContext context;
 
+	private volatile SerdeBeanIndex serdeBeanIndex;
+
 	KeyValueSerdeResolver(Map<String, Object> streamConfigGlobalProperties,
 			KafkaStreamsBinderConfigurationProperties binderConfigurationProperties) {
 		this.streamConfigGlobalProperties = streamConfigGlobalProperties;
@@ -292,41 +295,13 @@ public class KeyValueSerdeResolver implements ApplicationContextAware {
 	private Serde<?> getSerde(ResolvableType generic, Serde<?> fallbackSerde) {
 		Serde<?> serde = null;
 
-		Map<String, Serde> beansOfType = context.getBeansOfType(Serde.class);
-		Serde<?>[] serdeBeans = new Serde<?>[1];
-
 		final Class<?> genericRawClazz = generic.getRawClass();
-		beansOfType.forEach((k, v) -> {
-			final Class<?> classObj = ClassUtils.resolveClassName(((AnnotatedBeanDefinition)
-							context.getBeanFactory().getBeanDefinition(k))
-							.getMetadata().getClassName(),
-					ClassUtils.getDefaultClassLoader());
-			try {
-				Method[] methods = classObj.getMethods();
-				Optional<Method> serdeBeanMethod = Arrays.stream(methods).filter(m -> m.getName().equals(k)).findFirst();
-				if (serdeBeanMethod.isPresent()) {
-					Method method = serdeBeanMethod.get();
-					ResolvableType resolvableType = ResolvableType.forMethodReturnType(method, classObj);
-					ResolvableType serdeBeanGeneric = resolvableType.getGeneric(0);
-					Class<?> serdeGenericRawClazz = serdeBeanGeneric.getRawClass();
-					if (serdeGenericRawClazz != null && genericRawClazz != null) {
-						if (serdeGenericRawClazz.isAssignableFrom(genericRawClazz)) {
-							serdeBeans[0] = v;
-						}
-					}
-				}
-			}
-			catch (Exception e) {
-				// Pass through...
-			}
-
-		});
-
-		if (serdeBeans[0] != null) {
-			return serdeBeans[0];
-		}
-
 		if (genericRawClazz != null) {
+			Serde<?> serdeBean = getSerdeBeanIndex().lookup(genericRawClazz);
+			if (serdeBean != null) {
+				return serdeBean;
+			}
+			Serde<?> primitiveSerde = getPrimitiveSerde(generic);
 			if (Integer.class.isAssignableFrom(genericRawClazz)) {
 				serde = Serdes.Integer();
 			}
@@ -351,6 +326,9 @@ public class KeyValueSerdeResolver implements ApplicationContextAware {
 			else if (UUID.class.isAssignableFrom(genericRawClazz)) {
 				serde = Serdes.UUID();
 			}
+			else if (primitiveSerde != null) {
+				serde = primitiveSerde;
+			}
 			else if (!isSerdeFromStandardDefaults(fallbackSerde)) {
 				//User purposely set a default serde that is not one of the above
 				serde = fallbackSerde;
@@ -365,6 +343,42 @@ public class KeyValueSerdeResolver implements ApplicationContextAware {
 		return serde;
 	}
 
+	/*
+	 * Opt-in; without it these types keep falling back to JsonSerde, whose wire format is
+	 * not compatible with the fixed-width one.
+	 */
+	private Serde<?> getPrimitiveSerde(ResolvableType generic) {
+		if (!this.binderConfigurationProperties.isPrimitiveSerdesEnabled()) {
+			return null;
+		}
+		Class<?> rawClass = generic.getRawClass();
+		if (long[].class.equals(rawClass)) {
+			return PrimitiveSerdes.longArray();
+		}
+		else if (int[].class.equals(rawClass)) {
+			return PrimitiveSerdes.intArray();
+		}
+		else if (double[].class.equals(rawClass)) {
+			return PrimitiveSerdes.doubleArray();
+		}
+		else if (isSortedSetOf(generic, Long.class)) {
+			return PrimitiveSerdes.longSortedSet();
+		}
+		else if (isSortedSetOf(generic, Integer.class)) {
+			return PrimitiveSerdes.integerSortedSet();
+		}
+		else if (isSortedSetOf(generic, Double.class)) {
+			return PrimitiveSerdes.doubleSortedSet();
+		}
+		return null;
+	}
+
+	private boolean isSortedSetOf(ResolvableType generic, Class<?> elementType) {
+		Class<?> rawClass = generic.getRawClass();
+		return SortedSet.class.isAssignableFrom(rawClass) && rawClass.isAssignableFrom(TreeSet.class)
+				&& elementType.equals(generic.getGeneric(0).resolve());
+	}
+
 	private boolean isSerdeFromStandardDefaults(Serde<?> serde) {
 		if (serde != null) {
 			if (Number.class.isAssignableFrom(serde.getClass())) {
@@ -432,4 +446,21 @@ public class KeyValueSerdeResolver implements ApplicationContextAware {
 	public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
 		context = (ConfigurableApplicationContext) applicationContext;
 	}
+
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		if (event.getApplicationContext().equals(this.context) && this.serdeBeanIndex != null) {
+			// pick up Serde beans registered while the context was refreshed
+			this.serdeBeanIndex.reset();
+		}
+	}
+
+	SerdeBeanIndex getSerdeBeanIndex() {
+		SerdeBeanIndex serdeBeanIndex = this.serdeBeanIndex;
+		if (serdeBeanIndex == null) {
+			serdeBeanIndex = new SerdeBeanIndex(this.context);
+			this.serdeBeanIndex = serdeBeanIndex;
+		}
+		return serdeBeanIndex;
+	}
 }
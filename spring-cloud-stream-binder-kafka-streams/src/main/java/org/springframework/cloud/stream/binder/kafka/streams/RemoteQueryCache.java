@@ -0,0 +1,267 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka.streams;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Bounded near-cache of the values returned by other instances for one store, keyed by
+ * the Base64 encoded serialized key. Entries expire after a time to live and the least
+ * recently used entries are evicted beyond the maximum size. Keys that were not found are
+ * cached as well. When started, a consumer tails the changelog topic of the store and
+ * invalidates the keys written to it.
+ *
+ * @author agent
+ * @since 3.0
+ */
+final class RemoteQueryCache {
+
+	private static final Log LOG = LogFactory.getLog(RemoteQueryCache.class);
+
+	private final String storeName;
+
+	private final int maxSize;
+
+	private final long timeToLive;
+
+	private final LongSupplier clock;
+
+	private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	/*
+	 * Version of the last invalidation of the most recently invalidated keys, bounded to
+	 * maxSize; a put with a token older than a forgotten version is rejected.
+	 */
+	private final Map<String, Long> invalidated = new LinkedHashMap<>();
+
+	private long version;
+
+	private long forgottenVersion;
+
+	private Consumer<byte[], byte[]> consumer;
+
+	private Thread invalidator;
+
+	private volatile boolean running;
+
+	RemoteQueryCache(String storeName, int maxSize, Duration timeToLive) {
+		this(storeName, maxSize, timeToLive, System::nanoTime);
+	}
+
+	RemoteQueryCache(String storeName, int maxSize, Duration timeToLive, LongSupplier clock) {
+		this.storeName = storeName;
+		this.maxSize = maxSize;
+		this.timeToLive = timeToLive.toNanos();
+		this.clock = clock;
+	}
+
+	/**
+	 * Look up a key.
+	 * @param key the encoded key.
+	 * @return null if the key is not cached, an empty optional if the key is cached as
+	 * not found, the encoded value otherwise.
+	 */
+	synchronized Optional<String> get(String key) {
+		Entry entry = this.entries.get(key);
+		if (entry != null && this.clock.getAsLong() - entry.timestamp > this.timeToLive) {
+			this.entries.remove(key);
+			this.evictions.incrementAndGet();
+			entry = null;
+		}
+		if (entry == null) {
+			this.misses.incrementAndGet();
+			return null;
+		}
+		this.hits.incrementAndGet();
+		return Optional.ofNullable(entry.value);
+	}
+
+	/**
+	 * Return a token to pass to {@link #put}; a value fetched after it was taken is only
+	 * cached if its key was not invalidated in between.
+	 * @return the token.
+	 */
+	synchronized long getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Cache the value of a key.
+	 * @param key the encoded key.
+	 * @param value the encoded value, or null if the key was not found.
+	 * @param version the token taken before the value was requested.
+	 */
+	synchronized void put(String key, String value, long version) {
+		Long invalidatedVersion = this.invalidated.get(key);
+		if ((invalidatedVersion != null && invalidatedVersion > version) || this.forgottenVersion > version) {
+			return;
+		}
+		this.entries.put(key, new Entry(value, this.clock.getAsLong()));
+		Iterator<String> iterator = this.entries.keySet().iterator();
+		while (this.entries.size() > this.maxSize && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+			this.evictions.incrementAndGet();
+		}
+	}
+
+	synchronized void invalidate(String key) {
+		this.entries.remove(key);
+		this.invalidated.remove(key);
+		this.invalidated.put(key, ++this.version);
+		if (this.invalidated.size() > this.maxSize) {
+			Iterator<Long> iterator = this.invalidated.values().iterator();
+			this.forgottenVersion = iterator.next();
+			iterator.remove();
+		}
+	}
+
+	synchronized int size() {
+		return this.entries.size();
+	}
+
+	long getHits() {
+		return this.hits.get();
+	}
+
+	long getMisses() {
+		return this.misses.get();
+	}
+
+	long getEvictions() {
+		return this.evictions.get();
+	}
+
+	String getStoreName() {
+		return this.storeName;
+	}
+
+	synchronized boolean isInvalidating() {
+		return this.invalidator != null;
+	}
+
+	/**
+	 * Start tailing the changelog topic of the store from its end. Without partitions
+	 * (e.g. when logging is disabled for the store), entries only expire.
+	 * @param consumer the consumer, closed when stopped.
+	 * @param topic the changelog topic.
+	 */
+	synchronized void startInvalidation(Consumer<byte[], byte[]> consumer, String topic) {
+		if (this.invalidator != null) {
+			consumer.close();
+			return;
+		}
+		List<TopicPartition> partitions = new ArrayList<>();
+		List<PartitionInfo> partitionInfos = consumer.partitionsFor(topic);
+		if (partitionInfos != null) {
+			partitionInfos.forEach((info) -> partitions.add(new TopicPartition(topic, info.partition())));
+		}
+		if (partitions.isEmpty()) {
+			LOG.warn("No changelog topic " + topic + " for store " + this.storeName
+					+ "; near-cache entries will only expire");
+		}
+		consumer.assign(partitions);
+		consumer.seekToEnd(partitions);
+		this.consumer = consumer;
+		this.running = true;
+		this.invalidator = new CustomizableThreadFactory("kafka-streams-near-cache-")
+				.newThread(this::tail);
+		this.invalidator.setDaemon(true);
+		this.invalidator.start();
+	}
+
+	private void tail() {
+		try {
+			while (this.running) {
+				if (this.consumer.assignment().isEmpty()) {
+					return;
+				}
+				for (ConsumerRecord<byte[], byte[]> record : this.consumer.poll(Duration.ofMillis(500))) {
+					if (record.key() != null) {
+						invalidate(Base64.getEncoder().encodeToString(record.key()));
+					}
+				}
+			}
+		}
+		catch (WakeupException e) {
+			// stopped
+		}
+		catch (Exception e) {
+			LOG.error("Stopped tailing the changelog of store " + this.storeName
+					+ "; near-cache entries will only expire", e);
+		}
+		finally {
+			this.consumer.close();
+		}
+	}
+
+	void stop() {
+		Thread invalidator;
+		synchronized (this) {
+			invalidator = this.invalidator;
+			this.running = false;
+		}
+		if (invalidator != null) {
+			this.consumer.wakeup();
+			try {
+				invalidator.join(5000);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static final class Entry {
+
+		private final String value;
+
+		private final long timestamp;
+
+		Entry(String value, long timestamp) {
+			this.value = value;
+			this.timestamp = timestamp;
+		}
+
+	}
+
+}
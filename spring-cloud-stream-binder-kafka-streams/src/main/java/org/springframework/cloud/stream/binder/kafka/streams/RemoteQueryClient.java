@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka.streams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.streams.state.HostInfo;
+
+import org.springframework.cloud.stream.binder.kafka.streams.properties.KafkaStreamsBinderConfigurationProperties;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Sends a batch of serialized keys to the {@link KafkaStreamsQueryEndpoint} of another
+ * application instance and returns the serialized values it found. Keys and values are
+ * Base64 encoded in the JSON request and response. Connections are kept alive and reused
+ * by the JDK between requests to the same host.
+ *
+ * @author agent
+ * @since 3.0
+ */
+final class RemoteQueryClient {
+
+	private static final TypeReference<Map<String, String>> RESPONSE_TYPE =
+			new TypeReference<Map<String, String>>() { };
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final KafkaStreamsBinderConfigurationProperties.RemoteQuery properties;
+
+	RemoteQueryClient(KafkaStreamsBinderConfigurationProperties.RemoteQuery properties) {
+		this.properties = properties;
+	}
+
+	/**
+	 * Query a store of another instance.
+	 * @param hostInfo the instance.
+	 * @param storeName the store name.
+	 * @param keys the Base64 encoded serialized keys.
+	 * @return the Base64 encoded serialized values by key; keys that are not found are
+	 * omitted.
+	 * @throws IOException if the request fails.
+	 */
+	Map<String, String> query(HostInfo hostInfo, String storeName, List<String> keys) throws IOException {
+		URL url = new URL("http", hostInfo.host(), hostInfo.port(),
+				this.properties.getPath() + "/" + URLEncoder.encode(storeName, "UTF-8"));
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setConnectTimeout(this.properties.getConnectTimeout());
+		connection.setReadTimeout(this.properties.getReadTimeout());
+		connection.setRequestProperty("Content-Type", "application/json");
+		connection.setRequestProperty("Accept", "application/json");
+		try (OutputStream out = connection.getOutputStream()) {
+			this.objectMapper.writeValue(out, Collections.singletonMap("keys", keys));
+		}
+		int status = connection.getResponseCode();
+		if (status != HttpURLConnection.HTTP_OK) {
+			InputStream error = connection.getErrorStream();
+			if (error != null) {
+				// consume the response so that the connection can be reused
+				try (InputStream in = error) {
+					StreamUtils.drain(in);
+				}
+			}
+			throw new IOException("Query of store " + storeName + " on " + hostInfo.host() + ":"
+					+ hostInfo.port() + " failed with status " + status);
+		}
+		byte[] response;
+		try (InputStream in = connection.getInputStream()) {
+			response = StreamUtils.copyToByteArray(in);
+		}
+		return response.length == 0 ? Collections.emptyMap()
+				: this.objectMapper.readValue(response, RESPONSE_TYPE);
+	}
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka.streams;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.kafka.common.serialization.Serde;
+
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.type.MethodMetadata;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Index of the {@link Serde} beans of the application context by the type they handle.
+ *
+ * The index is built from the bean definitions on the first lookup, without creating the
+ * beans, and the result of each lookup is cached. When several Serde beans can handle a
+ * type, the one for the most specific type wins; among Serdes for unrelated types, the
+ * first registered wins and a warning is logged.
+ *
+ * @author agent
+ * @since 3.0
+ */
+final class SerdeBeanIndex {
+
+	private static final Log LOG = LogFactory.getLog(SerdeBeanIndex.class);
+
+	private final ConfigurableApplicationContext context;
+
+	private final Map<Class<?>, Optional<String>> lookups = new ConcurrentHashMap<>();
+
+	private volatile Map<String, Class<?>> serdeTypes;
+
+	SerdeBeanIndex(ConfigurableApplicationContext context) {
+		this.context = context;
+	}
+
+	/**
+	 * Find the Serde bean for a type.
+	 * @param type the type.
+	 * @return the Serde, or null if no Serde bean handles the type.
+	 */
+	Serde<?> lookup(Class<?> type) {
+		return this.lookups.computeIfAbsent(type, this::resolve)
+				.map((beanName) -> this.context.getBean(beanName, Serde.class))
+				.orElse(null);
+	}
+
+	/**
+	 * Discard the index, so that it is rebuilt on the next lookup.
+	 */
+	void reset() {
+		this.serdeTypes = null;
+		this.lookups.clear();
+	}
+
+	/**
+	 * Return the type handled by each indexed Serde bean, in registration order.
+	 * @return the map of bean names to types.
+	 */
+	Map<String, Class<?>> getSerdeTypes() {
+		Map<String, Class<?>> serdeTypes = this.serdeTypes;
+		if (serdeTypes == null) {
+			serdeTypes = buildIndex();
+			this.serdeTypes = serdeTypes;
+		}
+		return serdeTypes;
+	}
+
+	/**
+	 * Return the lookups made so far and the bean they resolved to, if any.
+	 * @return the map of types to bean names.
+	 */
+	Map<Class<?>, Optional<String>> getLookups() {
+		return Collections.unmodifiableMap(this.lookups);
+	}
+
+	private Optional<String> resolve(Class<?> type) {
+		String match = null;
+		Class<?> matchType = null;
+		List<String> unrelated = new ArrayList<>();
+		for (Map.Entry<String, Class<?>> entry : getSerdeTypes().entrySet()) {
+			Class<?> serdeType = entry.getValue();
+			if (!serdeType.isAssignableFrom(type)) {
+				continue;
+			}
+			if (matchType == null || (matchType.isAssignableFrom(serdeType) && !matchType.equals(serdeType))) {
+				match = entry.getKey();
+				matchType = serdeType;
+			}
+		}
+		if (match != null) {
+			for (Map.Entry<String, Class<?>> entry : getSerdeTypes().entrySet()) {
+				Class<?> serdeType = entry.getValue();
+				if (!entry.getKey().equals(match) && serdeType.isAssignableFrom(type)
+						&& !serdeType.isAssignableFrom(matchType)) {
+					unrelated.add(entry.getKey());
+				}
+			}
+			if (!unrelated.isEmpty() && LOG.isWarnEnabled()) {
+				LOG.warn("Multiple Serde beans match type " + type.getName() + "; using '" + match
+						+ "' and ignoring " + unrelated);
+			}
+		}
+		return Optional.ofNullable(match);
+	}
+
+	private Map<String, Class<?>> buildIndex() {
+		Map<String, Class<?>> serdeTypes = new LinkedHashMap<>();
+		for (String beanName : this.context.getBeanNamesForType(Serde.class)) {
+			try {
+				Class<?> serdeType = serdeType(beanName);
+				if (serdeType != null) {
+					serdeTypes.put(beanName, serdeType);
+				}
+			}
+			catch (Exception e) {
+				// Pass through...
+			}
+		}
+		return Collections.unmodifiableMap(serdeTypes);
+	}
+
+	private Class<?> serdeType(String beanName) {
+		ResolvableType beanType = ResolvableType.NONE;
+		BeanDefinition beanDefinition = this.context.getBeanFactory().getBeanDefinition(beanName);
+		if (beanDefinition instanceof AnnotatedBeanDefinition) {
+			MethodMetadata factoryMethod = ((AnnotatedBeanDefinition) beanDefinition).getFactoryMethodMetadata();
+			if (factoryMethod != null) {
+				Class<?> declaringClass = ClassUtils.resolveClassName(factoryMethod.getDeclaringClassName(),
+						this.context.getClassLoader());
+				for (Method method : declaringClass.getDeclaredMethods()) {
+					if (method.getName().equals(factoryMethod.getMethodName())
+							&& Serde.class.isAssignableFrom(method.getReturnType())) {
+						beanType = ResolvableType.forMethodReturnType(method, declaringClass);
+						break;
+					}
+				}
+			}
+		}
+		if (beanType.resolve() == null) {
+			beanType = ResolvableType.forClass(this.context.getType(beanName));
+		}
+		return beanType.as(Serde.class).getGeneric(0).resolve();
+	}
+
+}
@@ -74,9 +74,9 @@ class StreamsBuilderFactoryManager implements SmartLifecycle {
 				for (StreamsBuilderFactoryBean streamsBuilderFactoryBean : streamsBuilderFactoryBeans) {
 					streamsBuilderFactoryBean.start();
 					final KafkaStreams kafkaStreams = streamsBuilderFactoryBean.getKafkaStreams();
+					this.kafkaStreamsRegistry.addToStreamBuilderFactoryBeanMap(kafkaStreams, streamsBuilderFactoryBean);
 					this.kafkaStreamsRegistry.registerKafkaStreams(
 							kafkaStreams);
-					this.kafkaStreamsRegistry.addToStreamBuilderFactoryBeanMap(kafkaStreams, streamsBuilderFactoryBean);
 				}
 				this.running = true;
 			}
@@ -93,6 +93,10 @@ class StreamsBuilderFactoryManager implements SmartLifecycle {
 				Set<StreamsBuilderFactoryBean> streamsBuilderFactoryBeans = this.kafkaStreamsBindingInformationCatalogue
 						.getStreamsBuilderFactoryBeans();
 				for (StreamsBuilderFactoryBean streamsBuilderFactoryBean : streamsBuilderFactoryBeans) {
+					KafkaStreams kafkaStreams = streamsBuilderFactoryBean.getKafkaStreams();
+					if (kafkaStreams != null) {
+						this.kafkaStreamsRegistry.unregisterKafkaStreams(kafkaStreams);
+					}
 					streamsBuilderFactoryBean.stop();
 				}
 			}
@@ -75,6 +75,24 @@ public @interface KafkaStreamsStateStore {
 	 */
 	KafkaStreamsStateStoreProperties.StoreType type() default KafkaStreamsStateStoreProperties.StoreType.KEYVALUE;
 
+	/**
+	 * State store storage.
+	 * @return {@link KafkaStreamsStateStoreProperties.Storage} of state store.
+	 */
+	KafkaStreamsStateStoreProperties.Storage storage() default KafkaStreamsStateStoreProperties.Storage.PERSISTENT;
+
+	/**
+	 * Maximum number of entries of an LRU store.
+	 * @return maximum number of entries (for LRU store).
+	 */
+	int maxEntries() default 0;
+
+	/**
+	 * Number of segments of a persistent Windowed store.
+	 * @return number of segments (for persistent windowed store).
+	 */
+	int segments() default 3;
+
 	/**
 	 * Serde used for key.
 	 * @return key serde of state store.
@@ -112,4 +130,18 @@ public @interface KafkaStreamsStateStore {
 	 */
 	boolean logging() default true;
 
+	/**
+	 * Bits per key of the bloom filter, used when the binder configures RocksDB.
+	 * @return the bits per key; 0 disables the filter and a negative value uses the
+	 * binder setting.
+	 */
+	int bloomFilterBitsPerKey() default -1;
+
+	/**
+	 * Compaction style, used when the binder configures RocksDB.
+	 * @return the name of the {@code org.rocksdb.CompactionStyle}; empty uses the binder
+	 * setting.
+	 */
+	String compactionStyle() default "";
+
 }
@@ -19,6 +19,8 @@ package org.springframework.cloud.stream.binder.kafka.streams.properties;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.rocksdb.CompactionStyle;
+
 import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.cloud.stream.binder.kafka.properties.KafkaBinderConfigurationProperties;
 
@@ -59,6 +61,10 @@ public class KafkaStreamsBinderConfigurationProperties
 
 	private StateStoreRetry stateStoreRetry = new StateStoreRetry();
 
+	private RemoteQuery remoteQuery = new RemoteQuery();
+
+	private RocksDb rocksDb = new RocksDb();
+
 	private Map<String, Functions> functions = new HashMap<>();
 
 	public Map<String, Functions> getFunctions() {
@@ -77,6 +83,22 @@ public class KafkaStreamsBinderConfigurationProperties
 		this.stateStoreRetry = stateStoreRetry;
 	}
 
+	public RemoteQuery getRemoteQuery() {
+		return this.remoteQuery;
+	}
+
+	public void setRemoteQuery(RemoteQuery remoteQuery) {
+		this.remoteQuery = remoteQuery;
+	}
+
+	public RocksDb getRocksDb() {
+		return this.rocksDb;
+	}
+
+	public void setRocksDb(RocksDb rocksDb) {
+		this.rocksDb = rocksDb;
+	}
+
 	public String getApplicationId() {
 		return this.applicationId;
 	}
@@ -93,6 +115,14 @@ public class KafkaStreamsBinderConfigurationProperties
 	 */
 	private KafkaStreamsBinderConfigurationProperties.SerdeError serdeError;
 
+	/**
+	 * Whether to infer the fixed-width serdes of {@code PrimitiveSerdes} for
+	 * {@code long[]}, {@code int[]}, {@code double[]} and sorted sets of {@code Long},
+	 * {@code Integer} or {@code Double}, instead of {@code JsonSerde}. Not wire compatible
+	 * with {@code JsonSerde}.
+	 */
+	private boolean primitiveSerdesEnabled;
+
 	public KafkaStreamsBinderConfigurationProperties.SerdeError getSerdeError() {
 		return this.serdeError;
 	}
@@ -102,6 +132,14 @@ public class KafkaStreamsBinderConfigurationProperties
 		this.serdeError = serdeError;
 	}
 
+	public boolean isPrimitiveSerdesEnabled() {
+		return this.primitiveSerdesEnabled;
+	}
+
+	public void setPrimitiveSerdesEnabled(boolean primitiveSerdesEnabled) {
+		this.primitiveSerdesEnabled = primitiveSerdesEnabled;
+	}
+
 	public static class StateStoreRetry {
 
 		private int maxAttempts = 1;
@@ -125,6 +163,140 @@ public class KafkaStreamsBinderConfigurationProperties
 		}
 	}
 
+	/**
+	 * Settings of the requests sent to other application instances by
+	 * {@code InteractiveQueryService#getAll}.
+	 */
+	public static class RemoteQuery {
+
+		/**
+		 * Path of the query endpoint on the other instances; the store name is appended.
+		 */
+		private String path = "/actuator/kafkastreamsquery";
+
+		/**
+		 * Connect timeout in milliseconds.
+		 */
+		private int connectTimeout = 5000;
+
+		/**
+		 * Read timeout in milliseconds.
+		 */
+		private int readTimeout = 10000;
+
+		public String getPath() {
+			return this.path;
+		}
+
+		public void setPath(String path) {
+			this.path = path;
+		}
+
+		public int getConnectTimeout() {
+			return this.connectTimeout;
+		}
+
+		public void setConnectTimeout(int connectTimeout) {
+			this.connectTimeout = connectTimeout;
+		}
+
+		public int getReadTimeout() {
+			return this.readTimeout;
+		}
+
+		public void setReadTimeout(int readTimeout) {
+			this.readTimeout = readTimeout;
+		}
+	}
+
+	/**
+	 * Settings of the binder provided {@code RocksDBConfigSetter}, which puts all the
+	 * persistent stores of the application on one LRU block cache and one write buffer
+	 * manager.
+	 */
+	public static class RocksDb {
+
+		/**
+		 * Whether the binder configures the persistent state stores; ignored when
+		 * {@code rocksdb.config.setter} is set in the streams configuration.
+		 */
+		private boolean enabled;
+
+		/**
+		 * Total off-heap memory in bytes used by the block cache, the index and filter
+		 * blocks and the memtables of all the stores.
+		 */
+		private long totalMemory = 128 * 1024 * 1024;
+
+		/**
+		 * Fraction of the total memory that the memtables may use.
+		 */
+		private double writeBufferRatio = 0.5;
+
+		/**
+		 * Fraction of the block cache reserved for index and filter blocks.
+		 */
+		private double highPriorityPoolRatio = 0.1;
+
+		/**
+		 * Bits per key of the bloom filter, unless set on the store; 0 disables the filter.
+		 */
+		private int bloomFilterBitsPerKey = 10;
+
+		/**
+		 * Compaction style, unless set on the store; the Kafka Streams default when not set.
+		 */
+		private CompactionStyle compactionStyle;
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public long getTotalMemory() {
+			return this.totalMemory;
+		}
+
+		public void setTotalMemory(long totalMemory) {
+			this.totalMemory = totalMemory;
+		}
+
+		public double getWriteBufferRatio() {
+			return this.writeBufferRatio;
+		}
+
+		public void setWriteBufferRatio(double writeBufferRatio) {
+			this.writeBufferRatio = writeBufferRatio;
+		}
+
+		public double getHighPriorityPoolRatio() {
+			return this.highPriorityPoolRatio;
+		}
+
+		public void setHighPriorityPoolRatio(double highPriorityPoolRatio) {
+			this.highPriorityPoolRatio = highPriorityPoolRatio;
+		}
+
+		public int getBloomFilterBitsPerKey() {
+			return this.bloomFilterBitsPerKey;
+		}
+
+		public void setBloomFilterBitsPerKey(int bloomFilterBitsPerKey) {
+			this.bloomFilterBitsPerKey = bloomFilterBitsPerKey;
+		}
+
+		public CompactionStyle getCompactionStyle() {
+			return this.compactionStyle;
+		}
+
+		public void setCompactionStyle(CompactionStyle compactionStyle) {
+			this.compactionStyle = compactionStyle;
+		}
+	}
+
 	public static class Functions {
 
 		/**
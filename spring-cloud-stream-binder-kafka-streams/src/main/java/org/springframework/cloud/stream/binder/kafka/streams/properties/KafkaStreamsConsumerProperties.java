@@ -43,6 +43,18 @@ public class KafkaStreamsConsumerProperties extends KafkaConsumerProperties {
 	 */
 	private String materializedAs;
 
+	/**
+	 * Storage of the store the KTable or GlobalKTable is materialized as.
+	 */
+	private KafkaStreamsStateStoreProperties.Storage materializedAsStorage =
+			KafkaStreamsStateStoreProperties.Storage.PERSISTENT;
+
+	/**
+	 * Maximum number of entries of the store the KTable or GlobalKTable is materialized
+	 * as, when its storage is LRU.
+	 */
+	private int materializedAsMaxEntries;
+
 	/**
 	 * {@link org.apache.kafka.streams.processor.TimestampExtractor} bean name to use for this consumer.
 	 */
@@ -80,6 +92,22 @@ public class KafkaStreamsConsumerProperties extends KafkaConsumerProperties {
 		this.materializedAs = materializedAs;
 	}
 
+	public KafkaStreamsStateStoreProperties.Storage getMaterializedAsStorage() {
+		return this.materializedAsStorage;
+	}
+
+	public void setMaterializedAsStorage(KafkaStreamsStateStoreProperties.Storage materializedAsStorage) {
+		this.materializedAsStorage = materializedAsStorage;
+	}
+
+	public int getMaterializedAsMaxEntries() {
+		return this.materializedAsMaxEntries;
+	}
+
+	public void setMaterializedAsMaxEntries(int materializedAsMaxEntries) {
+		this.materializedAsMaxEntries = materializedAsMaxEntries;
+	}
+
 	public String getTimestampExtractorBeanName() {
 		return timestampExtractorBeanName;
 	}
@@ -16,6 +16,8 @@
 
 package org.springframework.cloud.stream.binder.kafka.streams.properties;
 
+import org.rocksdb.CompactionStyle;
+
 /**
  * Properties for Kafka Streams state store.
  *
@@ -54,6 +56,37 @@ public class KafkaStreamsStateStoreProperties {
 
 	}
 
+	/**
+	 * Enumeration for the storage backing a store.
+	 */
+	public enum Storage {
+
+		/**
+		 * RocksDB store.
+		 */
+		PERSISTENT("persistent"),
+		/**
+		 * In-memory store; only restored from the changelog.
+		 */
+		IN_MEMORY("in-memory"),
+		/**
+		 * In-memory key value store holding the most recently used entries.
+		 */
+		LRU("lru");
+
+		private final String storage;
+
+		Storage(final String storage) {
+			this.storage = storage;
+		}
+
+		@Override
+		public String toString() {
+			return this.storage;
+		}
+
+	}
+
 	/**
 	 * Name for this state store.
 	 */
@@ -64,6 +97,21 @@ public class KafkaStreamsStateStoreProperties {
 	 */
 	private StoreType type;
 
+	/**
+	 * Storage for this state store.
+	 */
+	private Storage storage = Storage.PERSISTENT;
+
+	/**
+	 * Number of segments of this state store. Only applicable for persistent window store.
+	 */
+	private int segments = 3;
+
+	/**
+	 * Maximum number of entries of this state store. Only applicable for LRU store.
+	 */
+	private int maxEntries;
+
 	/**
 	 * Size/length of this state store in ms. Only applicable for window store.
 	 */
@@ -94,6 +142,18 @@ public class KafkaStreamsStateStoreProperties {
 	 */
 	private boolean loggingDisabled;
 
+	/**
+	 * Bits per key of the bloom filter of this persistent store, when the binder
+	 * configures RocksDB; 0 disables the filter, null uses the binder setting.
+	 */
+	private Integer bloomFilterBitsPerKey;
+
+	/**
+	 * Compaction style of this persistent store, when the binder configures RocksDB;
+	 * null uses the binder setting.
+	 */
+	private CompactionStyle compactionStyle;
+
 	public String getName() {
 		return this.name;
 	}
@@ -110,6 +170,30 @@ public class KafkaStreamsStateStoreProperties {
 		this.type = type;
 	}
 
+	public Storage getStorage() {
+		return this.storage;
+	}
+
+	public void setStorage(Storage storage) {
+		this.storage = storage;
+	}
+
+	public int getSegments() {
+		return this.segments;
+	}
+
+	public void setSegments(int segments) {
+		this.segments = segments;
+	}
+
+	public int getMaxEntries() {
+		return this.maxEntries;
+	}
+
+	public void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
 	public long getLength() {
 		return this.length;
 	}
@@ -158,4 +242,20 @@ public class KafkaStreamsStateStoreProperties {
 		this.loggingDisabled = loggingDisabled;
 	}
 
+	public Integer getBloomFilterBitsPerKey() {
+		return this.bloomFilterBitsPerKey;
+	}
+
+	public void setBloomFilterBitsPerKey(Integer bloomFilterBitsPerKey) {
+		this.bloomFilterBitsPerKey = bloomFilterBitsPerKey;
+	}
+
+	public CompactionStyle getCompactionStyle() {
+		return this.compactionStyle;
+	}
+
+	public void setCompactionStyle(CompactionStyle compactionStyle) {
+		this.compactionStyle = compactionStyle;
+	}
+
 }
@@ -16,24 +16,33 @@
 
 package org.springframework.cloud.stream.binder.kafka.streams.serde;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.RandomAccess;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.kafka.common.errors.SerializationException;
 import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.DoubleDeserializer;
+import org.apache.kafka.common.serialization.FloatDeserializer;
+import org.apache.kafka.common.serialization.IntegerDeserializer;
+import org.apache.kafka.common.serialization.LongDeserializer;
 import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.ShortDeserializer;
 
+import org.springframework.kafka.support.JacksonUtils;
 import org.springframework.kafka.support.serializer.JsonSerde;
 
 /**
@@ -66,6 +75,16 @@ import org.springframework.kafka.support.serializer.JsonSerde;
  * {@link java.util.PriorityQueue} and {@link java.util.HashSet}. Deserializer will throw an exception
  * if any other Collection types are used.
  *
+ * The serialized form is the number of elements followed by the length and the bytes of
+ * each element. The serializer writes it into a buffer of the exact size and the
+ * deserializer decodes the elements in place, without copying them, when the inner
+ * deserializer is the JSON deserializer of this Serde or a numeric Kafka deserializer.
+ *
+ * When created with {@code lazy} set to {@code true}, the deserializer returns a
+ * {@link List} view that only decodes an element when it is accessed; elements that were
+ * never accessed are written back as-is by the serializer. This avoids decoding large
+ * aggregates when the aggregator only adds to them.
+ *
  * @param <E> type of the underlying object that the collection holds
  * @author Soby Chacko
  * @since 3.0.0
@@ -91,11 +110,26 @@ public class CollectionSerde<E> implements Serde<Collection<E>> {
 	 * @param collectionsClass type of the Collection class
 	 */
 	public CollectionSerde(Serde<E> serde, Class<?> collectionsClass) {
+		this(serde, collectionsClass, false);
+	}
+
+	/**
+	 * Constructor to use when the application wants to specify the type
+	 * of the Serde used for the inner object.
+	 *
+	 * @param serde specify an explicit Serde
+	 * @param collectionsClass type of the Collection class
+	 * @param lazy whether to deserialize into a {@link List} view that decodes the
+	 * elements on access; the collection class must then be a super type of {@link List}
+	 * @since 3.0
+	 */
+	public CollectionSerde(Serde<E> serde, Class<?> collectionsClass, boolean lazy) {
 		this.collectionClass = collectionsClass;
 		this.inner =
 				Serdes.serdeFrom(
 						new CollectionSerializer<>(serde.serializer()),
-						new CollectionDeserializer<>(serde.deserializer(), collectionsClass));
+						new CollectionDeserializer<>(serde.deserializer(),
+								elementReader(serde.deserializer()), collectionsClass, lazy));
 	}
 
 	/**
@@ -106,12 +140,36 @@ public class CollectionSerde<E> implements Serde<Collection<E>> {
 	 * @param collectionsClass type of the Collection class
 	 */
 	public CollectionSerde(Class<?> targetTypeForJsonSerde, Class<?> collectionsClass) {
+		this(targetTypeForJsonSerde, collectionsClass, false);
+	}
+
+	/**
+	 * Constructor to delegate serialization operations for the inner objects
+	 * to {@link JsonSerde}.
+	 *
+	 * @param targetTypeForJsonSerde target type used by the JsonSerde
+	 * @param collectionsClass type of the Collection class
+	 * @param lazy whether to deserialize into a {@link List} view that decodes the
+	 * elements on access; the collection class must then be a super type of {@link List}
+	 * @since 3.0
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public CollectionSerde(Class<?> targetTypeForJsonSerde, Class<?> collectionsClass, boolean lazy) {
 		this.collectionClass = collectionsClass;
-		JsonSerde<E> jsonSerde = new JsonSerde(targetTypeForJsonSerde);
+		ObjectMapper objectMapper = JacksonUtils.enhancedObjectMapper();
+		JsonSerde<E> jsonSerde = new JsonSerde(targetTypeForJsonSerde, objectMapper);
+		ObjectReader reader = objectMapper.readerFor(targetTypeForJsonSerde);
 
 		this.inner = Serdes.serdeFrom(
 				new CollectionSerializer<>(jsonSerde.serializer()),
-				new CollectionDeserializer<>(jsonSerde.deserializer(), collectionsClass));
+				new CollectionDeserializer<>(jsonSerde.deserializer(), (topic, data, offset, length) -> {
+					try {
+						return (E) reader.readValue(data, offset, length);
+					}
+					catch (IOException e) {
+						throw new SerializationException("Can't deserialize data from topic [" + topic + "]", e);
+					}
+				}, collectionsClass, lazy));
 	}
 
 	@Override
@@ -136,6 +194,70 @@ public class CollectionSerde<E> implements Serde<Collection<E>> {
 		inner.deserializer().close();
 	}
 
+	/**
+	 * Return a reader decoding the elements in place for the Kafka deserializers with a
+	 * known format, or {@code null} if elements have to be copied out for the deserializer.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <E> ElementReader<E> elementReader(Deserializer<E> deserializer) {
+		Class<?> type = deserializer.getClass();
+		if (type == LongDeserializer.class) {
+			return (topic, data, offset, length) ->
+					(E) Long.valueOf(readLong(data, offset, checkSize(length, 8, type)));
+		}
+		else if (type == IntegerDeserializer.class) {
+			return (topic, data, offset, length) ->
+					(E) Integer.valueOf(readInt(data, offset, checkSize(length, 4, type)));
+		}
+		else if (type == ShortDeserializer.class) {
+			return (topic, data, offset, length) ->
+					(E) Short.valueOf((short) readInt(data, offset, checkSize(length, 2, type)));
+		}
+		else if (type == DoubleDeserializer.class) {
+			return (topic, data, offset, length) ->
+					(E) Double.valueOf(Double.longBitsToDouble(readLong(data, offset, checkSize(length, 8, type))));
+		}
+		else if (type == FloatDeserializer.class) {
+			return (topic, data, offset, length) ->
+					(E) Float.valueOf(Float.intBitsToFloat(readInt(data, offset, checkSize(length, 4, type))));
+		}
+		return null;
+	}
+
+	private static int checkSize(int length, int expected, Class<?> deserializerType) {
+		if (length != expected) {
+			throw new SerializationException("Size of data received by "
+					+ deserializerType.getSimpleName() + " is not " + expected);
+		}
+		return length;
+	}
+
+	private static long readLong(byte[] data, int offset, int length) {
+		long value = 0;
+		for (int i = offset; i < offset + length; i++) {
+			value = (value << 8) | (data[i] & 0xFF);
+		}
+		return value;
+	}
+
+	private static int readInt(byte[] data, int offset, int length) {
+		int value = 0;
+		for (int i = offset; i < offset + length; i++) {
+			value = (value << 8) | (data[i] & 0xFF);
+		}
+		return value;
+	}
+
+	/**
+	 * Decodes one element from a region of the serialized collection.
+	 */
+	@FunctionalInterface
+	private interface ElementReader<E> {
+
+		E read(String topic, byte[] data, int offset, int length);
+
+	}
+
 	private static class CollectionSerializer<E> implements Serializer<Collection<E>> {
 
 
@@ -154,22 +276,53 @@ public class CollectionSerde<E> implements Serde<Collection<E>> {
 
 		@Override
 		public byte[] serialize(String topic, Collection<E> collection) {
+			if (collection == null) {
+				return null;
+			}
 			final int size = collection.size();
-			final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			final DataOutputStream dos = new DataOutputStream(baos);
-			final Iterator<E> iterator = collection.iterator();
-			try {
-				dos.writeInt(size);
-				while (iterator.hasNext()) {
-					final byte[] bytes = inner.serialize(topic, iterator.next());
-					dos.writeInt(bytes.length);
-					dos.write(bytes);
+			final byte[][] elements = new byte[size][];
+			final LazyList<E> lazy = collection instanceof LazyList ? (LazyList<E>) collection : null;
+			long total = 4L + 4L * size;
+			int i = 0;
+			if (lazy != null) {
+				for (; i < size; i++) {
+					if (lazy.isEncoded(i)) {
+						total += Math.max(lazy.encodedLength(i), 0);
+					}
+					else {
+						elements[i] = this.inner.serialize(topic, lazy.get(i));
+						total += elements[i] == null ? 0 : elements[i].length;
+					}
+				}
+			}
+			else {
+				for (E element : collection) {
+					if (i == size) {
+						throw new SerializationException("Collection was modified during serialization");
+					}
+					elements[i] = this.inner.serialize(topic, element);
+					total += elements[i] == null ? 0 : elements[i].length;
+					i++;
 				}
 			}
-			catch (IOException e) {
-				throw new RuntimeException("Unable to serialize the provided collection", e);
+			if (total > Integer.MAX_VALUE - 8) {
+				throw new SerializationException("Serialized collection is too large: " + total + " bytes");
 			}
-			return baos.toByteArray();
+			final ByteBuffer buffer = ByteBuffer.allocate((int) total);
+			buffer.putInt(size);
+			for (i = 0; i < size; i++) {
+				if (lazy != null && lazy.isEncoded(i)) {
+					lazy.writeEncoded(i, buffer);
+				}
+				else if (elements[i] == null) {
+					buffer.putInt(-1);
+				}
+				else {
+					buffer.putInt(elements[i].length);
+					buffer.put(elements[i]);
+				}
+			}
+			return buffer.array();
 		}
 
 		@Override
@@ -180,11 +333,23 @@ public class CollectionSerde<E> implements Serde<Collection<E>> {
 
 	private static class CollectionDeserializer<E> implements Deserializer<Collection<E>> {
 		private final Deserializer<E> valueDeserializer;
+		private final ElementReader<E> elementReader;
 		private final Class<?> collectionClass;
+		private final boolean lazy;
 
-		CollectionDeserializer(final Deserializer<E> valueDeserializer, Class<?> collectionClass) {
+		CollectionDeserializer(final Deserializer<E> valueDeserializer, ElementReader<E> elementReader,
+				Class<?> collectionClass, boolean lazy) {
+
+			if (lazy && !collectionClass.isAssignableFrom(List.class)) {
+				throw new IllegalArgumentException("A lazy collection requires a super type of List - "
+						+ collectionClass);
+			}
 			this.valueDeserializer = valueDeserializer;
+			this.elementReader = elementReader != null ? elementReader
+					: (topic, data, offset, length) -> valueDeserializer.deserialize(topic,
+							Arrays.copyOfRange(data, offset, offset + length));
 			this.collectionClass = collectionClass;
+			this.lazy = lazy;
 		}
 
 		@Override
@@ -197,21 +362,26 @@ public class CollectionSerde<E> implements Serde<Collection<E>> {
 				return null;
 			}
 
-			Collection<E> collection = getCollection();
-			final DataInputStream dataInputStream = new DataInputStream(new ByteArrayInputStream(bytes));
-
-			try {
-				final int records = dataInputStream.readInt();
+			final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			final int records = readInt(buffer);
+			if (records < 0 || records > buffer.remaining() / 4) {
+				throw new SerializationException("Invalid collection size: " + records);
+			}
+			if (this.lazy) {
+				int[] offsets = new int[records];
+				int[] lengths = new int[records];
 				for (int i = 0; i < records; i++) {
-					final byte[] valueBytes = new byte[dataInputStream.readInt()];
-					dataInputStream.read(valueBytes);
-					collection.add(valueDeserializer.deserialize(topic, valueBytes));
+					lengths[i] = readLength(buffer);
+					offsets[i] = skip(buffer, lengths[i]);
 				}
+				return new LazyList<>(topic, bytes, this.elementReader, offsets, lengths);
 			}
-			catch (IOException e) {
-				throw new RuntimeException("Unable to deserialize collection", e);
+			Collection<E> collection = getCollection(records);
+			for (int i = 0; i < records; i++) {
+				int length = readLength(buffer);
+				int offset = skip(buffer, length);
+				collection.add(length < 0 ? null : this.elementReader.read(topic, bytes, offset, length));
 			}
-
 			return collection;
 		}
 
@@ -219,19 +389,43 @@ public class CollectionSerde<E> implements Serde<Collection<E>> {
 		public void close() {
 		}
 
-		private Collection<E> getCollection() {
+		private static int readInt(ByteBuffer buffer) {
+			if (buffer.remaining() < 4) {
+				throw new SerializationException("Unable to deserialize collection: truncated data");
+			}
+			return buffer.getInt();
+		}
+
+		private static int readLength(ByteBuffer buffer) {
+			int length = readInt(buffer);
+			if (length < -1 || length > buffer.remaining()) {
+				throw new SerializationException("Unable to deserialize collection: invalid element length "
+						+ length);
+			}
+			return length;
+		}
+
+		private static int skip(ByteBuffer buffer, int length) {
+			int offset = buffer.position();
+			if (length > 0) {
+				buffer.position(offset + length);
+			}
+			return offset;
+		}
+
+		private Collection<E> getCollection(int size) {
 			Collection<E> collection;
 			if (this.collectionClass.isAssignableFrom(ArrayList.class)) {
-				collection = new ArrayList<>();
+				collection = new ArrayList<>(size);
 			}
 			else if (this.collectionClass.isAssignableFrom(HashSet.class)) {
-				collection = new HashSet<>();
+				collection = new HashSet<>(Math.max((int) (size / .75f) + 1, 16));
 			}
 			else if (this.collectionClass.isAssignableFrom(LinkedList.class)) {
 				collection = new LinkedList<>();
 			}
 			else if (this.collectionClass.isAssignableFrom(PriorityQueue.class)) {
-				collection = new PriorityQueue<>();
+				collection = new PriorityQueue<>(Math.max(size, 1));
 			}
 			else {
 				throw new IllegalArgumentException("Unsupported collection type - " + this.collectionClass);
@@ -239,4 +433,125 @@ public class CollectionSerde<E> implements Serde<Collection<E>> {
 			return collection;
 		}
 	}
+
+	/**
+	 * A {@link List} over a serialized collection that decodes each element the first time
+	 * it is accessed. The serialized bytes are never modified.
+	 */
+	static final class LazyList<E> extends AbstractList<E> implements RandomAccess {
+
+		private static final int DECODED = -1;
+
+		private final String topic;
+
+		private final byte[] data;
+
+		private final ElementReader<E> reader;
+
+		private Object[] elements;
+
+		private int[] offsets;
+
+		private int[] lengths;
+
+		private int size;
+
+		LazyList(String topic, byte[] data, ElementReader<E> reader, int[] offsets, int[] lengths) {
+			this.topic = topic;
+			this.data = data;
+			this.reader = reader;
+			this.offsets = offsets;
+			this.lengths = lengths;
+			this.size = offsets.length;
+			this.elements = new Object[this.size];
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public E get(int index) {
+			checkIndex(index);
+			if (this.offsets[index] != DECODED) {
+				int length = this.lengths[index];
+				this.elements[index] = length < 0 ? null
+						: this.reader.read(this.topic, this.data, this.offsets[index], length);
+				this.offsets[index] = DECODED;
+			}
+			return (E) this.elements[index];
+		}
+
+		@Override
+		public E set(int index, E element) {
+			E previous = get(index);
+			this.elements[index] = element;
+			return previous;
+		}
+
+		@Override
+		public void add(int index, E element) {
+			if (index < 0 || index > this.size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+			}
+			if (this.size == this.elements.length) {
+				int capacity = Math.max(this.size + (this.size >> 1), this.size + 1);
+				this.elements = Arrays.copyOf(this.elements, capacity);
+				this.offsets = Arrays.copyOf(this.offsets, capacity);
+				this.lengths = Arrays.copyOf(this.lengths, capacity);
+			}
+			int moved = this.size - index;
+			System.arraycopy(this.elements, index, this.elements, index + 1, moved);
+			System.arraycopy(this.offsets, index, this.offsets, index + 1, moved);
+			System.arraycopy(this.lengths, index, this.lengths, index + 1, moved);
+			this.elements[index] = element;
+			this.offsets[index] = DECODED;
+			this.size++;
+			this.modCount++;
+		}
+
+		@Override
+		public E remove(int index) {
+			E previous = get(index);
+			int moved = this.size - index - 1;
+			System.arraycopy(this.elements, index + 1, this.elements, index, moved);
+			System.arraycopy(this.offsets, index + 1, this.offsets, index, moved);
+			System.arraycopy(this.lengths, index + 1, this.lengths, index, moved);
+			this.elements[--this.size] = null;
+			this.modCount++;
+			return previous;
+		}
+
+		@Override
+		public int size() {
+			return this.size;
+		}
+
+		/**
+		 * Return whether the element at the index has not been decoded yet.
+		 * @param index the index.
+		 * @return true if the element is still in its serialized form.
+		 */
+		boolean isEncoded(int index) {
+			checkIndex(index);
+			return this.offsets[index] != DECODED;
+		}
+
+		int encodedLength(int index) {
+			return this.lengths[index];
+		}
+
+		void writeEncoded(int index, ByteBuffer buffer) {
+			int length = this.lengths[index];
+			buffer.putInt(length);
+			if (length > 0) {
+				buffer.put(this.data, this.offsets[index], length);
+			}
+		}
+
+		private void checkIndex(int index) {
+			if (index < 0 || index >= this.size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+			}
+		}
+
+	}
+
 }
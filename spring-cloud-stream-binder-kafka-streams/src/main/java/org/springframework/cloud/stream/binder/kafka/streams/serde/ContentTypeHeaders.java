@@ -0,0 +1,37 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka.streams.serde;
+
+import java.util.Map;
+
+import org.springframework.messaging.MessageHeaders;
+
+/**
+ * Immutable {@link MessageHeaders} without id and timestamp, so that one instance can be
+ * reused for the conversion of many records.
+ *
+ * @author agent
+ * @since 3.0
+ */
+@SuppressWarnings("serial")
+public final class ContentTypeHeaders extends MessageHeaders {
+
+	public ContentTypeHeaders(Map<String, Object> headers) {
+		super(headers, ID_VALUE_NONE, -1L);
+	}
+
+}
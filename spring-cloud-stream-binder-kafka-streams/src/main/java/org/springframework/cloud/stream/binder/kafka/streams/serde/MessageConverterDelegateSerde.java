@@ -16,10 +16,16 @@
 
 package org.springframework.cloud.stream.binder.kafka.streams.serde;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.kafka.common.errors.SerializationException;
 import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.common.serialization.Serializer;
@@ -27,8 +33,10 @@ import org.apache.kafka.common.serialization.Serializer;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConversionException;
 import org.springframework.messaging.converter.MessageConverter;
-import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.GenericMessage;
 import org.springframework.util.Assert;
 import org.springframework.util.MimeType;
 import org.springframework.util.MimeTypeUtils;
@@ -136,19 +144,41 @@ public class MessageConverterDelegateSerde<T> implements Serde<T> {
 		}
 	}
 
+	private static MessageHeaders contentTypeHeaders(MimeType mimeType) {
+		return new ContentTypeHeaders(
+				Collections.singletonMap(MessageHeaders.CONTENT_TYPE, mimeType.toString()));
+	}
+
+	/*
+	 * Values of these types are handled specially by the JSON converter, so they are
+	 * never bound to an ObjectMapper directly.
+	 */
+	private static boolean isRaw(Class<?> type) {
+		return type.isAssignableFrom(byte[].class) || type.isAssignableFrom(String.class);
+	}
+
 	/**
 	 * Custom {@link Deserializer} that uses the {@link org.springframework.cloud.stream.converter.CompositeMessageConverterFactory}.
+	 * The converter that handles the configured content type and value class is resolved
+	 * on the first call; a JSON converter is then bypassed in favor of an
+	 * {@link ObjectReader} built from its {@link ObjectMapper}.
 	 *
 	 * @param <U> parameterized target type for deserialization
 	 */
 	private static class MessageConverterDelegateDeserializer<U> implements Deserializer<U> {
 
-		private final MessageConverter messageConverter;
+		private final CompositeMessageConverter messageConverter;
 
 		private MimeType mimeType;
 
 		private Class<?> valueClass;
 
+		private MessageHeaders headers;
+
+		private volatile MessageConverter resolvedConverter;
+
+		private volatile ObjectReader objectReader;
+
 		MessageConverterDelegateDeserializer(
 				CompositeMessageConverter compositeMessageConverter) {
 			this.messageConverter = compositeMessageConverter;
@@ -163,20 +193,54 @@ public class MessageConverterDelegateSerde<T> implements Serde<T> {
 					"Deserializers must provide a valid value for valueClass.");
 			this.valueClass = (Class<?>) valueClass;
 			this.mimeType = resolveMimeType(configs);
+			this.headers = contentTypeHeaders(this.mimeType);
+			this.resolvedConverter = null;
+			this.objectReader = null;
 		}
 
 		@SuppressWarnings("unchecked")
 		@Override
 		public U deserialize(String topic, byte[] data) {
-			Message<?> message = MessageBuilder.withPayload(data)
-					.setHeader(MessageHeaders.CONTENT_TYPE, this.mimeType.toString())
-					.build();
-			U messageConverted = (U) this.messageConverter.fromMessage(message,
-					this.valueClass);
+			if (data == null) {
+				return null;
+			}
+			ObjectReader reader = this.objectReader;
+			if (reader != null) {
+				try {
+					return reader.readValue(data);
+				}
+				catch (IOException ex) {
+					throw new SerializationException("Deserialization failed.", ex);
+				}
+			}
+			Message<?> message = new GenericMessage<>(data, this.headers);
+			U messageConverted = (U) convert(message);
 			Assert.notNull(messageConverted, "Deserialization failed.");
 			return messageConverted;
 		}
 
+		private Object convert(Message<?> message) {
+			MessageConverter converter = this.resolvedConverter;
+			if (converter != null) {
+				Object converted = converter.fromMessage(message, this.valueClass);
+				if (converted != null) {
+					return converted;
+				}
+			}
+			for (MessageConverter candidate : this.messageConverter.getConverters()) {
+				Object converted = candidate.fromMessage(message, this.valueClass);
+				if (converted != null) {
+					this.resolvedConverter = candidate;
+					if (candidate instanceof MappingJackson2MessageConverter && !isRaw(this.valueClass)) {
+						this.objectReader = ((MappingJackson2MessageConverter) candidate).getObjectMapper()
+								.readerFor(this.valueClass);
+					}
+					return converted;
+				}
+			}
+			return null;
+		}
+
 		@Override
 		public void close() {
 			// No-op
@@ -186,15 +250,23 @@ public class MessageConverterDelegateSerde<T> implements Serde<T> {
 
 	/**
 	 * Custom {@link Serializer} that uses the {@link org.springframework.cloud.stream.converter.CompositeMessageConverterFactory}.
+	 * The converter is resolved on the first call; a JSON converter is then bypassed in
+	 * favor of an {@link ObjectWriter} built from its {@link ObjectMapper}.
 	 *
 	 * @param <V> parameterized type for serialization
 	 */
 	private static class MessageConverterDelegateSerializer<V> implements Serializer<V> {
 
-		private final MessageConverter messageConverter;
+		private final CompositeMessageConverter messageConverter;
 
 		private MimeType mimeType;
 
+		private MessageHeaders headers;
+
+		private volatile MessageConverter resolvedConverter;
+
+		private volatile ObjectWriter objectWriter;
+
 		MessageConverterDelegateSerializer(
 				CompositeMessageConverter compositeMessageConverter) {
 			this.messageConverter = compositeMessageConverter;
@@ -203,17 +275,49 @@ public class MessageConverterDelegateSerde<T> implements Serde<T> {
 		@Override
 		public void configure(Map<String, ?> configs, boolean isKey) {
 			this.mimeType = resolveMimeType(configs);
+			this.headers = contentTypeHeaders(this.mimeType);
+			this.resolvedConverter = null;
+			this.objectWriter = null;
 		}
 
 		@Override
 		public byte[] serialize(String topic, V data) {
-			Message<?> message = MessageBuilder.withPayload(data).build();
-			Map<String, Object> headers = new HashMap<>(message.getHeaders());
-			headers.put(MessageHeaders.CONTENT_TYPE, this.mimeType.toString());
-			MessageHeaders messageHeaders = new MessageHeaders(headers);
-			final Object payload = this.messageConverter
-					.toMessage(message.getPayload(), messageHeaders).getPayload();
-			return (byte[]) payload;
+			if (data == null) {
+				return null;
+			}
+			ObjectWriter writer = this.objectWriter;
+			if (writer != null && !isRaw(data.getClass())) {
+				try {
+					return writer.writeValueAsBytes(data);
+				}
+				catch (JsonProcessingException ex) {
+					throw new SerializationException("Serialization failed.", ex);
+				}
+			}
+			return (byte[]) convert(data).getPayload();
+		}
+
+		private Message<?> convert(V data) {
+			MessageConverter converter = this.resolvedConverter;
+			if (converter != null) {
+				Message<?> message = converter.toMessage(data, this.headers);
+				if (message != null) {
+					return message;
+				}
+			}
+			for (MessageConverter candidate : this.messageConverter.getConverters()) {
+				Message<?> message = candidate.toMessage(data, this.headers);
+				if (message != null) {
+					this.resolvedConverter = candidate;
+					if (candidate instanceof MappingJackson2MessageConverter) {
+						this.objectWriter = ((MappingJackson2MessageConverter) candidate).getObjectMapper()
+								.writer();
+					}
+					return message;
+				}
+			}
+			throw new MessageConversionException("No converter found for payload of type "
+					+ data.getClass().getName() + " and content type " + this.mimeType);
 		}
 
 		@Override
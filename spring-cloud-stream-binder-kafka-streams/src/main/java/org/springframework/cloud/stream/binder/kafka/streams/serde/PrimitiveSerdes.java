@@ -0,0 +1,255 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka.streams.serde;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serdes;
+
+/**
+ * {@link org.apache.kafka.common.serialization.Serde} implementations for arrays and
+ * sorted sets of primitive values.
+ *
+ * Values are written with a fixed width in little-endian byte order, one after the other,
+ * without any header; the number of elements is derived from the length of the data.
+ * Sorted sets are written in iteration order and deserialized into a {@link TreeSet}.
+ * A {@code null} value is serialized as {@code null}; null elements are not supported.
+ *
+ * These serdes are picked automatically by the binder for {@code long[]}, {@code int[]},
+ * {@code double[]} and for sorted sets of {@link Long}, {@link Integer} and {@link Double}.
+ * They can also be configured by class name, for instance as the default value serde.
+ *
+ * @author agent
+ * @since 3.0
+ */
+public final class PrimitiveSerdes {
+
+	private PrimitiveSerdes() {
+	}
+
+	public static LongArraySerde longArray() {
+		return new LongArraySerde();
+	}
+
+	public static IntArraySerde intArray() {
+		return new IntArraySerde();
+	}
+
+	public static DoubleArraySerde doubleArray() {
+		return new DoubleArraySerde();
+	}
+
+	public static LongSortedSetSerde longSortedSet() {
+		return new LongSortedSetSerde();
+	}
+
+	public static IntegerSortedSetSerde integerSortedSet() {
+		return new IntegerSortedSetSerde();
+	}
+
+	public static DoubleSortedSetSerde doubleSortedSet() {
+		return new DoubleSortedSetSerde();
+	}
+
+	private static ByteBuffer allocate(int count, int width) {
+		return ByteBuffer.allocate(count * width).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static ByteBuffer wrap(byte[] data, int width) {
+		if (data.length % width != 0) {
+			throw new SerializationException("Size of data received is not a multiple of " + width);
+		}
+		return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static <T> T checkNotNull(T element) {
+		if (element == null) {
+			throw new SerializationException("Null elements are not supported");
+		}
+		return element;
+	}
+
+	/**
+	 * Serde for {@code long[]}.
+	 */
+	public static final class LongArraySerde extends Serdes.WrapperSerde<long[]> {
+
+		public LongArraySerde() {
+			super((topic, data) -> {
+				if (data == null) {
+					return null;
+				}
+				ByteBuffer buffer = allocate(data.length, Long.BYTES);
+				buffer.asLongBuffer().put(data);
+				return buffer.array();
+			}, (topic, data) -> {
+				if (data == null) {
+					return null;
+				}
+				long[] values = new long[data.length / Long.BYTES];
+				wrap(data, Long.BYTES).asLongBuffer().get(values);
+				return values;
+			});
+		}
+
+	}
+
+	/**
+	 * Serde for {@code int[]}.
+	 */
+	public static final class IntArraySerde extends Serdes.WrapperSerde<int[]> {
+
+		public IntArraySerde() {
+			super((topic, data) -> {
+				if (data == null) {
+					return null;
+				}
+				ByteBuffer buffer = allocate(data.length, Integer.BYTES);
+				buffer.asIntBuffer().put(data);
+				return buffer.array();
+			}, (topic, data) -> {
+				if (data == null) {
+					return null;
+				}
+				int[] values = new int[data.length / Integer.BYTES];
+				wrap(data, Integer.BYTES).asIntBuffer().get(values);
+				return values;
+			});
+		}
+
+	}
+
+	/**
+	 * Serde for {@code double[]}.
+	 */
+	public static final class DoubleArraySerde extends Serdes.WrapperSerde<double[]> {
+
+		public DoubleArraySerde() {
+			super((topic, data) -> {
+				if (data == null) {
+					return null;
+				}
+				ByteBuffer buffer = allocate(data.length, Double.BYTES);
+				buffer.asDoubleBuffer().put(data);
+				return buffer.array();
+			}, (topic, data) -> {
+				if (data == null) {
+					return null;
+				}
+				double[] values = new double[data.length / Double.BYTES];
+				wrap(data, Double.BYTES).asDoubleBuffer().get(values);
+				return values;
+			});
+		}
+
+	}
+
+	/**
+	 * Serde for a {@link SortedSet} of {@link Long}.
+	 */
+	public static final class LongSortedSetSerde extends Serdes.WrapperSerde<SortedSet<Long>> {
+
+		public LongSortedSetSerde() {
+			super((topic, data) -> {
+				if (data == null) {
+					return null;
+				}
+				ByteBuffer buffer = allocate(data.size(), Long.BYTES);
+				for (Long value : data) {
+					buffer.putLong(checkNotNull(value));
+				}
+				return buffer.array();
+			}, (topic, data) -> {
+				if (data == null) {
+					return null;
+				}
+				ByteBuffer buffer = wrap(data, Long.BYTES);
+				SortedSet<Long> values = new TreeSet<>();
+				while (buffer.hasRemaining()) {
+					values.add(buffer.getLong());
+				}
+				return values;
+			});
+		}
+
+	}
+
+	/**
+	 * Serde for a {@link SortedSet} of {@link Integer}.
+	 */
+	public static final class IntegerSortedSetSerde extends Serdes.WrapperSerde<SortedSet<Integer>> {
+
+		public IntegerSortedSetSerde() {
+			super((topic, data) -> {
+				if (data == null) {
+					return null;
+				}
+				ByteBuffer buffer = allocate(data.size(), Integer.BYTES);
+				for (Integer value : data) {
+					buffer.putInt(checkNotNull(value));
+				}
+				return buffer.array();
+			}, (topic, data) -> {
+				if (data == null) {
+					return null;
+				}
+				ByteBuffer buffer = wrap(data, Integer.BYTES);
+				SortedSet<Integer> values = new TreeSet<>();
+				while (buffer.hasRemaining()) {
+					values.add(buffer.getInt());
+				}
+				return values;
+			});
+		}
+
+	}
+
+	/**
+	 * Serde for a {@link SortedSet} of {@link Double}.
+	 */
+	public static final class DoubleSortedSetSerde extends Serdes.WrapperSerde<SortedSet<Double>> {
+
+		public DoubleSortedSetSerde() {
+			super((topic, data) -> {
+				if (data == null) {
+					return null;
+				}
+				ByteBuffer buffer = allocate(data.size(), Double.BYTES);
+				for (Double value : data) {
+					buffer.putDouble(checkNotNull(value));
+				}
+				return buffer.array();
+			}, (topic, data) -> {
+				if (data == null) {
+					return null;
+				}
+				ByteBuffer buffer = wrap(data, Double.BYTES);
+				SortedSet<Double> values = new TreeSet<>();
+				while (buffer.hasRemaining()) {
+					values.add(buffer.getDouble());
+				}
+				return values;
+			});
+		}
+
+	}
+
+}
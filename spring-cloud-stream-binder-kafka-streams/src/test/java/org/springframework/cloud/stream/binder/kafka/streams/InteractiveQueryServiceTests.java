@@ -0,0 +1,152 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka.streams;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.state.HostInfo;
+import org.apache.kafka.streams.state.QueryableStoreTypes;
+import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
+import org.apache.kafka.streams.state.StreamsMetadata;
+import org.junit.Test;
+
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.cloud.stream.binder.kafka.streams.properties.KafkaStreamsBinderConfigurationProperties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author agent
+ */
+public class InteractiveQueryServiceTests {
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testStoreIsCachedWhileKafkaStreamsIsRunning() {
+		KafkaStreams kafkaStreams = mock(KafkaStreams.class);
+		ReadOnlyKeyValueStore<Object, Object> store = mock(ReadOnlyKeyValueStore.class);
+		given(kafkaStreams.store(eq("foo"), any())).willReturn(store);
+		given(kafkaStreams.state()).willReturn(KafkaStreams.State.RUNNING);
+		KafkaStreamsRegistry kafkaStreamsRegistry = new KafkaStreamsRegistry(null);
+		kafkaStreamsRegistry.registerKafkaStreams(kafkaStreams);
+		InteractiveQueryService interactiveQueryService = new InteractiveQueryService(kafkaStreamsRegistry,
+				new KafkaStreamsBinderConfigurationProperties(new KafkaProperties()));
+
+		assertThat(interactiveQueryService.getQueryableStore("foo", QueryableStoreTypes.keyValueStore()))
+				.isSameAs(store);
+		assertThat(interactiveQueryService.getQueryableStore("foo", QueryableStoreTypes.keyValueStore()))
+				.isSameAs(store);
+		verify(kafkaStreams, times(1)).store(eq("foo"), any());
+
+		given(kafkaStreams.state()).willReturn(KafkaStreams.State.REBALANCING);
+		assertThat(interactiveQueryService.getQueryableStore("foo", QueryableStoreTypes.keyValueStore()))
+				.isSameAs(store);
+		verify(kafkaStreams, times(2)).store(eq("foo"), any());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testGetAllQueriesRemoteInstanceInOneBatch() throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		try {
+			HostInfo local = new HostInfo("localhost", 1);
+			HostInfo remote = new HostInfo("localhost", server.getAddress().getPort());
+			Map<String, String> localData = Collections.singletonMap("a", "A");
+			Map<String, String> remoteData = new HashMap<>();
+			remoteData.put("b", "B");
+			remoteData.put("c", "C");
+			InteractiveQueryService localService = instance(local, localData, (key) ->
+					localData.containsKey(key) ? local : remote);
+			InteractiveQueryService remoteService = instance(remote, remoteData, (key) -> remote);
+			remoteService.exposeStore("foo", Serdes.String(), Serdes.String());
+			KafkaStreamsQueryEndpoint endpoint = new KafkaStreamsQueryEndpoint(remoteService);
+			ObjectMapper objectMapper = new ObjectMapper();
+			int[] requests = new int[1];
+			server.createContext("/actuator/kafkastreamsquery/foo", (exchange) -> {
+				requests[0]++;
+				Map<String, List<String>> body;
+				try (InputStream in = exchange.getRequestBody()) {
+					body = objectMapper.readValue(in, new TypeReference<Map<String, List<String>>>() { });
+				}
+				byte[] response = objectMapper.writeValueAsBytes(endpoint.query("foo", body.get("keys")));
+				exchange.sendResponseHeaders(200, response.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(response);
+				}
+			});
+			server.start();
+
+			Map<String, String> values = localService.getAll("foo", Arrays.asList("a", "b", "c", "d"),
+					Serdes.String(), Serdes.String());
+			assertThat(values).containsOnly(entry("a", "A"), entry("b", "B"), entry("c", "C"));
+			assertThat(requests[0]).isEqualTo(1);
+
+			localService.enableNearCache("foo", 100, Duration.ofMinutes(1));
+			localService.getAll("foo", Arrays.asList("b", "d"), Serdes.String(), Serdes.String());
+			values = localService.getAll("foo", Arrays.asList("b", "c", "d"), Serdes.String(), Serdes.String());
+			assertThat(values).containsOnly(entry("b", "B"), entry("c", "C"));
+			assertThat(requests[0]).isEqualTo(3);
+			localService.destroy();
+		}
+		finally {
+			server.stop(0);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static InteractiveQueryService instance(HostInfo hostInfo, Map<String, String> data,
+			Function<String, HostInfo> router) {
+
+		KafkaStreams kafkaStreams = mock(KafkaStreams.class);
+		ReadOnlyKeyValueStore<Object, Object> store = mock(ReadOnlyKeyValueStore.class);
+		given(store.get(any())).willAnswer((invocation) -> data.get(invocation.getArgument(0)));
+		given(kafkaStreams.store(eq("foo"), any())).willReturn(store);
+		given(kafkaStreams.state()).willReturn(KafkaStreams.State.RUNNING);
+		given(kafkaStreams.metadataForKey(eq("foo"), any(), any(Serializer.class))).willAnswer((invocation) ->
+				new StreamsMetadata(router.apply(invocation.getArgument(1)), Collections.singleton("foo"),
+						Collections.emptySet()));
+		KafkaStreamsRegistry kafkaStreamsRegistry = new KafkaStreamsRegistry(null);
+		kafkaStreamsRegistry.registerKafkaStreams(kafkaStreams);
+		KafkaStreamsBinderConfigurationProperties properties =
+				new KafkaStreamsBinderConfigurationProperties(new KafkaProperties());
+		properties.getConfiguration().put("application.server", hostInfo.host() + ":" + hostInfo.port());
+		return new InteractiveQueryService(kafkaStreamsRegistry, properties);
+	}
+
+}
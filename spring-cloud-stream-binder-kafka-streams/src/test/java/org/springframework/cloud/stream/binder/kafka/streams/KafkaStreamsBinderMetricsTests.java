@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka.streams;
+
+import java.util.Collections;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.streams.KafkaStreams;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author agent
+ */
+public class KafkaStreamsBinderMetricsTests {
+
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testMetricsOfEachKafkaStreamsAreReconciled() {
+		MeterRegistry registry = new SimpleMeterRegistry();
+		KafkaStreamsBinderMetrics binderMetrics = new KafkaStreamsBinderMetrics(registry);
+		Metrics metrics1 = new Metrics();
+		Metrics metrics2 = new Metrics();
+		KafkaStreams kafkaStreams1 = mock(KafkaStreams.class);
+		KafkaStreams kafkaStreams2 = mock(KafkaStreams.class);
+		given(kafkaStreams1.metrics()).willAnswer((invocation) -> metrics1.metrics());
+		given(kafkaStreams2.metrics()).willAnswer((invocation) -> metrics2.metrics());
+		MetricName commitLatency1 = metrics1.metricName("commit-latency-avg", "stream-metrics", "desc",
+				Collections.singletonMap("client-id", "app1-client"));
+		metrics1.addMetric(commitLatency1, (config, now) -> 5L);
+		MetricName commitLatency2 = metrics2.metricName("commit-latency-avg", "stream-metrics", "desc",
+				Collections.singletonMap("client-id", "app2-client"));
+		metrics2.addMetric(commitLatency2, (config, now) -> 7.5);
+
+		binderMetrics.addMetrics(kafkaStreams1, "app1");
+		binderMetrics.addMetrics(kafkaStreams2, "app2");
+		assertThat(registry.get("stream.metrics.commit.latency.avg").tag("application.id", "app1")
+				.gauge().value()).isEqualTo(5.0);
+		assertThat(registry.get("stream.metrics.commit.latency.avg").tag("application.id", "app2")
+				.gauge().value()).isEqualTo(7.5);
+
+		MetricName processTotal = metrics1.metricName("process-total", "stream-task-metrics", "desc",
+				Collections.singletonMap("task-id", "0_0"));
+		metrics1.addMetric(processTotal, (config, now) -> 12.0);
+		metrics1.removeMetric(commitLatency1);
+		binderMetrics.refresh();
+		assertThat(registry.get("stream.task.metrics.process.total").tag("task-id", "0_0")
+				.functionCounter().count()).isEqualTo(12.0);
+		assertThat(registry.find("stream.metrics.commit.latency.avg").tag("application.id", "app1")
+				.gauge()).isNull();
+		assertThat(binderMetrics.getMeterCount()).isEqualTo(registry.getMeters().size());
+
+		binderMetrics.removeMetrics(kafkaStreams2);
+		assertThat(registry.find("stream.metrics.commit.latency.avg").gauge()).isNull();
+		assertThat(binderMetrics.getMeterCount()).isEqualTo(registry.getMeters().size());
+		binderMetrics.destroy();
+		metrics1.close();
+		metrics2.close();
+	}
+
+}
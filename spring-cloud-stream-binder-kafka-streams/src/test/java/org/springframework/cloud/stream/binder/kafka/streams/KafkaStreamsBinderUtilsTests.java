@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.stream.binder.kafka.streams;
+
+import org.apache.kafka.streams.state.KeyValueBytesStoreSupplier;
+import org.junit.Test;
+
+import org.springframework.cloud.stream.binder.kafka.streams.properties.KafkaStreamsStateStoreProperties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+/**
+ * @author agent
+ */
+public class KafkaStreamsBinderUtilsTests {
+
+	@Test
+	public void testKeyValueStoreSupplierPerStorage() {
+		KeyValueBytesStoreSupplier persistent = KafkaStreamsBinderUtils.keyValueStoreSupplier("foo",
+				KafkaStreamsStateStoreProperties.Storage.PERSISTENT, 0);
+		assertThat(persistent.get().persistent()).isTrue();
+		KeyValueBytesStoreSupplier inMemory = KafkaStreamsBinderUtils.keyValueStoreSupplier("foo",
+				KafkaStreamsStateStoreProperties.Storage.IN_MEMORY, 0);
+		assertThat(inMemory.get().persistent()).isFalse();
+		assertThat(inMemory.name()).isEqualTo("foo");
+		KeyValueBytesStoreSupplier lru = KafkaStreamsBinderUtils.keyValueStoreSupplier("foo",
+				KafkaStreamsStateStoreProperties.Storage.LRU, 10);
+		assertThat(lru.get().persistent()).isFalse();
+		assertThatIllegalArgumentException().isThrownBy(() -> KafkaStreamsBinderUtils
+				.keyValueStoreSupplier("foo", KafkaStreamsStateStoreProperties.Storage.LRU, 0));
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka.streams;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.ValueTransformer;
+import org.apache.kafka.streams.kstream.ValueTransformerSupplier;
+import org.apache.kafka.streams.kstream.ValueTransformerWithKey;
+import org.apache.kafka.streams.kstream.ValueTransformerWithKeySupplier;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.cloud.stream.binder.kafka.streams.properties.KafkaStreamsBinderConfigurationProperties;
+import org.springframework.cloud.stream.binder.kafka.streams.properties.KafkaStreamsConsumerProperties;
+import org.springframework.cloud.stream.config.BindingProperties;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author agent
+ */
+public class KafkaStreamsMessageConversionDelegateTests {
+
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testInboundConversionInOneTransformer() {
+		KafkaStreamsBinderConfigurationProperties binderProperties =
+				new KafkaStreamsBinderConfigurationProperties(new KafkaProperties());
+		binderProperties.setSerdeError(KafkaStreamsBinderConfigurationProperties.SerdeError.logAndContinue);
+		KafkaStreamsBindingInformationCatalogue catalogue = new KafkaStreamsBindingInformationCatalogue();
+		KafkaStreamsMessageConversionDelegate delegate = new KafkaStreamsMessageConversionDelegate(
+				new CompositeMessageConverter(Collections.singletonList(new MappingJackson2MessageConverter())),
+				null, catalogue, binderProperties);
+		KStream stream = mock(KStream.class);
+		catalogue.registerConsumerProperties(stream, new KafkaStreamsConsumerProperties());
+		delegate.deserializeOnInbound(Map.class, stream);
+		ArgumentCaptor<ValueTransformerWithKeySupplier> captor =
+				ArgumentCaptor.forClass(ValueTransformerWithKeySupplier.class);
+		verify(stream).flatTransformValues(captor.capture());
+
+		ValueTransformerWithKey<Object, Object, Iterable<Object>> transformer = captor.getValue().get();
+		ProcessorContext context = mock(ProcessorContext.class);
+		RecordHeaders headers = new RecordHeaders();
+		headers.add(MessageHeaders.CONTENT_TYPE, "\"application/json\"".getBytes());
+		given(context.headers()).willReturn(headers);
+		transformer.init(context);
+
+		Iterable<Object> converted = transformer.transform("key", "{\"foo\":\"bar\"}".getBytes());
+		assertThat(converted).containsExactly(Collections.singletonMap("foo", "bar"));
+		assertThat(transformer.transform("key", "not json".getBytes())).isEmpty();
+		assertThat(transformer.transform("key", null)).isEmpty();
+		Object value = new Object();
+		assertThat(transformer.transform("key", value)).containsExactly(value);
+	}
+
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testOutboundConversionSetsCachedContentTypeHeader() {
+		KafkaStreamsBindingInformationCatalogue catalogue = new KafkaStreamsBindingInformationCatalogue();
+		KafkaStreamsMessageConversionDelegate delegate = new KafkaStreamsMessageConversionDelegate(
+				new CompositeMessageConverter(Collections.singletonList(new MappingJackson2MessageConverter())),
+				null, catalogue, new KafkaStreamsBinderConfigurationProperties(new KafkaProperties()));
+		KStream stream = mock(KStream.class);
+		KStream filtered = mock(KStream.class);
+		given(stream.filter(any())).willReturn(filtered);
+		BindingProperties bindingProperties = new BindingProperties();
+		bindingProperties.setContentType("application/json");
+		catalogue.registerBindingProperties(stream, bindingProperties);
+		delegate.serializeOnOutbound(stream);
+		ArgumentCaptor<ValueTransformerSupplier> captor =
+				ArgumentCaptor.forClass(ValueTransformerSupplier.class);
+		verify(filtered).transformValues(captor.capture());
+
+		ValueTransformer<Object, Object> transformer = captor.getValue().get();
+		ProcessorContext context = mock(ProcessorContext.class);
+		RecordHeaders headers1 = new RecordHeaders();
+		RecordHeaders headers2 = new RecordHeaders();
+		given(context.headers()).willReturn(headers1, headers1, headers2, headers2);
+		transformer.init(context);
+
+		assertThat(new String((byte[]) transformer.transform(Collections.singletonMap("foo", "bar"))))
+				.isEqualTo("{\"foo\":\"bar\"}");
+		transformer.transform(Collections.singletonMap("baz", "qux"));
+		Header header = headers1.lastHeader(MessageHeaders.CONTENT_TYPE);
+		assertThat(new String(header.value())).isEqualTo("\"application/json\"");
+		assertThat(headers2.lastHeader(MessageHeaders.CONTENT_TYPE)).isSameAs(header);
+	}
+
+}
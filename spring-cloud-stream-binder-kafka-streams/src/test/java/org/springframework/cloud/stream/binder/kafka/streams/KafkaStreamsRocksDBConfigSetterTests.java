@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.stream.binder.kafka.streams;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.CompactionStyle;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+
+import org.springframework.cloud.stream.binder.kafka.streams.properties.KafkaStreamsBinderConfigurationProperties;
+import org.springframework.cloud.stream.binder.kafka.streams.properties.KafkaStreamsStateStoreProperties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author agent
+ */
+public class KafkaStreamsRocksDBConfigSetterTests {
+
+	@Test
+	public void testStoresShareCacheAndWriteBufferManager() {
+		RocksDB.loadLibrary();
+		KafkaStreamsBinderConfigurationProperties.RocksDb settings =
+				new KafkaStreamsBinderConfigurationProperties.RocksDb();
+		settings.setCompactionStyle(CompactionStyle.LEVEL);
+		KafkaStreamsStateStoreProperties store = new KafkaStreamsStateStoreProperties();
+		store.setName("windowed");
+		store.setBloomFilterBitsPerKey(0);
+		store.setCompactionStyle(CompactionStyle.FIFO);
+		Map<String, KafkaStreamsStateStoreProperties> stores = new HashMap<>();
+		stores.put(store.getName(), store);
+		Map<String, Object> configs = new HashMap<>();
+		configs.put(KafkaStreamsRocksDBConfigSetter.ROCKSDB_PROPERTIES_CONFIG, settings);
+		configs.put(KafkaStreamsRocksDBConfigSetter.STORE_PROPERTIES_CONFIG, stores);
+
+		KafkaStreamsRocksDBConfigSetter.SharedMemory memory =
+				KafkaStreamsRocksDBConfigSetter.sharedMemory(settings);
+		Options options1 = options();
+		KafkaStreamsRocksDBConfigSetter setter1 = new KafkaStreamsRocksDBConfigSetter();
+		setter1.setConfig("keyvalue", options1, configs);
+		Options options2 = options();
+		KafkaStreamsRocksDBConfigSetter setter2 = new KafkaStreamsRocksDBConfigSetter();
+		setter2.setConfig("windowed.1560000000000", options2, configs);
+
+		assertThat(options1.writeBufferManager()).isSameAs(memory.getWriteBufferManager());
+		assertThat(options2.writeBufferManager()).isSameAs(memory.getWriteBufferManager());
+		BlockBasedTableConfig tableConfig = (BlockBasedTableConfig) options1.tableFormatConfig();
+		assertThat(tableConfig.cacheIndexAndFilterBlocks()).isTrue();
+		assertThat(tableConfig.cacheIndexAndFilterBlocksWithHighPriority()).isTrue();
+		assertThat(options1.compactionStyle()).isEqualTo(CompactionStyle.LEVEL);
+		assertThat(options2.compactionStyle()).isEqualTo(CompactionStyle.FIFO);
+
+		setter1.close("keyvalue", options1);
+		setter2.close("windowed.1560000000000", options2);
+		options1.close();
+		options2.close();
+	}
+
+	private static Options options() {
+		Options options = new Options();
+		options.setTableFormatConfig(new BlockBasedTableConfig());
+		return options;
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka.streams;
+
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author agent
+ */
+public class RemoteQueryCacheTests {
+
+	@Test
+	public void testSizeTimeToLiveAndNegativeEntries() {
+		AtomicLong clock = new AtomicLong();
+		RemoteQueryCache cache = new RemoteQueryCache("foo", 2, Duration.ofNanos(100), clock::get);
+		assertThat(cache.get("a")).isNull();
+		cache.put("a", "A", cache.getVersion());
+		cache.put("b", null, cache.getVersion());
+		assertThat(cache.get("a")).contains("A");
+		assertThat(cache.get("b")).isEqualTo(Optional.empty());
+		cache.put("c", "C", cache.getVersion());
+		assertThat(cache.size()).isEqualTo(2);
+		assertThat(cache.get("a")).isNull();
+
+		clock.set(101);
+		assertThat(cache.get("c")).isNull();
+		assertThat(cache.getHits()).isEqualTo(2);
+		assertThat(cache.getMisses()).isEqualTo(3);
+		assertThat(cache.getEvictions()).isEqualTo(2);
+
+		long token = cache.getVersion();
+		cache.invalidate("d");
+		cache.put("d", "stale", token);
+		assertThat(cache.get("d")).isNull();
+		cache.put("e", "E", token);
+		assertThat(cache.get("e")).contains("E");
+	}
+
+	@Test
+	public void testPutRejectedWhenInvalidationForgotten() {
+		RemoteQueryCache cache = new RemoteQueryCache("foo", 2, Duration.ofMinutes(1));
+		long token = cache.getVersion();
+		cache.invalidate("a");
+		cache.invalidate("b");
+		cache.put("c", "C", token);
+		assertThat(cache.get("c")).contains("C");
+		cache.invalidate("c");
+		// the invalidation of "a" is no longer tracked
+		cache.put("a", "stale", token);
+		assertThat(cache.get("a")).isNull();
+		cache.put("a", "A", cache.getVersion());
+		assertThat(cache.get("a")).contains("A");
+	}
+
+	@Test
+	public void testChangelogRecordsInvalidateKeys() throws Exception {
+		MockConsumer<byte[], byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.LATEST);
+		TopicPartition partition = new TopicPartition("app-foo-changelog", 0);
+		consumer.updatePartitions("app-foo-changelog", Collections.singletonList(
+				new PartitionInfo("app-foo-changelog", 0, null, null, null)));
+		consumer.updateEndOffsets(Collections.singletonMap(partition, 0L));
+		RemoteQueryCache cache = new RemoteQueryCache("foo", 10, Duration.ofMinutes(1));
+		String key = Base64.getEncoder().encodeToString("a".getBytes());
+		cache.put(key, "A", cache.getVersion());
+		cache.startInvalidation(consumer, "app-foo-changelog");
+		assertThat(cache.isInvalidating()).isTrue();
+
+		consumer.schedulePollTask(() -> consumer.addRecord(
+				new ConsumerRecord<>("app-foo-changelog", 0, 0L, "a".getBytes(), "A2".getBytes())));
+		for (int i = 0; i < 100 && cache.size() > 0; i++) {
+			Thread.sleep(50);
+		}
+		assertThat(cache.get(key)).isNull();
+		cache.stop();
+		assertThat(consumer.closed()).isTrue();
+	}
+
+}
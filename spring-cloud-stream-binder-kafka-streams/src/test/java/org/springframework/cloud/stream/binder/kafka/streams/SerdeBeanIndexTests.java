@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka.streams;
+
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.junit.Test;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author agent
+ */
+public class SerdeBeanIndexTests {
+
+	@Test
+	public void testMostSpecificSerdeBeanWins() {
+		try (AnnotationConfigApplicationContext context =
+					new AnnotationConfigApplicationContext(SerdeConfig.class)) {
+			SerdeBeanIndex index = new SerdeBeanIndex(context);
+			assertThat(index.getSerdeTypes()).containsKeys("integerSerde", "numberSerde", "fooSerde");
+			assertThat(index.lookup(Integer.class)).isSameAs(context.getBean("integerSerde"));
+			assertThat(index.lookup(Long.class)).isSameAs(context.getBean("numberSerde"));
+			assertThat(index.lookup(Foo.class)).isSameAs(context.getBean("fooSerde"));
+			assertThat(index.lookup(String.class)).isNull();
+			assertThat(index.getLookups()).hasSize(4);
+		}
+	}
+
+	@Configuration
+	static class SerdeConfig {
+
+		@Bean
+		public Serde<Number> numberSerde() {
+			return new Serdes.WrapperSerde<>(null, null);
+		}
+
+		@Bean
+		public Serde<Integer> integerSerde() {
+			return Serdes.Integer();
+		}
+
+		@Bean
+		public FooSerde fooSerde() {
+			return new FooSerde();
+		}
+
+	}
+
+	static class Foo {
+
+	}
+
+	static class FooSerde extends Serdes.WrapperSerde<Foo> {
+
+		FooSerde() {
+			super(null, null);
+		}
+
+	}
+
+}
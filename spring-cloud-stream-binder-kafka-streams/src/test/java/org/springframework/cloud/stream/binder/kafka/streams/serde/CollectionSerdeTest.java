@@ -17,13 +17,18 @@
 package org.springframework.cloud.stream.binder.kafka.streams.serde;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serdes;
 import org.junit.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 /**
  *
@@ -62,6 +67,53 @@ public class CollectionSerdeTest {
 
 	}
 
+	@Test
+	public void testInPlaceDecodingAndNullElements() {
+		CollectionSerde<Long> collectionSerde = new CollectionSerde<>(Serdes.Long(), HashSet.class);
+		byte[] serialized = collectionSerde.serializer().serialize("", Arrays.asList(1L, null, 3L));
+		assertThat(serialized).hasSize(4 + 3 * 4 + 2 * 8);
+		assertThat(collectionSerde.deserializer().deserialize("", serialized))
+				.isInstanceOf(HashSet.class)
+				.containsExactlyInAnyOrder(1L, null, 3L);
+
+		byte[] truncated = Arrays.copyOf(serialized, serialized.length - 1);
+		assertThatThrownBy(() -> collectionSerde.deserializer().deserialize("", truncated))
+				.isInstanceOf(SerializationException.class);
+	}
+
+	@Test
+	public void testLazyListDecodesOnAccess() {
+		List<Foo> foos = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			Foo foo = new Foo();
+			foo.setData("data-" + i);
+			foo.setNum(i);
+			foos.add(foo);
+		}
+		CollectionSerde<Foo> collectionSerde = new CollectionSerde<>(Foo.class, List.class, true);
+		byte[] serialized = collectionSerde.serializer().serialize("", foos);
+		List<Foo> deserialized = (List<Foo>) collectionSerde.deserializer().deserialize("", serialized);
+		CollectionSerde.LazyList<Foo> lazy = (CollectionSerde.LazyList<Foo>) deserialized;
+		assertThat(lazy).hasSize(3);
+		assertThat(lazy.isEncoded(0)).isTrue();
+
+		Foo added = new Foo();
+		added.setData("data-3");
+		added.setNum(3);
+		lazy.add(added);
+		lazy.get(1).setNum(42);
+		assertThat(lazy.isEncoded(0)).isTrue();
+		assertThat(lazy.isEncoded(2)).isTrue();
+
+		CollectionSerde<Foo> eagerSerde = new CollectionSerde<>(Foo.class, ArrayList.class);
+		Collection<Foo> roundTrip = eagerSerde.deserializer().deserialize("", collectionSerde.serializer().serialize("", lazy));
+		assertThat(roundTrip).extracting(Foo::getNum).containsExactly(0, 42, 2, 3);
+		assertThat(roundTrip).extracting(Foo::getData).containsExactly("data-0", "data-1", "data-2", "data-3");
+
+		assertThatThrownBy(() -> new CollectionSerde<>(Foo.class, ArrayList.class, true))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
 	static class Foo {
 
 		private int num;
@@ -73,4 +73,35 @@ public class MessageConverterDelegateSerdeTest {
 		assertThat(deserialized).isEqualTo(sensor);
 	}
 
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testJsonSerdeRoundTripAndNulls() {
+		CompositeMessageConverterFactory compositeMessageConverterFactory = new CompositeMessageConverterFactory(
+				new ArrayList<>(), new ObjectMapper());
+		MessageConverterDelegateSerde<Map<String, Object>> serde = new MessageConverterDelegateSerde<>(
+				compositeMessageConverterFactory.getMessageConverterForAllRegistered());
+		Map<String, Object> configs = new HashMap<>();
+		configs.put("valueClass", Map.class);
+		serde.configure(configs, false);
+
+		for (int i = 0; i < 2; i++) {
+			Map<String, Object> value = new HashMap<>();
+			value.put("count", i);
+			byte[] serialized = serde.serializer().serialize(null, value);
+			assertThat(new String(serialized)).isEqualTo("{\"count\":" + i + "}");
+			assertThat(serde.deserializer().deserialize(null, serialized)).isEqualTo(value);
+		}
+		assertThat(serde.serializer().serialize(null, null)).isNull();
+		assertThat(serde.deserializer().deserialize(null, null)).isNull();
+
+		MessageConverterDelegateSerde<String> stringSerde = new MessageConverterDelegateSerde<>(
+				compositeMessageConverterFactory.getMessageConverterForAllRegistered());
+		configs.put("valueClass", String.class);
+		stringSerde.configure(configs, false);
+		for (int i = 0; i < 2; i++) {
+			assertThat(stringSerde.deserializer().deserialize(null,
+					stringSerde.serializer().serialize(null, "foo"))).isEqualTo("foo");
+		}
+	}
+
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka.streams.serde;
+
+import java.util.Arrays;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serde;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author agent
+ */
+public class PrimitiveSerdesTests {
+
+	@Test
+	public void testArraysRoundTripWithFixedWidthLittleEndianLayout() {
+		Serde<long[]> longs = PrimitiveSerdes.longArray();
+		byte[] bytes = longs.serializer().serialize("", new long[] { 1L, -2L });
+		assertThat(bytes).hasSize(16);
+		assertThat(bytes[0]).isEqualTo((byte) 1);
+		assertThat(longs.deserializer().deserialize("", bytes)).containsExactly(1L, -2L);
+
+		Serde<int[]> ints = PrimitiveSerdes.intArray();
+		assertThat(ints.deserializer().deserialize("", ints.serializer().serialize("", new int[] { 3, 4 })))
+				.containsExactly(3, 4);
+
+		Serde<double[]> doubles = PrimitiveSerdes.doubleArray();
+		assertThat(doubles.deserializer().deserialize("", doubles.serializer().serialize("",
+				new double[] { 1.5, -0.25 }))).containsExactly(1.5, -0.25);
+
+		assertThat(longs.serializer().serialize("", null)).isNull();
+		assertThat(longs.deserializer().deserialize("", null)).isNull();
+		assertThatThrownBy(() -> longs.deserializer().deserialize("", new byte[9]))
+				.isInstanceOf(SerializationException.class);
+	}
+
+	@Test
+	public void testSortedSetRoundTrip() {
+		Serde<SortedSet<Long>> serde = PrimitiveSerdes.longSortedSet();
+		SortedSet<Long> set = new TreeSet<>(Arrays.asList(5L, 1L, 3L));
+		byte[] bytes = serde.serializer().serialize("", set);
+		assertThat(bytes).hasSize(24);
+		assertThat(serde.deserializer().deserialize("", bytes)).containsExactly(1L, 3L, 5L);
+	}
+
+}
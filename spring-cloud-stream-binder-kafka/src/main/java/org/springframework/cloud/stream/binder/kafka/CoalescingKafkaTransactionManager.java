@@ -0,0 +1,620 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+
+import org.springframework.kafka.core.KafkaResourceHolder;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.core.ProducerFactoryUtils;
+import org.springframework.kafka.listener.AfterRollbackProcessor;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.support.TransactionSupport;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * A {@link KafkaTransactionManager} for record listener containers that coalesces the
+ * transactions the container starts for each record: the Kafka transaction is only
+ * committed when {@code batchSize} container transactions have completed in it, or when
+ * it has been open for {@code batchTimeout} (a timer commits a transaction that is no
+ * longer in use, for example when the consumer is idle), or when partitions are revoked.
+ * <p>
+ * The records sent and the offsets of the consumed records are therefore committed
+ * together, as with one transaction per record. When a coalesced transaction is rolled
+ * back (or fails to commit), the container must replay all its records, not only the
+ * records of the current poll: the {@link #afterRollbackProcessor(AfterRollbackProcessor)
+ * after rollback processor} seeks each partition to the first record of the aborted
+ * transaction, and the records are then committed one at a time up to the record that
+ * failed, so that the delegate after rollback processor handles its failures as usual.
+ * <p>
+ * Transactions are tracked per consumer thread, and per transactional producer when the
+ * producer factory uses a producer per partition.
+ *
+ * @author agent
+ * @since 3.0
+ */
+final class CoalescingKafkaTransactionManager extends KafkaTransactionManager<byte[], byte[]> {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Log logger = LogFactory.getLog(CoalescingKafkaTransactionManager.class);
+
+	private final int batchSize;
+
+	private final long batchTimeout;
+
+	private final transient ThreadLocal<Context> contexts = ThreadLocal.withInitial(Context::new);
+
+	private transient volatile ScheduledThreadPoolExecutor executor;
+
+	/**
+	 * Construct an instance.
+	 * @param producerFactory the transactional producer factory.
+	 * @param batchSize the number of container transactions committed together.
+	 * @param batchTimeout the maximum time a transaction is kept open.
+	 */
+	CoalescingKafkaTransactionManager(ProducerFactory<byte[], byte[]> producerFactory, int batchSize,
+			Duration batchTimeout) {
+
+		super(producerFactory);
+		this.batchSize = batchSize;
+		this.batchTimeout = batchTimeout.toMillis();
+	}
+
+	@Override
+	protected void doBegin(Object transaction, TransactionDefinition definition) {
+		Context context = this.contexts.get();
+		if (context.current != null) {
+			// a new transaction while ours is suspended; not coalesced
+			context.nested++;
+			super.doBegin(transaction, definition);
+			return;
+		}
+		if (!context.pendingSeeks.isEmpty()) {
+			throw new CannotCreateTransactionException(
+					"A coalesced transaction was rolled back; its records must be replayed first");
+		}
+		String key = TransactionSupport.getTransactionIdSuffix();
+		if (key == null) {
+			key = "";
+		}
+		Batch batch = context.batches.get(key);
+		if (batch != null) {
+			batch.lock.lock();
+			if (batch.closed) {
+				batch.lock.unlock();
+				batch = null;
+			}
+		}
+		if (batch == null) {
+			batch = open(context, key);
+		}
+		context.current = batch;
+		TransactionSynchronizationManager.bindResource(getProducerFactory(), batch.holder);
+		try {
+			super.doBegin(transaction, definition);
+		}
+		catch (RuntimeException ex) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(getProducerFactory());
+			context.current = null;
+			close(batch, false);
+			batch.lock.unlock();
+			throw ex;
+		}
+	}
+
+	@Override
+	protected void doCommit(DefaultTransactionStatus status) {
+		Context context = this.contexts.get();
+		if (context.nested > 0) {
+			super.doCommit(status);
+			return;
+		}
+		Batch batch = context.current;
+		if (context.replayUntil.isEmpty() && batch.commits + 1 < this.batchSize
+				&& System.currentTimeMillis() - batch.started < this.batchTimeout) {
+			batch.commits++;
+			return;
+		}
+		batch.closed = true;
+		super.doCommit(status);
+		batch.commits++;
+	}
+
+	@Override
+	protected void doRollback(DefaultTransactionStatus status) {
+		Context context = this.contexts.get();
+		if (context.nested > 0) {
+			super.doRollback(status);
+			return;
+		}
+		Batch batch = context.current;
+		batch.closed = true;
+		try {
+			super.doRollback(status);
+		}
+		finally {
+			if (batch.commits > 0) {
+				context.replay(batch);
+			}
+		}
+	}
+
+	@Override
+	protected void doCleanupAfterCompletion(Object transaction) {
+		Context context = this.contexts.get();
+		if (context.nested > 0) {
+			context.nested--;
+			super.doCleanupAfterCompletion(transaction);
+			return;
+		}
+		Batch batch = context.current;
+		context.current = null;
+		try {
+			if (batch.closed) {
+				super.doCleanupAfterCompletion(transaction);
+				context.batches.remove(batch.key, batch);
+				if (batch.flush != null) {
+					batch.flush.cancel(false);
+				}
+			}
+			else {
+				TransactionSynchronizationManager.unbindResource(getProducerFactory());
+				batch.holder.clear();
+			}
+		}
+		finally {
+			batch.lock.unlock();
+		}
+	}
+
+	/**
+	 * Wrap the after rollback processor of a container so that, when a coalesced
+	 * transaction has been rolled back, all its records are replayed.
+	 * @param delegate the after rollback processor used otherwise.
+	 * @param <K> the key type.
+	 * @param <V> the value type.
+	 * @return the after rollback processor.
+	 */
+	<K, V> AfterRollbackProcessor<K, V> afterRollbackProcessor(AfterRollbackProcessor<K, V> delegate) {
+		return new AfterRollbackProcessor<K, V>() {
+
+			@Override
+			public void process(List<ConsumerRecord<K, V>> records, Consumer<K, V> consumer,
+					Exception exception, boolean recoverable) {
+
+				Context context = CoalescingKafkaTransactionManager.this.contexts.get();
+				if (context.pendingSeeks.isEmpty()) {
+					delegate.process(records, consumer, exception, recoverable);
+				}
+				else {
+					context.seek(records, consumer);
+				}
+			}
+
+			@Override
+			public void clearThreadState() {
+				delegate.clearThreadState();
+				CoalescingKafkaTransactionManager.this.clearThreadState();
+			}
+
+			@Override
+			public boolean isProcessInTransaction() {
+				return delegate.isProcessInTransaction()
+						&& CoalescingKafkaTransactionManager.this.contexts.get().pendingSeeks.isEmpty();
+			}
+
+		};
+	}
+
+	/**
+	 * Wrap the rebalance listener of a container so that the open transactions of the
+	 * consumer are committed before its partitions are revoked.
+	 * @param delegate the rebalance listener, if any.
+	 * @return the rebalance listener.
+	 */
+	ConsumerAwareRebalanceListener rebalanceListener(@Nullable ConsumerRebalanceListener delegate) {
+		return new ConsumerAwareRebalanceListener() {
+
+			@Override
+			public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer,
+					Collection<TopicPartition> partitions) {
+
+				commitOpenTransactions(partitions);
+				if (delegate instanceof ConsumerAwareRebalanceListener) {
+					((ConsumerAwareRebalanceListener) delegate)
+							.onPartitionsRevokedBeforeCommit(consumer, partitions);
+				}
+				else if (delegate != null) {
+					delegate.onPartitionsRevoked(partitions);
+				}
+			}
+
+			@Override
+			public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer,
+					Collection<TopicPartition> partitions) {
+
+				if (delegate instanceof ConsumerAwareRebalanceListener) {
+					((ConsumerAwareRebalanceListener) delegate)
+							.onPartitionsRevokedAfterCommit(consumer, partitions);
+				}
+			}
+
+			@Override
+			public void onPartitionsAssigned(Consumer<?, ?> consumer,
+					Collection<TopicPartition> partitions) {
+
+				if (delegate instanceof ConsumerAwareRebalanceListener) {
+					((ConsumerAwareRebalanceListener) delegate)
+							.onPartitionsAssigned(consumer, partitions);
+				}
+				else if (delegate != null) {
+					delegate.onPartitionsAssigned(partitions);
+				}
+			}
+
+		};
+	}
+
+	/*
+	 * Commit the open transactions of the calling (consumer) thread; the revoked
+	 * partitions can no longer be replayed by this consumer.
+	 */
+	void commitOpenTransactions(Collection<TopicPartition> revoked) {
+		Context context = this.contexts.get();
+		for (Batch batch : context.batches.values()) {
+			batch.lock.lock();
+			try {
+				if (!batch.closed) {
+					close(batch, true);
+				}
+			}
+			finally {
+				batch.lock.unlock();
+			}
+		}
+		revoked.forEach((partition) -> {
+			context.pendingSeeks.remove(partition);
+			context.replayUntil.remove(partition);
+		});
+	}
+
+	/*
+	 * Called on the consumer thread when the container stops: commit its open
+	 * transactions and forget the records it was to replay.
+	 */
+	void clearThreadState() {
+		Context context = this.contexts.get();
+		commitOpenTransactions(Collections.emptyList());
+		context.pendingSeeks.clear();
+		context.replayUntil.clear();
+		this.contexts.remove();
+	}
+
+	private Batch open(Context context, String key) {
+		Producer<byte[], byte[]> producer = getProducerFactory().createProducer();
+		try {
+			producer.beginTransaction();
+		}
+		catch (RuntimeException ex) {
+			producer.close(ProducerFactoryUtils.DEFAULT_CLOSE_TIMEOUT);
+			throw new CannotCreateTransactionException("Could not create Kafka transaction", ex);
+		}
+		Batch batch = new Batch(context, key, producer);
+		batch.lock.lock();
+		context.batches.put(key, batch);
+		batch.flush = getExecutor().schedule(() -> flush(batch), this.batchTimeout, TimeUnit.MILLISECONDS);
+		return batch;
+	}
+
+	/*
+	 * Commit the transaction when the timeout has elapsed, unless the consumer thread is
+	 * using it, in which case the consumer thread commits it when the container
+	 * transaction completes.
+	 */
+	private void flush(Batch batch) {
+		if (batch.lock.tryLock()) {
+			try {
+				if (!batch.closed) {
+					close(batch, true);
+				}
+			}
+			finally {
+				batch.lock.unlock();
+			}
+		}
+	}
+
+	/*
+	 * Commit or roll back a transaction that is not in use by a container transaction;
+	 * unless it is committed, the consumer replays its records before it starts the next
+	 * one.
+	 */
+	private void close(Batch batch, boolean commit) {
+		batch.closed = true;
+		boolean committed = false;
+		try {
+			if (commit) {
+				batch.holder.commit();
+				committed = true;
+			}
+			else {
+				batch.holder.rollback();
+			}
+		}
+		catch (RuntimeException ex) {
+			logger.error("Failed to complete a coalesced transaction; its records will be replayed", ex);
+			if (commit) {
+				try {
+					batch.holder.rollback();
+				}
+				catch (RuntimeException rollbackEx) {
+					logger.debug("Failed to roll back a coalesced transaction", rollbackEx);
+				}
+			}
+		}
+		finally {
+			if (!committed && batch.commits > 0) {
+				batch.context.replay(batch);
+			}
+			ProducerFactoryUtils.releaseResources(batch.holder);
+			batch.context.batches.remove(batch.key, batch);
+			if (batch.flush != null) {
+				batch.flush.cancel(false);
+			}
+		}
+	}
+
+	private ScheduledThreadPoolExecutor getExecutor() {
+		if (this.executor == null) {
+			synchronized (this) {
+				if (this.executor == null) {
+					CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(
+							"kafka-binder-tx-flush-");
+					threadFactory.setDaemon(true);
+					ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, threadFactory);
+					executor.setRemoveOnCancelPolicy(true);
+					executor.setKeepAliveTime(1, TimeUnit.MINUTES);
+					executor.allowCoreThreadTimeOut(true);
+					this.executor = executor;
+				}
+			}
+		}
+		return this.executor;
+	}
+
+	/**
+	 * The coalesced transactions of a consumer thread, and the records that thread must
+	 * replay after one of them has been rolled back.
+	 */
+	private static final class Context {
+
+		private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+
+		/*
+		 * Where to seek each partition: the first record of a rolled back transaction.
+		 */
+		private final Map<TopicPartition, Long> pendingSeeks = new ConcurrentHashMap<>();
+
+		/*
+		 * Until these records have been processed again, each container transaction is
+		 * committed on its own.
+		 */
+		private final Map<TopicPartition, Long> replayUntil = new ConcurrentHashMap<>();
+
+		private Batch current;
+
+		private int nested;
+
+		void replay(Batch batch) {
+			batch.firstOffsets.forEach((partition, offset) -> this.pendingSeeks.merge(partition, offset, Math::min));
+			batch.lastOffsets.forEach((partition, offset) -> this.replayUntil.merge(partition, offset, Math::max));
+		}
+
+		<K, V> void seek(List<ConsumerRecord<K, V>> records, Consumer<K, V> consumer) {
+			Map<TopicPartition, Long> seeks = new HashMap<>();
+			for (TopicPartition partition : this.pendingSeeks.keySet()) {
+				Long offset = this.pendingSeeks.remove(partition);
+				if (offset != null) {
+					seeks.put(partition, offset);
+				}
+			}
+			for (ConsumerRecord<K, V> record : records) {
+				seeks.merge(new TopicPartition(record.topic(), record.partition()), record.offset(), Math::min);
+			}
+			if (!records.isEmpty()) {
+				ConsumerRecord<K, V> failed = records.get(0);
+				this.replayUntil.merge(new TopicPartition(failed.topic(), failed.partition()), failed.offset(),
+						Math::max);
+			}
+			Set<TopicPartition> assignment = consumer.assignment();
+			seeks.forEach((partition, offset) -> {
+				if (assignment.contains(partition)) {
+					consumer.seek(partition, offset);
+				}
+			});
+		}
+
+		void offsetsSent(Batch batch, Map<TopicPartition, OffsetAndMetadata> offsets) {
+			offsets.forEach((partition, offsetAndMetadata) -> {
+				long offset = offsetAndMetadata.offset() - 1;
+				batch.firstOffsets.putIfAbsent(partition, offset);
+				batch.lastOffsets.put(partition, offset);
+				this.replayUntil.computeIfPresent(partition, (key, until) -> offset >= until ? null : until);
+			});
+		}
+
+	}
+
+	/**
+	 * A transaction that is kept open across container transactions, with the offsets of
+	 * the first and last records sent to it for each partition.
+	 */
+	private static final class Batch {
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		private final Context context;
+
+		private final String key;
+
+		private final KafkaResourceHolder<byte[], byte[]> holder;
+
+		private final Map<TopicPartition, Long> firstOffsets = new HashMap<>();
+
+		private final Map<TopicPartition, Long> lastOffsets = new HashMap<>();
+
+		private final long started = System.currentTimeMillis();
+
+		private volatile boolean closed;
+
+		private int commits;
+
+		private Future<?> flush;
+
+		Batch(Context context, String key, Producer<byte[], byte[]> producer) {
+			this.context = context;
+			this.key = key;
+			this.holder = new KafkaResourceHolder<>(new OffsetTrackingProducer(producer, this),
+					ProducerFactoryUtils.DEFAULT_CLOSE_TIMEOUT);
+		}
+
+	}
+
+	/**
+	 * Records the consumer offsets the container sends to the transaction.
+	 */
+	private static final class OffsetTrackingProducer implements Producer<byte[], byte[]> {
+
+		private final Producer<byte[], byte[]> delegate;
+
+		private final Batch batch;
+
+		OffsetTrackingProducer(Producer<byte[], byte[]> delegate, Batch batch) {
+			this.delegate = delegate;
+			this.batch = batch;
+		}
+
+		@Override
+		public void initTransactions() {
+			this.delegate.initTransactions();
+		}
+
+		@Override
+		public void beginTransaction() {
+			this.delegate.beginTransaction();
+		}
+
+		@Override
+		public void sendOffsetsToTransaction(Map<TopicPartition, OffsetAndMetadata> offsets,
+				String consumerGroupId) {
+
+			this.delegate.sendOffsetsToTransaction(offsets, consumerGroupId);
+			this.batch.context.offsetsSent(this.batch, offsets);
+		}
+
+		@Override
+		public void commitTransaction() {
+			this.delegate.commitTransaction();
+		}
+
+		@Override
+		public void abortTransaction() {
+			this.delegate.abortTransaction();
+		}
+
+		@Override
+		public Future<RecordMetadata> send(ProducerRecord<byte[], byte[]> record) {
+			return this.delegate.send(record);
+		}
+
+		@Override
+		public Future<RecordMetadata> send(ProducerRecord<byte[], byte[]> record, Callback callback) {
+			return this.delegate.send(record, callback);
+		}
+
+		@Override
+		public void flush() {
+			this.delegate.flush();
+		}
+
+		@Override
+		public List<PartitionInfo> partitionsFor(String topic) {
+			return this.delegate.partitionsFor(topic);
+		}
+
+		@Override
+		public Map<MetricName, ? extends Metric> metrics() {
+			return this.delegate.metrics();
+		}
+
+		@Override
+		public void close() {
+			this.delegate.close();
+		}
+
+		@Override
+		@SuppressWarnings("deprecation")
+		public void close(long timeout, TimeUnit unit) {
+			this.delegate.close(timeout, unit);
+		}
+
+		@Override
+		public void close(Duration timeout) {
+			this.delegate.close(timeout);
+		}
+
+		@Override
+		public String toString() {
+			return this.delegate.toString();
+		}
+
+	}
+
+}
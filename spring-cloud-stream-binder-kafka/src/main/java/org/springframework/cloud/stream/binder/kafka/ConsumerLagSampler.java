@@ -0,0 +1,428 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Periodically samples the lag of all registered topic/group pairs on a single thread;
+ * end offsets of all topics are fetched with one request and the committed offsets of
+ * each group with one {@code listConsumerGroupOffsets} request. A group with no
+ * committed offset for a partition is positioned at the beginning offset of the
+ * partition; these are also fetched with one request. Gauges read the cached
+ * snapshot. Optionally, the timestamp of the oldest unconsumed record of each partition
+ * is sampled too, by reading the record at the committed offset. Listeners are notified
+ * of the partitions of each group the first time they are sampled.
+ *
+ * @author agent
+ * @since 3.0
+ */
+final class ConsumerLagSampler {
+
+	private static final Log logger = LogFactory.getLog(ConsumerLagSampler.class);
+
+	private final Map<String, Set<String>> topicsByGroup = new ConcurrentHashMap<>();
+
+	private final Supplier<Consumer<?, ?>> consumerSupplier;
+
+	private final Supplier<AdminClient> adminClientSupplier;
+
+	private final long refreshInterval;
+
+	private final long staleness;
+
+	private final long timeout;
+
+	private final boolean sampleTimeLag;
+
+	private final Object clientsMonitor = new Object();
+
+	private final List<BiConsumer<String, TopicPartition>> partitionListeners = new ArrayList<>();
+
+	private final Map<String, Set<TopicPartition>> sampledPartitions = new HashMap<>();
+
+	private ScheduledExecutorService executor;
+
+	private volatile boolean closeWhenSampled;
+
+	private Consumer<?, ?> metadataConsumer;
+
+	private AdminClient adminClient;
+
+	private volatile Snapshot snapshot = new Snapshot(0L, Collections.emptyMap(),
+			Collections.emptyMap());
+
+	/**
+	 * Construct an instance.
+	 * @param consumerSupplier supplies the consumer used to fetch metadata and end offsets.
+	 * @param adminClientSupplier supplies the admin client used to fetch committed offsets.
+	 * @param refreshInterval the sampling interval.
+	 * @param staleness the age after which a sample is no longer reported.
+	 * @param timeout the timeout of each request.
+	 * @param sampleTimeLag true to sample the timestamp of the oldest unconsumed records.
+	 */
+	ConsumerLagSampler(Supplier<Consumer<?, ?>> consumerSupplier,
+			Supplier<AdminClient> adminClientSupplier, Duration refreshInterval,
+			Duration staleness, Duration timeout, boolean sampleTimeLag) {
+
+		this.consumerSupplier = consumerSupplier;
+		this.adminClientSupplier = adminClientSupplier;
+		this.refreshInterval = refreshInterval.toMillis();
+		this.staleness = staleness.toMillis();
+		this.timeout = timeout.toMillis();
+		this.sampleTimeLag = sampleTimeLag;
+	}
+
+	/**
+	 * Register a topic/group pair to sample; starts the sampling thread if necessary.
+	 * @param topic the topic.
+	 * @param group the consumer group.
+	 */
+	void register(String topic, String group) {
+		this.topicsByGroup.computeIfAbsent(group, (g) -> ConcurrentHashMap.newKeySet())
+				.add(topic);
+		synchronized (this) {
+			if (this.executor == null) {
+				this.executor = Executors.newSingleThreadScheduledExecutor(
+						new CustomizableThreadFactory("kafka-binder-lag-sampler-"));
+				this.executor.scheduleWithFixedDelay(this::sample, 0L,
+						this.refreshInterval, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Add a listener notified, on the sampling thread, of each partition the first time
+	 * it is sampled for a group; it is notified of the partitions already sampled at once.
+	 * @param listener the listener, called with the group and the partition.
+	 */
+	void addPartitionListener(BiConsumer<String, TopicPartition> listener) {
+		synchronized (this.partitionListeners) {
+			this.partitionListeners.add(listener);
+			this.sampledPartitions.forEach((group, partitions) -> partitions
+					.forEach((partition) -> listener.accept(group, partition)));
+		}
+	}
+
+	/**
+	 * Return the total lag of the group on the topic from the last sample.
+	 * @param topic the topic.
+	 * @param group the consumer group.
+	 * @return the lag, or {@code NaN} if there is no sample, or it is stale.
+	 */
+	double getLag(String topic, String group) {
+		Map<TopicPartition, Long> lags = current(this.snapshot.lags, group);
+		long lag = 0;
+		boolean found = false;
+		for (Map.Entry<TopicPartition, Long> entry : lags.entrySet()) {
+			if (entry.getKey().topic().equals(topic)) {
+				lag += entry.getValue();
+				found = true;
+			}
+		}
+		return found ? lag : Double.NaN;
+	}
+
+	/**
+	 * Return the lag of the group on a single partition from the last sample.
+	 * @param partition the partition.
+	 * @param group the consumer group.
+	 * @return the lag, or {@code NaN} if there is no sample, or it is stale.
+	 */
+	double getLag(TopicPartition partition, String group) {
+		Long lag = current(this.snapshot.lags, group).get(partition);
+		return lag != null ? lag : Double.NaN;
+	}
+
+	/**
+	 * Return the age, in milliseconds, of the oldest record of the topic not yet consumed
+	 * by the group; 0 if there is no lag.
+	 * @param topic the topic.
+	 * @param group the consumer group.
+	 * @return the age, or {@code NaN} if there is no sample, or it is stale.
+	 */
+	double getTimeLag(String topic, String group) {
+		Map<TopicPartition, Long> oldest = current(this.snapshot.oldestTimestamps, group);
+		double timeLag = Double.NaN;
+		for (Map.Entry<TopicPartition, Long> entry : oldest.entrySet()) {
+			if (entry.getKey().topic().equals(topic)) {
+				double age = age(entry.getValue());
+				timeLag = Double.isNaN(timeLag) ? age : Math.max(timeLag, age);
+			}
+		}
+		return timeLag;
+	}
+
+	/**
+	 * Return the age, in milliseconds, of the oldest record of the partition not yet
+	 * consumed by the group; 0 if there is no lag.
+	 * @param partition the partition.
+	 * @param group the consumer group.
+	 * @return the age, or {@code NaN} if there is no sample, or it is stale.
+	 */
+	double getTimeLag(TopicPartition partition, String group) {
+		Long timestamp = current(this.snapshot.oldestTimestamps, group).get(partition);
+		return timestamp != null ? age(timestamp) : Double.NaN;
+	}
+
+	private Map<TopicPartition, Long> current(Map<String, Map<TopicPartition, Long>> sampled,
+			String group) {
+
+		if (System.currentTimeMillis() - this.snapshot.timestamp > this.staleness) {
+			return Collections.emptyMap();
+		}
+		Map<TopicPartition, Long> values = sampled.get(group);
+		return values != null ? values : Collections.emptyMap();
+	}
+
+	private static double age(long timestamp) {
+		return timestamp < 0 ? 0 : Math.max(0, System.currentTimeMillis() - timestamp);
+	}
+
+	void sample() {
+		try {
+			if (this.metadataConsumer == null) {
+				this.metadataConsumer = this.consumerSupplier.get();
+			}
+			if (this.adminClient == null) {
+				this.adminClient = this.adminClientSupplier.get();
+			}
+			Map<String, List<TopicPartition>> partitionsByTopic = new HashMap<>();
+			List<TopicPartition> allPartitions = new ArrayList<>();
+			for (Set<String> topics : this.topicsByGroup.values()) {
+				for (String topic : topics) {
+					partitionsByTopic.computeIfAbsent(topic, (t) -> {
+						List<TopicPartition> partitions = new ArrayList<>();
+						List<PartitionInfo> infos = this.metadataConsumer.partitionsFor(t);
+						if (infos != null) {
+							for (PartitionInfo info : infos) {
+								partitions.add(new TopicPartition(t, info.partition()));
+							}
+						}
+						allPartitions.addAll(partitions);
+						return partitions;
+					});
+				}
+			}
+			Map<String, Map<TopicPartition, OffsetAndMetadata>> committedByGroup = new HashMap<>();
+			Set<TopicPartition> uncommitted = new HashSet<>();
+			for (Map.Entry<String, Set<String>> entry : this.topicsByGroup.entrySet()) {
+				String group = entry.getKey();
+				try {
+					Map<TopicPartition, OffsetAndMetadata> committed = this.adminClient
+							.listConsumerGroupOffsets(group).partitionsToOffsetAndMetadata()
+							.get(this.timeout, TimeUnit.MILLISECONDS);
+					committedByGroup.put(group, committed);
+					for (String topic : entry.getValue()) {
+						for (TopicPartition partition : partitionsByTopic.get(topic)) {
+							if (committed.get(partition) == null) {
+								uncommitted.add(partition);
+							}
+						}
+					}
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				catch (Exception ex) {
+					logger.debug("Cannot sample lag for group: " + group, ex);
+				}
+			}
+			Map<TopicPartition, Long> endOffsets = this.metadataConsumer
+					.endOffsets(allPartitions, Duration.ofMillis(this.timeout));
+			Map<TopicPartition, Long> beginningOffsets = uncommitted.isEmpty()
+					? Collections.emptyMap()
+					: this.metadataConsumer.beginningOffsets(uncommitted,
+							Duration.ofMillis(this.timeout));
+			Map<String, Map<TopicPartition, Long>> lags = new HashMap<>();
+			Map<String, Map<TopicPartition, Long>> oldestTimestamps = new HashMap<>();
+			for (Map.Entry<String, Map<TopicPartition, OffsetAndMetadata>> entry : committedByGroup
+					.entrySet()) {
+
+				Map<TopicPartition, Long> groupLags = new HashMap<>();
+				Map<TopicPartition, Long> unconsumed = new HashMap<>();
+				for (String topic : this.topicsByGroup.get(entry.getKey())) {
+					for (TopicPartition partition : partitionsByTopic.get(topic)) {
+						Long endOffset = endOffsets.get(partition);
+						OffsetAndMetadata current = entry.getValue().get(partition);
+						Long position = current != null ? Long.valueOf(current.offset())
+								: beginningOffsets.get(partition);
+						if (endOffset != null && position != null) {
+							groupLags.put(partition, endOffset - position);
+							if (endOffset > position) {
+								unconsumed.put(partition, position);
+							}
+						}
+					}
+				}
+				lags.put(entry.getKey(), groupLags);
+				if (this.sampleTimeLag) {
+					Map<TopicPartition, Long> timestamps = new HashMap<>();
+					groupLags.keySet().forEach((partition) -> timestamps.put(partition, -1L));
+					timestamps.putAll(sampleOldestTimestamps(unconsumed));
+					oldestTimestamps.put(entry.getKey(), timestamps);
+				}
+			}
+			this.snapshot = new Snapshot(System.currentTimeMillis(), lags, oldestTimestamps);
+			lags.forEach((group, groupLags) -> partitionsSampled(group, groupLags.keySet()));
+		}
+		catch (Exception ex) {
+			logger.debug("Cannot sample consumer lag", ex);
+		}
+		finally {
+			if (this.closeWhenSampled) {
+				closeClients();
+			}
+		}
+	}
+
+	private void partitionsSampled(String group, Set<TopicPartition> partitions) {
+		synchronized (this.partitionListeners) {
+			Set<TopicPartition> known = this.sampledPartitions.computeIfAbsent(group,
+					(g) -> new HashSet<>());
+			for (TopicPartition partition : partitions) {
+				if (known.add(partition)) {
+					for (BiConsumer<String, TopicPartition> listener : this.partitionListeners) {
+						try {
+							listener.accept(group, partition);
+						}
+						catch (Exception ex) {
+							logger.debug("Partition listener failed for group: " + group, ex);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	 * Read the first record at each position; partitions are paused once a record has
+	 * been received for them. Partitions without a record before the timeout are omitted.
+	 */
+	private Map<TopicPartition, Long> sampleOldestTimestamps(Map<TopicPartition, Long> positions) {
+		Map<TopicPartition, Long> timestamps = new HashMap<>();
+		if (positions.isEmpty()) {
+			return timestamps;
+		}
+		Consumer<?, ?> consumer = this.metadataConsumer;
+		consumer.assign(positions.keySet());
+		try {
+			positions.forEach(consumer::seek);
+			long deadline = System.currentTimeMillis() + this.timeout;
+			long remaining = this.timeout;
+			while (timestamps.size() < positions.size() && remaining > 0) {
+				ConsumerRecords<?, ?> records = consumer.poll(Duration.ofMillis(remaining));
+				for (TopicPartition partition : records.partitions()) {
+					timestamps.putIfAbsent(partition,
+							records.records(partition).get(0).timestamp());
+				}
+				consumer.pause(timestamps.keySet());
+				remaining = deadline - System.currentTimeMillis();
+			}
+		}
+		finally {
+			consumer.assign(Collections.emptyList());
+		}
+		return timestamps;
+	}
+
+	/*
+	 * Stop sampling; the consumer is not thread-safe, so if the current sample does not
+	 * complete in time, it is interrupted and the sampler thread closes the clients.
+	 */
+	synchronized void stop() {
+		ScheduledExecutorService executor = this.executor;
+		this.executor = null;
+		if (executor != null) {
+			executor.shutdown();
+			try {
+				if (!executor.awaitTermination(this.timeout, TimeUnit.MILLISECONDS)) {
+					this.closeWhenSampled = true;
+					executor.shutdownNow();
+					if (!executor.awaitTermination(this.timeout, TimeUnit.MILLISECONDS)) {
+						return;
+					}
+				}
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				this.closeWhenSampled = true;
+				executor.shutdownNow();
+				return;
+			}
+		}
+		closeClients();
+	}
+
+	private void closeClients() {
+		synchronized (this.clientsMonitor) {
+			this.closeWhenSampled = false;
+			if (this.metadataConsumer != null) {
+				this.metadataConsumer.close();
+				this.metadataConsumer = null;
+			}
+			if (this.adminClient != null) {
+				this.adminClient.close(Duration.ofMillis(this.timeout));
+				this.adminClient = null;
+			}
+		}
+	}
+
+	private static final class Snapshot {
+
+		private final long timestamp;
+
+		private final Map<String, Map<TopicPartition, Long>> lags;
+
+		private final Map<String, Map<TopicPartition, Long>> oldestTimestamps;
+
+		Snapshot(long timestamp, Map<String, Map<TopicPartition, Long>> lags,
+				Map<String, Map<TopicPartition, Long>> oldestTimestamps) {
+
+			this.timestamp = timestamp;
+			this.lags = lags;
+			this.oldestTimestamps = oldestTimestamps;
+		}
+
+	}
+
+}
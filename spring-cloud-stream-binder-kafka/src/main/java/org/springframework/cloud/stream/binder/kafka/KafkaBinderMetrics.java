@@ -16,10 +16,13 @@
 
 package org.springframework.cloud.stream.binder.kafka;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -30,9 +33,12 @@ import java.util.concurrent.TimeoutException;
 
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
 import io.micrometer.core.instrument.binder.MeterBinder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.OffsetAndMetadata;
@@ -40,6 +46,7 @@ import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cloud.stream.binder.BindingCreatedEvent;
 import org.springframework.cloud.stream.binder.kafka.properties.KafkaBinderConfigurationProperties;
 import org.springframework.context.ApplicationListener;
@@ -60,7 +67,7 @@ import org.springframework.util.ObjectUtils;
  * @author Gary Russell
  */
 public class KafkaBinderMetrics
-		implements MeterBinder, ApplicationListener<BindingCreatedEvent> {
+		implements MeterBinder, ApplicationListener<BindingCreatedEvent>, DisposableBean {
 
 	private static final int DEFAULT_TIMEOUT = 60;
 
@@ -68,6 +75,18 @@ public class KafkaBinderMetrics
 
 	static final String METRIC_NAME = "spring.cloud.stream.binder.kafka.offset";
 
+	static final String PARTITION_METRIC_NAME = "spring.cloud.stream.binder.kafka.partition.offset";
+
+	static final String TIME_LAG_METRIC_NAME = "spring.cloud.stream.binder.kafka.time.lag";
+
+	static final String PARTITION_TIME_LAG_METRIC_NAME = "spring.cloud.stream.binder.kafka.partition.time.lag";
+
+	static final String PRODUCER_POOL_FACTORIES_METRIC_NAME = "spring.cloud.stream.binder.kafka.producer.pool.factories";
+
+	static final String PRODUCER_POOL_REFERENCES_METRIC_NAME = "spring.cloud.stream.binder.kafka.producer.pool.references";
+
+	static final String PRODUCER_IN_FLIGHT_METRIC_NAME = "spring.cloud.stream.binder.kafka.producer.in.flight";
+
 	private final KafkaMessageChannelBinder binder;
 
 	private final KafkaBinderConfigurationProperties binderConfigurationProperties;
@@ -80,6 +99,10 @@ public class KafkaBinderMetrics
 
 	private int timeout = DEFAULT_TIMEOUT;
 
+	private ConsumerLagSampler lagSampler;
+
+	private final Set<MeterRegistry> partitionMeterRegistries = ConcurrentHashMap.newKeySet();
+
 	public KafkaBinderMetrics(KafkaMessageChannelBinder binder,
 			KafkaBinderConfigurationProperties binderConfigurationProperties,
 			ConsumerFactory<?, ?> defaultConsumerFactory,
@@ -114,12 +137,45 @@ public class KafkaBinderMetrics
 			String topic = topicInfo.getKey();
 			String group = topicInfo.getValue().getConsumerGroup();
 
+			ConsumerLagSampler sampler = getLagSampler();
+			if (sampler != null) {
+				sampler.register(topic, group);
+			}
 			Gauge.builder(METRIC_NAME, this,
-					(o) -> computeUnconsumedMessages(topic, group)).tag("group", group)
+					(o) -> sampler != null
+							? sampler.getLag(topic, group)
+							: computeUnconsumedMessages(topic, group)).tag("group", group)
 					.tag("topic", topic)
 					.description("Unconsumed messages for a particular group and topic")
 					.register(registry);
+
+			if (sampler != null) {
+				bindSampledLagMeters(registry, sampler, topic, topicInfo.getValue());
+			}
+		}
+
+		ConsumerLagSampler sampler = getLagSampler();
+		if (sampler != null && this.binderConfigurationProperties.isPartitionLagMetricsEnabled()
+				&& this.partitionMeterRegistries.add(registry)) {
+			// partitions added after the binding was created are found by the sampler
+			sampler.addPartitionListener((group, partition) ->
+					bindPartitionLagMeters(registry, sampler, partition, group));
+		}
+
+		ProducerFactoryPool producerFactoryPool = this.binder.getProducerFactoryPool();
+		if (producerFactoryPool != null) {
+			Gauge.builder(PRODUCER_POOL_FACTORIES_METRIC_NAME, producerFactoryPool,
+					ProducerFactoryPool::getFactoryCount)
+					.description("Number of shared producers in the binder's producer pool")
+					.register(registry);
+			Gauge.builder(PRODUCER_POOL_REFERENCES_METRIC_NAME, producerFactoryPool,
+					ProducerFactoryPool::getReferenceCount)
+					.description("Number of bindings using a shared producer from the pool")
+					.register(registry);
 		}
+
+		// the binder registers and removes them as producer bindings start and stop
+		this.binder.bindSendWindowMeters(registry);
 	}
 
 	private long computeUnconsumedMessages(String topic, String group) {
@@ -174,6 +230,81 @@ public class KafkaBinderMetrics
 		}
 	}
 
+	private void bindSampledLagMeters(MeterRegistry registry, ConsumerLagSampler sampler,
+			String topic, KafkaMessageChannelBinder.TopicInformation topicInformation) {
+
+		String group = topicInformation.getConsumerGroup();
+		boolean partitionLag = this.binderConfigurationProperties.isPartitionLagMetricsEnabled();
+		boolean timeLag = this.binderConfigurationProperties.isTimeLagMetricsEnabled();
+		if (timeLag) {
+			TimeGauge.builder(TIME_LAG_METRIC_NAME, sampler, TimeUnit.MILLISECONDS,
+					(s) -> s.getTimeLag(topic, group)).tag("group", group)
+					.tag("topic", topic)
+					.description("Age of the oldest unconsumed message for a particular group and topic")
+					.register(registry);
+		}
+		if (partitionLag && !topicInformation.isTopicPattern()) {
+			for (PartitionInfo partitionInfo : topicInformation.getPartitionInfos()) {
+				bindPartitionLagMeters(registry, sampler,
+						new TopicPartition(topic, partitionInfo.partition()), group);
+			}
+		}
+	}
+
+	private void bindPartitionLagMeters(MeterRegistry registry, ConsumerLagSampler sampler,
+			TopicPartition partition, String group) {
+
+		String topic = partition.topic();
+		String partitionTag = String.valueOf(partition.partition());
+		Gauge.builder(PARTITION_METRIC_NAME, sampler,
+				(s) -> s.getLag(partition, group)).tag("group", group)
+				.tag("topic", topic).tag("partition", partitionTag)
+				.description("Unconsumed messages for a particular group and partition")
+				.register(registry);
+		if (this.binderConfigurationProperties.isTimeLagMetricsEnabled()) {
+			TimeGauge.builder(PARTITION_TIME_LAG_METRIC_NAME, sampler,
+					TimeUnit.MILLISECONDS, (s) -> s.getTimeLag(partition, group))
+					.tag("group", group).tag("topic", topic)
+					.tag("partition", partitionTag)
+					.description("Age of the oldest unconsumed message for a particular group and partition")
+					.register(registry);
+		}
+	}
+
+	@Nullable
+	private synchronized ConsumerLagSampler getLagSampler() {
+		Duration refreshInterval = this.binderConfigurationProperties.getLagRefreshInterval();
+		if (this.lagSampler == null && refreshInterval != null) {
+			Duration staleness = this.binderConfigurationProperties.getLagStaleness();
+			// the sampler assigns partitions to read timestamps; it must never commit, and
+			// only needs the first record of each partition
+			Properties overrides = new Properties();
+			overrides.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+			overrides.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, "1");
+			this.lagSampler = new ConsumerLagSampler(
+					() -> createConsumerFactory().createConsumer(null, null, "lag-sampler", overrides),
+					() -> AdminClient.create(adminClientConfiguration()), refreshInterval,
+					staleness != null ? staleness : refreshInterval.multipliedBy(3),
+					Duration.ofSeconds(this.timeout),
+					this.binderConfigurationProperties.isTimeLagMetricsEnabled());
+		}
+		return this.lagSampler;
+	}
+
+	private Map<String, Object> adminClientConfiguration() {
+		Map<String, Object> props = new HashMap<>();
+		this.binderConfigurationProperties.mergedConsumerConfiguration().forEach((key, value) -> {
+			if (AdminClientConfig.configNames().contains(key)) {
+				props.put(key, value);
+			}
+		});
+		if (!props.containsKey(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG)) {
+			props.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG,
+					this.binderConfigurationProperties.getKafkaConnectionString());
+		}
+		return props;
+	}
+
 	private ConsumerFactory<?, ?> createConsumerFactory() {
 		if (this.defaultConsumerFactory == null) {
 			synchronized (this) {
@@ -202,6 +333,14 @@ public class KafkaBinderMetrics
 		return this.defaultConsumerFactory;
 	}
 
+	@Override
+	public synchronized void destroy() {
+		if (this.lagSampler != null) {
+			this.lagSampler.stop();
+			this.lagSampler = null;
+		}
+	}
+
 	@Override
 	public void onApplicationEvent(BindingCreatedEvent event) {
 		if (this.meterRegistry != null) {
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Registers the native metrics of the Kafka clients created by the binder with a
+ * {@link MeterRegistry}. Meter names are derived from the metric group and name (for
+ * example {@code kafka.consumer.fetch.manager.fetch.latency.avg}) and tagged with the
+ * metric's own tags (including {@code client-id}) and the binding's tags. Clients create
+ * some metrics (such as per-topic metrics) lazily, so bound clients are re-scanned
+ * periodically.
+ *
+ * @author agent
+ * @since 3.0
+ */
+public class KafkaClientMetricsBridge implements DisposableBean {
+
+	private static final String METRIC_PREFIX = "kafka.";
+
+	private final Map<Object, List<BoundClient>> clients = new ConcurrentHashMap<>();
+
+	private final MeterRegistry meterRegistry;
+
+	private final long refreshInterval;
+
+	private ScheduledExecutorService scheduler;
+
+	public KafkaClientMetricsBridge(MeterRegistry meterRegistry) {
+		this(meterRegistry, Duration.ofMinutes(1));
+	}
+
+	public KafkaClientMetricsBridge(MeterRegistry meterRegistry, Duration refreshInterval) {
+		this.meterRegistry = meterRegistry;
+		this.refreshInterval = refreshInterval.toMillis();
+	}
+
+	/**
+	 * Register the metrics of a client.
+	 * @param owner the object whose {@link #unbind(Object)} removes the meters.
+	 * @param metrics the client's metrics (e.g. {@code consumer::metrics}).
+	 * @param tags additional tags, such as the binding name.
+	 */
+	void bind(Object owner, Supplier<Map<MetricName, ? extends Metric>> metrics,
+			Map<String, String> tags) {
+
+		List<Tag> extraTags = new ArrayList<>();
+		tags.forEach((key, value) -> extraTags.add(Tag.of(key, value)));
+		BoundClient client = new BoundClient(metrics, extraTags);
+		this.clients.computeIfAbsent(owner, (o) -> Collections.synchronizedList(new ArrayList<>()))
+				.add(client);
+		client.register();
+		synchronized (this) {
+			if (this.scheduler == null) {
+				this.scheduler = Executors.newSingleThreadScheduledExecutor(
+						new CustomizableThreadFactory("kafka-binder-client-metrics-"));
+				this.scheduler.scheduleWithFixedDelay(this::refresh, this.refreshInterval,
+						this.refreshInterval, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Remove the meters of all clients registered with this owner.
+	 * @param owner the owner.
+	 */
+	void unbind(Object owner) {
+		List<BoundClient> removed = this.clients.remove(owner);
+		if (removed != null) {
+			removed.forEach(BoundClient::remove);
+		}
+	}
+
+	int getMeterCount() {
+		int count = 0;
+		for (List<BoundClient> list : this.clients.values()) {
+			synchronized (list) {
+				for (BoundClient client : list) {
+					count += client.getMeterCount();
+				}
+			}
+		}
+		return count;
+	}
+
+	void refresh() {
+		this.clients.values().forEach((list) -> {
+			synchronized (list) {
+				list.forEach(BoundClient::register);
+			}
+		});
+	}
+
+	@Override
+	public synchronized void destroy() {
+		if (this.scheduler != null) {
+			this.scheduler.shutdownNow();
+			this.scheduler = null;
+		}
+	}
+
+	static String meterName(MetricName metricName) {
+		String group = metricName.group();
+		if (group.endsWith("-metrics")) {
+			group = group.substring(0, group.length() - "-metrics".length());
+		}
+		return (METRIC_PREFIX + group + "." + metricName.name()).replace('-', '.');
+	}
+
+	private static double value(Metric metric) {
+		Object value = metric.metricValue();
+		return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+	}
+
+	private final class BoundClient {
+
+		private final Supplier<Map<MetricName, ? extends Metric>> metrics;
+
+		private final List<Tag> tags;
+
+		private final Set<MetricName> registered = new HashSet<>();
+
+		private final List<Meter> meters = new ArrayList<>();
+
+		private boolean removed;
+
+		BoundClient(Supplier<Map<MetricName, ? extends Metric>> metrics, List<Tag> tags) {
+			this.metrics = metrics;
+			this.tags = tags;
+		}
+
+		synchronized void register() {
+			if (this.removed) {
+				return;
+			}
+			for (Map.Entry<MetricName, ? extends Metric> entry : this.metrics.get().entrySet()) {
+				MetricName metricName = entry.getKey();
+				if (!this.registered.add(metricName)
+						|| !(entry.getValue().metricValue() instanceof Number)) {
+					continue;
+				}
+				List<Tag> meterTags = new ArrayList<>(this.tags);
+				metricName.tags().forEach((key, value) -> meterTags.add(Tag.of(key, value)));
+				Metric metric = entry.getValue();
+				String name = meterName(metricName);
+				Meter meter;
+				if (metricName.name().endsWith("-total")) {
+					meter = FunctionCounter.builder(name, metric, KafkaClientMetricsBridge::value)
+							.tags(meterTags)
+							.description(metricName.description())
+							.register(KafkaClientMetricsBridge.this.meterRegistry);
+				}
+				else {
+					meter = Gauge.builder(name, metric, KafkaClientMetricsBridge::value)
+							.tags(meterTags)
+							.description(metricName.description())
+							.register(KafkaClientMetricsBridge.this.meterRegistry);
+				}
+				this.meters.add(meter);
+			}
+		}
+
+		synchronized int getMeterCount() {
+			return this.meters.size();
+		}
+
+		synchronized void remove() {
+			this.removed = true;
+			this.meters.forEach(KafkaClientMetricsBridge.this.meterRegistry::remove);
+			this.meters.clear();
+		}
+
+	}
+
+}
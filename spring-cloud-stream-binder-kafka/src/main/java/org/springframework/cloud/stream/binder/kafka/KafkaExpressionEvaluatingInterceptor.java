@@ -19,6 +19,7 @@ package org.springframework.cloud.stream.binder.kafka;
 import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.Expression;
 import org.springframework.integration.support.MessageBuilder;
+import org.springframework.lang.Nullable;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.support.ChannelInterceptor;
@@ -42,6 +43,8 @@ public class KafkaExpressionEvaluatingInterceptor implements ChannelInterceptor
 
 	private final EvaluationContext evaluationContext;
 
+	private final MessageKeyHolder messageKeyHolder;
+
 	/**
 	 * Construct an instance with the provided expressions and evaluation context. At
 	 * least one expression muse be non-null.
@@ -53,10 +56,32 @@ public class KafkaExpressionEvaluatingInterceptor implements ChannelInterceptor
 		Assert.notNull(evaluationContext, "the 'evaluationContext' cannot be null");
 		this.messageKeyExpression = messageKeyExpression;
 		this.evaluationContext = evaluationContext;
+		this.messageKeyHolder = null;
+	}
+
+	/**
+	 * Construct an instance that passes the evaluated key to the producer through the
+	 * holder instead of adding a header to a copy of the message.
+	 * @param messageKeyExpression the routing key expression.
+	 * @param evaluationContext the evaluation context.
+	 * @param messageKeyHolder the holder read by the producer message handler.
+	 */
+	KafkaExpressionEvaluatingInterceptor(Expression messageKeyExpression, EvaluationContext evaluationContext,
+			MessageKeyHolder messageKeyHolder) {
+
+		Assert.notNull(messageKeyExpression, "A message key expression is required");
+		Assert.notNull(evaluationContext, "the 'evaluationContext' cannot be null");
+		this.messageKeyExpression = messageKeyExpression;
+		this.evaluationContext = evaluationContext;
+		this.messageKeyHolder = messageKeyHolder;
 	}
 
 	@Override
 	public Message<?> preSend(Message<?> message, MessageChannel channel) {
+		if (this.messageKeyHolder != null) {
+			this.messageKeyHolder.set(this.messageKeyExpression.getValue(this.evaluationContext, message));
+			return message;
+		}
 		MessageBuilder<?> builder = MessageBuilder.fromMessage(message);
 		if (this.messageKeyExpression != null) {
 			builder.setHeader(MESSAGE_KEY_HEADER,
@@ -65,4 +90,13 @@ public class KafkaExpressionEvaluatingInterceptor implements ChannelInterceptor
 		return builder.build();
 	}
 
+	@Override
+	public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent,
+			@Nullable Exception ex) {
+
+		if (this.messageKeyHolder != null) {
+			this.messageKeyHolder.clear();
+		}
+	}
+
 }
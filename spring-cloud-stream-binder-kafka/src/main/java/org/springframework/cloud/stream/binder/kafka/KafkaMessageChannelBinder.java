@@ -20,31 +20,43 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.admin.AdminClient;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.header.Headers;
 import org.apache.kafka.common.header.internals.RecordHeader;
 import org.apache.kafka.common.header.internals.RecordHeaders;
@@ -71,23 +83,28 @@ import org.springframework.cloud.stream.binder.kafka.properties.KafkaExtendedBin
 import org.springframework.cloud.stream.binder.kafka.properties.KafkaProducerProperties;
 import org.springframework.cloud.stream.binder.kafka.provisioning.KafkaTopicProvisioner;
 import org.springframework.cloud.stream.binder.kafka.utils.DlqPartitionFunction;
+import org.springframework.cloud.stream.binder.kafka.utils.KafkaTopicUtils;
 import org.springframework.cloud.stream.binding.MessageConverterConfigurer.PartitioningInterceptor;
 import org.springframework.cloud.stream.config.ListenerContainerCustomizer;
 import org.springframework.cloud.stream.config.MessageSourceCustomizer;
 import org.springframework.cloud.stream.provisioning.ConsumerDestination;
 import org.springframework.cloud.stream.provisioning.ProducerDestination;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.Lifecycle;
 import org.springframework.expression.Expression;
 import org.springframework.expression.common.LiteralExpression;
-import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.integration.MessageTimeoutException;
 import org.springframework.integration.StaticMessageHeaderAccessor;
 import org.springframework.integration.acks.AcknowledgmentCallback;
 import org.springframework.integration.channel.AbstractMessageChannel;
+import org.springframework.integration.channel.DirectChannel;
 import org.springframework.integration.core.MessageProducer;
+import org.springframework.integration.expression.FunctionExpression;
 import org.springframework.integration.kafka.inbound.KafkaMessageDrivenChannelAdapter;
 import org.springframework.integration.kafka.inbound.KafkaMessageDrivenChannelAdapter.ListenerMode;
 import org.springframework.integration.kafka.inbound.KafkaMessageSource;
 import org.springframework.integration.kafka.outbound.KafkaProducerMessageHandler;
+import org.springframework.integration.kafka.support.KafkaSendFailureException;
 import org.springframework.integration.kafka.support.RawRecordHeaderErrorMessageStrategy;
 import org.springframework.integration.support.ErrorMessageStrategy;
 import org.springframework.integration.support.MessageBuilder;
@@ -97,6 +114,7 @@ import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
 import org.springframework.kafka.listener.AbstractMessageListenerContainer;
+import org.springframework.kafka.listener.AfterRollbackProcessor;
 import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
 import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
 import org.springframework.kafka.listener.ConsumerProperties;
@@ -104,6 +122,7 @@ import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.support.DefaultKafkaHeaderMapper;
 import org.springframework.kafka.support.KafkaHeaderMapper;
 import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.KafkaNull;
 import org.springframework.kafka.support.ProducerListener;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.kafka.support.TopicPartitionOffset;
@@ -111,13 +130,18 @@ import org.springframework.kafka.support.TopicPartitionOffset.SeekPosition;
 import org.springframework.kafka.support.converter.MessagingMessageConverter;
 import org.springframework.kafka.transaction.KafkaTransactionManager;
 import org.springframework.lang.Nullable;
+import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHandlingException;
 import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.MessagingException;
 import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.messaging.support.ErrorMessage;
+import org.springframework.messaging.support.GenericMessage;
 import org.springframework.messaging.support.InterceptableChannel;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.ObjectUtils;
@@ -186,24 +210,58 @@ public class KafkaMessageChannelBinder extends
 	 */
 	public static final String X_ORIGINAL_TIMESTAMP_TYPE = "x-original-timestamp-type";
 
+	/**
+	 * Kafka header for x-retry-attempt.
+	 */
+	public static final String X_RETRY_ATTEMPT = "x-retry-attempt";
+
+	/**
+	 * Kafka header for x-retry-due-timestamp.
+	 */
+	public static final String X_RETRY_DUE_TIMESTAMP = "x-retry-due-timestamp";
+
 	private static final ThreadLocal<String> bindingNameHolder = new ThreadLocal<>();
 
-	private static final Pattern interceptorNeededPattern = Pattern.compile("(payload|#root|#this)");
+	private static final ThreadLocal<String> producerBindingNameHolder = new ThreadLocal<>();
 
-	private static final SpelExpressionParser PARSER = new SpelExpressionParser();
+	private static final long DEFAULT_BATCH_SEND_TIMEOUT = 10000L;
+
+	private static final Pattern interceptorNeededPattern = Pattern.compile("(payload|#root|#this)");
 
 	private final KafkaBinderConfigurationProperties configurationProperties;
 
 	private final Map<String, TopicInformation> topicsInUse = new ConcurrentHashMap<>();
 
+	private final Set<SendWindow> sendWindows = ConcurrentHashMap.newKeySet();
+
+	/*
+	 * Key holders created with the producer handler, keyed by output channel, until the
+	 * channel interceptor is added; a failed binding is replaced when the channel is re-bound.
+	 */
+	private final Map<MessageChannel, MessageKeyHolder> messageKeyHolders = new ConcurrentHashMap<>();
+
+	private volatile MeterRegistry sendWindowMeterRegistry;
+
 	private final KafkaTransactionManager<byte[], byte[]> transactionManager;
 
+	private final CoalescingKafkaTransactionManager coalescingTransactionManager;
+
 	private final KafkaBindingRebalanceListener rebalanceListener;
 
 	private final DlqPartitionFunction dlqPartitionFunction;
 
+	private final ProducerFactoryPool producerFactoryPool;
+
+	private final Map<String, ProducerFactory<?, ?>> dlqProducerFactories = new ConcurrentHashMap<>();
+
 	private ProducerListener<byte[], byte[]> producerListener;
 
+	private volatile TaskScheduler retryTopicScheduler;
+
+	private volatile PartitionCountWatcher partitionCountWatcher;
+
+	private KafkaClientMetricsBridge clientMetricsBridge;
+
 	private KafkaExtendedBindingProperties extendedBindingProperties = new KafkaExtendedBindingProperties();
 
 	public KafkaMessageChannelBinder(
@@ -239,14 +297,25 @@ public class KafkaMessageChannelBinder extends
 					configurationProperties.getTransaction().getTransactionIdPrefix(),
 					new ExtendedProducerProperties<>(configurationProperties
 							.getTransaction().getProducer().getExtension())));
+			setClientMetricsTags(this.transactionManager.getProducerFactory(), "transactional");
+			KafkaBinderConfigurationProperties.Transaction transaction = configurationProperties.getTransaction();
+			Assert.isTrue(transaction.getCommitBatchSize() > 0, "'commitBatchSize' must be greater than 0");
+			this.coalescingTransactionManager = transaction.getCommitBatchSize() > 1
+					? new CoalescingKafkaTransactionManager(this.transactionManager.getProducerFactory(),
+							transaction.getCommitBatchSize(), transaction.getCommitBatchTimeout())
+					: null;
 		}
 		else {
 			this.transactionManager = null;
+			this.coalescingTransactionManager = null;
 		}
 		this.rebalanceListener = rebalanceListener;
 		this.dlqPartitionFunction = dlqPartitionFunction != null
 				? dlqPartitionFunction
 				: null;
+		this.producerFactoryPool = configurationProperties.isProducerPoolEnabled()
+				? new ProducerFactoryPool()
+				: null;
 	}
 
 	private static String[] headersToMap(
@@ -277,10 +346,51 @@ public class KafkaMessageChannelBinder extends
 		this.producerListener = producerListener;
 	}
 
+	/**
+	 * Set a bridge with which the native metrics of the consumers and producers created
+	 * by this binder are registered.
+	 * @param clientMetricsBridge the bridge.
+	 * @since 3.0
+	 */
+	public void setClientMetricsBridge(KafkaClientMetricsBridge clientMetricsBridge) {
+		this.clientMetricsBridge = clientMetricsBridge;
+	}
+
 	Map<String, TopicInformation> getTopicsInUse() {
 		return this.topicsInUse;
 	}
 
+	Set<SendWindow> getSendWindows() {
+		return this.sendWindows;
+	}
+
+	/*
+	 * Register the in-flight gauges of the running producer bindings, and of those
+	 * started later; a binding's gauge is removed when it stops.
+	 */
+	void bindSendWindowMeters(MeterRegistry registry) {
+		this.sendWindowMeterRegistry = registry;
+		this.sendWindows.forEach((sendWindow) -> sendWindow.bindMeter(registry));
+	}
+
+	private void addSendWindow(SendWindow sendWindow) {
+		this.sendWindows.add(sendWindow);
+		MeterRegistry registry = this.sendWindowMeterRegistry;
+		if (registry != null) {
+			sendWindow.bindMeter(registry);
+		}
+	}
+
+	private void removeSendWindow(SendWindow sendWindow) {
+		this.sendWindows.remove(sendWindow);
+		sendWindow.removeMeter();
+	}
+
+	@Nullable
+	ProducerFactoryPool getProducerFactoryPool() {
+		return this.producerFactoryPool;
+	}
+
 	@Override
 	public KafkaConsumerProperties getExtendedConsumerProperties(String channelName) {
 		bindingNameHolder.set(channelName);
@@ -289,6 +399,7 @@ public class KafkaMessageChannelBinder extends
 
 	@Override
 	public KafkaProducerProperties getExtendedProducerProperties(String channelName) {
+		producerBindingNameHolder.set(channelName);
 		return this.extendedBindingProperties.getExtendedProducerProperties(channelName);
 	}
 
@@ -334,16 +445,23 @@ public class KafkaMessageChannelBinder extends
 		 * instead, for all producers. A binder is transactional when
 		 * 'spring.cloud.stream.kafka.binder.transaction.transaction-id-prefix' has text.
 		 */
+		final boolean pooled = this.transactionManager == null && this.producerFactoryPool != null;
 		final ProducerFactory<byte[], byte[]> producerFB = this.transactionManager != null
 				? this.transactionManager.getProducerFactory()
-				: getProducerFactory(null, producerProperties);
+				: obtainProducerFactory(producerProperties);
+		String bindingName = producerBindingNameHolder.get();
+		producerBindingNameHolder.remove();
+		if (bindingName == null) {
+			bindingName = destination.getName();
+		}
+		setClientMetricsTags(producerFB, bindingName);
 		Collection<PartitionInfo> partitions = provisioningProvider.getPartitionsForTopic(
 				producerProperties.getPartitionCount(), false, () -> {
 					Producer<byte[], byte[]> producer = producerFB.createProducer();
 					List<PartitionInfo> partitionsFor = producer
 							.partitionsFor(destination.getName());
 					producer.close();
-					if (this.transactionManager == null) {
+					if (this.transactionManager == null && !pooled) {
 						((DisposableBean) producerFB).destroy();
 					}
 					return partitionsFor;
@@ -370,15 +488,55 @@ public class KafkaMessageChannelBinder extends
 			});
 		}
 
-		KafkaTemplate<byte[], byte[]> kafkaTemplate = new KafkaTemplate<>(producerFB);
+		SendWindow sendWindow = null;
+		KafkaTemplate<byte[], byte[]> kafkaTemplate;
+		if (producerProperties.getExtension().getMaxInFlight() > 0) {
+			sendWindow = new SendWindow(bindingName, destination.getName(), producerProperties.getExtension().getMaxInFlight(),
+					producerProperties.getExtension().getMaxInFlightTimeout());
+			kafkaTemplate = new SendWindow.WindowedKafkaTemplate(producerFB, sendWindow);
+		}
+		else {
+			kafkaTemplate = new KafkaTemplate<>(producerFB);
+		}
 		if (this.producerListener != null) {
 			kafkaTemplate.setProducerListener(this.producerListener);
 		}
 		if (this.transactionManager != null) {
 			kafkaTemplate.setTransactionIdPrefix(configurationProperties.getTransaction().getTransactionIdPrefix());
 		}
+		Assert.state(!producerProperties.getExtension().isBatchMode() || useNativeEncoding(producerProperties),
+				"batchMode requires useNativeEncoding, the payload must reach the producer as a List");
+		Assert.state(!producerProperties.getExtension().isBatchMode()
+				|| !producerProperties.getExtension().isMessageKeyPassthrough(),
+				"batchMode cannot be used with messageKeyPassthrough, the key is evaluated for each element");
+		MessageKeyHolder messageKeyHolder = null;
+		this.messageKeyHolders.remove(channel);
+		if (producerProperties.getExtension().isMessageKeyPassthrough()
+				&& expressionInterceptorNeeded(producerProperties)) {
+			if (channel instanceof DirectChannel) {
+				messageKeyHolder = new MessageKeyHolder();
+			}
+			else {
+				this.logger.warn("messageKeyPassthrough requires a direct output channel; "
+						+ "the message key is added as a header instead: " + destination.getName());
+			}
+		}
 		ProducerConfigurationMessageHandler handler = new ProducerConfigurationMessageHandler(
-				kafkaTemplate, destination.getName(), producerProperties, producerFB);
+				kafkaTemplate, destination.getName(), producerProperties, producerFB, pooled,
+				messageKeyHolder);
+		if (messageKeyHolder != null) {
+			this.messageKeyHolders.put(channel, messageKeyHolder);
+		}
+		handler.bindingName = bindingName;
+		handler.channel = channel;
+		handler.partitionCount.set(partitions.size());
+		if (sendWindow != null) {
+			handler.sendWindow = sendWindow;
+			addSendWindow(sendWindow);
+		}
+		if (this.configurationProperties.getPartitionRefreshInterval() != null) {
+			watchPartitionCount(handler);
+		}
 		if (errorChannel != null) {
 			handler.setSendFailureChannel(errorChannel);
 		}
@@ -438,9 +596,14 @@ public class KafkaMessageChannelBinder extends
 	protected void postProcessOutputChannel(MessageChannel outputChannel,
 			ExtendedProducerProperties<KafkaProducerProperties> producerProperties) {
 
+		MessageKeyHolder messageKeyHolder = this.messageKeyHolders.remove(outputChannel);
 		if (expressionInterceptorNeeded(producerProperties)) {
-			((AbstractMessageChannel) outputChannel).addInterceptor(0, new KafkaExpressionEvaluatingInterceptor(
-					producerProperties.getExtension().getMessageKeyExpression(), getEvaluationContext()));
+			Expression messageKeyExpression = MessageExpressions.compile(
+					producerProperties.getExtension().getMessageKeyExpression(), getEvaluationContext());
+			((AbstractMessageChannel) outputChannel).addInterceptor(0, messageKeyHolder != null
+					? new KafkaExpressionEvaluatingInterceptor(messageKeyExpression, getEvaluationContext(),
+							messageKeyHolder)
+					: new KafkaExpressionEvaluatingInterceptor(messageKeyExpression, getEvaluationContext()));
 		}
 	}
 
@@ -459,6 +622,42 @@ public class KafkaMessageChannelBinder extends
 	protected DefaultKafkaProducerFactory<byte[], byte[]> getProducerFactory(
 			String transactionIdPrefix,
 			ExtendedProducerProperties<KafkaProducerProperties> producerProperties) {
+		DefaultKafkaProducerFactory<byte[], byte[]> producerFactory = new MetricsAwareProducerFactory(
+				getProducerConfiguration(producerProperties));
+		if (transactionIdPrefix != null) {
+			producerFactory.setTransactionIdPrefix(transactionIdPrefix);
+		}
+		return producerFactory;
+	}
+
+	private void setClientMetricsTags(ProducerFactory<?, ?> producerFactory, String bindingName) {
+		if (producerFactory instanceof MetricsAwareProducerFactory) {
+			((MetricsAwareProducerFactory) producerFactory).addMetricsBinding(bindingName);
+		}
+	}
+
+	private void removeClientMetricsTags(ProducerFactory<?, ?> producerFactory, String bindingName) {
+		if (producerFactory instanceof MetricsAwareProducerFactory) {
+			((MetricsAwareProducerFactory) producerFactory).removeMetricsBinding(bindingName);
+		}
+	}
+
+	/*
+	 * Return a shared factory from the pool when pooling is enabled; otherwise a new
+	 * (non-transactional) factory.
+	 */
+	private ProducerFactory<byte[], byte[]> obtainProducerFactory(
+			ExtendedProducerProperties<KafkaProducerProperties> producerProperties) {
+
+		if (this.producerFactoryPool == null) {
+			return getProducerFactory(null, producerProperties);
+		}
+		return this.producerFactoryPool.acquire(getProducerConfiguration(producerProperties),
+				(configs) -> getProducerFactory(null, producerProperties));
+	}
+
+	private Map<String, Object> getProducerConfiguration(
+			ExtendedProducerProperties<KafkaProducerProperties> producerProperties) {
 		Map<String, Object> props = new HashMap<>();
 		props.put(ProducerConfig.RETRIES_CONFIG, 0);
 		props.put(ProducerConfig.BUFFER_MEMORY_CONFIG, 33554432);
@@ -491,12 +690,7 @@ public class KafkaMessageChannelBinder extends
 		if (!ObjectUtils.isEmpty(producerProperties.getExtension().getConfiguration())) {
 			props.putAll(producerProperties.getExtension().getConfiguration());
 		}
-		DefaultKafkaProducerFactory<byte[], byte[]> producerFactory = new DefaultKafkaProducerFactory<>(
-				props);
-		if (transactionIdPrefix != null) {
-			producerFactory.setTransactionIdPrefix(transactionIdPrefix);
-		}
-		return producerFactory;
+		return props;
 	}
 
 	@Override
@@ -518,6 +712,20 @@ public class KafkaMessageChannelBinder extends
 		Assert.isTrue(
 				!anonymous || !extendedConsumerProperties.getExtension().isEnableDlq(),
 				"DLQ support is not available for anonymous subscriptions");
+		boolean retryTopics = isRetryTopicsEnabled(extendedConsumerProperties);
+		Assert.isTrue(!retryTopics || !anonymous,
+				"Retry topics are not available for anonymous subscriptions");
+		Assert.isTrue(!retryTopics || !extendedConsumerProperties.isBatchMode(),
+				"Retry topics are not available in batch mode");
+		boolean keyOrdered = extendedConsumerProperties.getExtension().getKeyOrderedConcurrency() > 0;
+		if (keyOrdered) {
+			Assert.isTrue(!extendedConsumerProperties.isBatchMode(),
+					"Key-ordered processing is not available in batch mode");
+			Assert.isTrue(extendedConsumerProperties.getExtension().isAutoCommitOffset(),
+					"Key-ordered processing requires 'autoCommitOffset'");
+			Assert.isTrue(this.transactionManager == null,
+					"Key-ordered processing is not available with transactions");
+		}
 		String consumerGroup = anonymous ? "anonymous." + UUID.randomUUID().toString()
 				: group;
 		final ConsumerFactory<?, ?> consumerFactory = createKafkaConsumerFactory(
@@ -567,7 +775,13 @@ public class KafkaMessageChannelBinder extends
 								? new ContainerProperties(Pattern.compile(topics[0]))
 								: new ContainerProperties(topics)
 						: new ContainerProperties(topicPartitionOffsets);
-		if (this.transactionManager != null) {
+		// record listeners may commit the transactions of several records together
+		final CoalescingKafkaTransactionManager coalescingTransactionManager = extendedConsumerProperties
+				.isBatchMode() ? null : this.coalescingTransactionManager;
+		if (coalescingTransactionManager != null) {
+			containerProperties.setTransactionManager(coalescingTransactionManager);
+		}
+		else if (this.transactionManager != null) {
 			containerProperties.setTransactionManager(this.transactionManager);
 		}
 		if (this.rebalanceListener != null) {
@@ -584,15 +798,68 @@ public class KafkaMessageChannelBinder extends
 			concurrency = extendedConsumerProperties.getConcurrency();
 		}
 		resetOffsetsForAutoRebalance(extendedConsumerProperties, consumerFactory, containerProperties);
+		final List<ConcurrentMessageListenerContainer<?, ?>> retryContainers = new ArrayList<>();
+		final PartitionPauser partitionPauser = keyOrdered ? new PartitionPauser() : null;
+		final KeyOrderedDispatcher keyOrderedDispatcher = keyOrdered
+				? new KeyOrderedDispatcher(destination.getName(),
+						extendedConsumerProperties.getExtension().getKeyOrderedConcurrency(),
+						extendedConsumerProperties.getExtension().getKeyOrderedQueueCapacity(),
+						partitionPauser)
+				: null;
 		@SuppressWarnings("rawtypes")
 		final ConcurrentMessageListenerContainer<?, ?> messageListenerContainer = new ConcurrentMessageListenerContainer(
-				consumerFactory, containerProperties) {
+				partitionPauser != null ? partitionPauser.decorate(consumerFactory) : consumerFactory,
+				containerProperties) {
+
+			private Object adapterListener;
 
 			@Override
 			public void stop(Runnable callback) {
 				super.stop(callback);
 			}
 
+			@Override
+			protected AfterRollbackProcessor getAfterRollbackProcessor() {
+				AfterRollbackProcessor processor = super.getAfterRollbackProcessor();
+				return coalescingTransactionManager != null
+						? coalescingTransactionManager.afterRollbackProcessor(processor)
+						: processor;
+			}
+
+			@Override
+			protected void doStart() {
+				// the adapter's listener is only available after it has been initialized
+				Object listener = getContainerProperties().getMessageListener();
+				if (keyOrderedDispatcher != null) {
+					if (listener == keyOrderedDispatcher) {
+						listener = this.adapterListener;
+					}
+					this.adapterListener = listener;
+					keyOrderedDispatcher.start(listener);
+					setupMessageListener(keyOrderedDispatcher);
+				}
+				super.doStart();
+				for (ConcurrentMessageListenerContainer<?, ?> retryContainer : retryContainers) {
+					retryContainer.setupMessageListener(
+							new RetryTopicSupport.DueTimeAwareMessageListener(listener));
+					retryContainer.start();
+				}
+			}
+
+			@Override
+			protected void doStop(Runnable callback) {
+				retryContainers.forEach(Lifecycle::stop);
+				if (keyOrderedDispatcher != null) {
+					super.doStop(() -> {
+						keyOrderedDispatcher.stop(getContainerProperties().getShutdownTimeout());
+						callback.run();
+					});
+				}
+				else {
+					super.doStop(callback);
+				}
+			}
+
 		};
 		messageListenerContainer.setConcurrency(concurrency);
 		// these won't be needed if the container is made a bean
@@ -625,6 +892,23 @@ public class KafkaMessageChannelBinder extends
 		}
 		this.getContainerCustomizer().configure(messageListenerContainer,
 				destination.getName(), group);
+		if (retryTopics) {
+			retryContainers.addAll(createRetryContainers(topics, consumerGroup,
+					extendedConsumerProperties, messageListenerContainer));
+		}
+		if (coalescingTransactionManager != null) {
+			ContainerProperties mainProperties = messageListenerContainer.getContainerProperties();
+			mainProperties.setConsumerRebalanceListener(coalescingTransactionManager.rebalanceListener(
+					mainProperties.getConsumerRebalanceListener()));
+		}
+		if (keyOrdered) {
+			// the dispatcher acknowledges each partition's contiguous completed offsets
+			ContainerProperties mainProperties = messageListenerContainer.getContainerProperties();
+			mainProperties.setAckMode(ContainerProperties.AckMode.MANUAL);
+			mainProperties.setConsumerRebalanceListener(keyOrderedDispatcher.rebalanceListener(
+					mainProperties.getConsumerRebalanceListener(),
+					mainProperties.getShutdownTimeout()));
+		}
 		// @checkstyle:off
 		final KafkaMessageDrivenChannelAdapter<?, ?> kafkaMessageDrivenChannelAdapter =
 				new KafkaMessageDrivenChannelAdapter<>(messageListenerContainer,
@@ -635,7 +919,8 @@ public class KafkaMessageChannelBinder extends
 		kafkaMessageDrivenChannelAdapter.setBeanFactory(this.getBeanFactory());
 		ErrorInfrastructure errorInfrastructure = registerErrorInfrastructure(destination,
 				consumerGroup, extendedConsumerProperties);
-		if (!extendedConsumerProperties.isBatchMode() && extendedConsumerProperties.getMaxAttempts() > 1) {
+		if (!extendedConsumerProperties.isBatchMode() && extendedConsumerProperties.getMaxAttempts() > 1
+				&& !retryTopics) {
 			kafkaMessageDrivenChannelAdapter
 					.setRetryTemplate(buildRetryTemplate(extendedConsumerProperties));
 			kafkaMessageDrivenChannelAdapter
@@ -648,6 +933,136 @@ public class KafkaMessageChannelBinder extends
 		return kafkaMessageDrivenChannelAdapter;
 	}
 
+	/*
+	 * One container per retry topic; each partition is paused until the records it holds
+	 * are due, so healthy records on the main topic are never delayed. Each one has its own
+	 * group, named after its topic, so that its members never rebalance the main group.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private List<ConcurrentMessageListenerContainer<?, ?>> createRetryContainers(String[] topics,
+			String consumerGroup,
+			ExtendedConsumerProperties<KafkaConsumerProperties> extendedConsumerProperties,
+			ConcurrentMessageListenerContainer<?, ?> messageListenerContainer) {
+
+		ContainerProperties mainProperties = messageListenerContainer.getContainerProperties();
+		List<ConcurrentMessageListenerContainer<?, ?>> retryContainers = new ArrayList<>();
+		for (String topic : topics) {
+			for (Duration delay : extendedConsumerProperties.getExtension().getRetryTopicDelays()) {
+				String retryTopic = KafkaTopicUtils.retryTopicName(topic, consumerGroup, delay);
+				ContainerProperties retryProperties = new ContainerProperties(retryTopic);
+				// wins over a group.id set in the binding's configuration
+				retryProperties.setGroupId(retryTopic);
+				retryProperties.setAckMode(mainProperties.getAckMode());
+				retryProperties.setAckOnError(false);
+				retryProperties.setIdleEventInterval(mainProperties.getIdleEventInterval());
+				if (this.transactionManager != null) {
+					retryProperties.setTransactionManager(this.transactionManager);
+				}
+				PartitionPauser partitionPauser = new PartitionPauser();
+				ConsumerFactory<?, ?> consumerFactory = partitionPauser.decorate(
+						createKafkaConsumerFactory(false, retryTopic, extendedConsumerProperties));
+				ConcurrentMessageListenerContainer<?, ?> retryContainer = new ConcurrentMessageListenerContainer(
+						consumerFactory, retryProperties);
+				retryContainer.setConcurrency(extendedConsumerProperties.getConcurrency());
+				retryContainer.setErrorHandler(
+						new RetryTopicSupport.DueTimeErrorHandler(getRetryTopicScheduler(), partitionPauser));
+				if (getApplicationEventPublisher() != null) {
+					retryContainer.setApplicationEventPublisher(getApplicationEventPublisher());
+				}
+				else if (getApplicationContext() != null) {
+					retryContainer.setApplicationEventPublisher(getApplicationContext());
+				}
+				retryContainer.setBeanName(retryTopic + ".container");
+				retryContainers.add(retryContainer);
+			}
+		}
+		return retryContainers;
+	}
+
+	/*
+	 * When partitions are added to the topic, update the topic information used by the
+	 * health indicator and, for a partitioned producer, the partition count used by the
+	 * partitioning interceptor; then publish an event. The interceptor belongs to the
+	 * core, so the count is tracked by the handler; updates are serialized on it so that
+	 * a late notification never lowers the count.
+	 */
+	private void watchPartitionCount(ProducerConfigurationMessageHandler handler) {
+		String topic = handler.topic;
+		ExtendedProducerProperties<KafkaProducerProperties> producerProperties = handler.producerProperties;
+		AtomicInteger partitionCount = handler.partitionCount;
+		getPartitionCountWatcher().watch(handler, topic, partitionCount.get(), (previousCount, partitionInfos) -> {
+			int newCount = partitionInfos.size();
+			synchronized (partitionCount) {
+				if (newCount <= partitionCount.get()) {
+					return;
+				}
+				partitionCount.set(newCount);
+				this.provisioningProvider.evictMetadata(topic);
+				if (this.logger.isInfoEnabled()) {
+					this.logger.info("The partition count of topic " + topic + " has grown from "
+							+ previousCount + " to " + newCount);
+				}
+				this.topicsInUse.computeIfPresent(topic, (key, information) -> information.isConsumerTopic()
+						? information
+						: new TopicInformation(null, partitionInfos, false));
+				if (producerProperties.isPartitioned()
+						&& producerProperties.getPartitionCount() < newCount) {
+					((InterceptableChannel) handler.channel).getInterceptors().forEach((interceptor) -> {
+						if (interceptor instanceof PartitioningInterceptor) {
+							((PartitioningInterceptor) interceptor).setPartitionCount(newCount);
+						}
+					});
+				}
+			}
+			ApplicationEventPublisher publisher = getApplicationEventPublisher() != null
+					? getApplicationEventPublisher()
+					: getApplicationContext();
+			if (publisher != null) {
+				publisher.publishEvent(new PartitionCountChangedEvent(this, topic, previousCount,
+						newCount));
+			}
+		});
+	}
+
+	private PartitionCountWatcher getPartitionCountWatcher() {
+		if (this.partitionCountWatcher == null) {
+			synchronized (this) {
+				if (this.partitionCountWatcher == null) {
+					Map<String, Object> adminConfig = this.configurationProperties
+							.getKafkaProperties().buildAdminProperties();
+					KafkaTopicProvisioner.normalalizeBootPropsWithBinder(adminConfig,
+							this.configurationProperties.getKafkaProperties(),
+							this.configurationProperties);
+					this.partitionCountWatcher = new PartitionCountWatcher(
+							() -> AdminClient.create(adminConfig),
+							this.configurationProperties.getPartitionRefreshInterval(),
+							Duration.ofSeconds(this.configurationProperties.getHealthTimeout()));
+				}
+			}
+		}
+		return this.partitionCountWatcher;
+	}
+
+	private TaskScheduler getRetryTopicScheduler() {
+		if (this.retryTopicScheduler == null) {
+			synchronized (this) {
+				if (this.retryTopicScheduler == null) {
+					ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+					scheduler.setThreadNamePrefix("kafka-binder-retry-");
+					scheduler.setDaemon(true);
+					scheduler.initialize();
+					this.retryTopicScheduler = scheduler;
+				}
+			}
+		}
+		return this.retryTopicScheduler;
+	}
+
+	private static boolean isRetryTopicsEnabled(
+			ExtendedConsumerProperties<KafkaConsumerProperties> properties) {
+		return !ObjectUtils.isEmpty(properties.getExtension().getRetryTopicDelays());
+	}
+
 	public void setupRebalanceListener(
 			final ExtendedConsumerProperties<KafkaConsumerProperties> extendedConsumerProperties,
 			final ContainerProperties containerProperties) {
@@ -804,6 +1219,8 @@ public class KafkaMessageChannelBinder extends
 		final KafkaConsumerProperties extension = extendedConsumerProperties.getExtension();
 		Assert.isTrue(!anonymous || !extension.isEnableDlq(),
 				"DLQ support is not available for anonymous subscriptions");
+		Assert.isTrue(!isRetryTopicsEnabled(extendedConsumerProperties),
+				"Retry topics are not available for pollable consumers");
 		String consumerGroup = anonymous ? "anonymous." + UUID.randomUUID().toString()
 				: group;
 		final ConsumerFactory<?, ?> consumerFactory = createKafkaConsumerFactory(
@@ -969,13 +1386,23 @@ public class KafkaMessageChannelBinder extends
 			final ExtendedConsumerProperties<KafkaConsumerProperties> properties) {
 
 		KafkaConsumerProperties kafkaConsumerProperties = properties.getExtension();
-		if (kafkaConsumerProperties.isEnableDlq()) {
+		boolean retryTopics = isRetryTopicsEnabled(properties);
+		if (kafkaConsumerProperties.isEnableDlq() || retryTopics) {
 			KafkaProducerProperties dlqProducerProperties = kafkaConsumerProperties
 					.getDlqProducerProperties();
 			ProducerFactory<?, ?> producerFactory = this.transactionManager != null
 					? this.transactionManager.getProducerFactory()
-					: getProducerFactory(null,
+					: obtainProducerFactory(
 							new ExtendedProducerProperties<>(dlqProducerProperties));
+			setClientMetricsTags(producerFactory, destination.getName() + ".dlq");
+			if (this.transactionManager == null && this.producerFactoryPool != null) {
+				ProducerFactory<?, ?> previous = this.dlqProducerFactories
+						.put(dlqProducerFactoryKey(destination, group), producerFactory);
+				if (previous != null) {
+					removeClientMetricsTags(previous, destination.getName() + ".dlq");
+					this.producerFactoryPool.release(previous);
+				}
+			}
 			final KafkaTemplate<?, ?> kafkaTemplate = new KafkaTemplate<>(
 					producerFactory);
 
@@ -1013,7 +1440,38 @@ public class KafkaMessageChannelBinder extends
 					this.logger.error("No raw record; cannot send to DLQ: " + message);
 					return;
 				}
+				int retryAttempt = RetryTopicSupport.retryAttempt(record.headers());
+				Header originalTopicHeader = retryAttempt > 0
+						? record.headers().lastHeader(X_ORIGINAL_TOPIC)
+						: null;
+				String originalTopic = originalTopicHeader != null
+						? new String(originalTopicHeader.value(), StandardCharsets.UTF_8)
+						: record.topic();
+				if (retryTopics) {
+					Duration[] delays = kafkaConsumerProperties.getRetryTopicDelays();
+					if (retryAttempt < delays.length) {
+						dlqSender.sendToRetryTopic(record,
+								retryHeaders(record, retryAttempt, delays[retryAttempt],
+										message.getPayload()),
+								KafkaTopicUtils.retryTopicName(originalTopic, group,
+										delays[retryAttempt]));
+						return;
+					}
+					if (!kafkaConsumerProperties.isEnableDlq()) {
+						this.logger.error("Retries exhausted; discarding record from "
+								+ originalTopic + ": " + record);
+						return;
+					}
+				}
 				Headers kafkaHeaders = new RecordHeaders(record.headers().toArray());
+				if (retryAttempt > 0) {
+					// keep the original-* headers added when the record was first retried
+					kafkaHeaders.remove(X_RETRY_ATTEMPT);
+					kafkaHeaders.remove(X_RETRY_DUE_TIMESTAMP);
+					kafkaHeaders.remove(X_EXCEPTION_FQCN);
+					kafkaHeaders.remove(X_EXCEPTION_MESSAGE);
+					kafkaHeaders.remove(X_EXCEPTION_STACKTRACE);
+				}
 				AtomicReference<ConsumerRecord<?, ?>> recordToSend = new AtomicReference<>(
 						record);
 				Throwable throwable = null;
@@ -1025,19 +1483,9 @@ public class KafkaMessageChannelBinder extends
 
 					if (headerMode == null || HeaderMode.headers.equals(headerMode)) {
 
-						kafkaHeaders.add(new RecordHeader(X_ORIGINAL_TOPIC,
-								record.topic().getBytes(StandardCharsets.UTF_8)));
-						kafkaHeaders.add(new RecordHeader(X_ORIGINAL_PARTITION,
-								ByteBuffer.allocate(Integer.BYTES)
-										.putInt(record.partition()).array()));
-						kafkaHeaders.add(new RecordHeader(X_ORIGINAL_OFFSET, ByteBuffer
-								.allocate(Long.BYTES).putLong(record.offset()).array()));
-						kafkaHeaders.add(new RecordHeader(X_ORIGINAL_TIMESTAMP,
-								ByteBuffer.allocate(Long.BYTES)
-										.putLong(record.timestamp()).array()));
-						kafkaHeaders.add(new RecordHeader(X_ORIGINAL_TIMESTAMP_TYPE,
-								record.timestampType().toString()
-										.getBytes(StandardCharsets.UTF_8)));
+						if (originalTopicHeader == null) {
+							addOriginalRecordHeaders(kafkaHeaders, record);
+						}
 						kafkaHeaders.add(new RecordHeader(X_EXCEPTION_FQCN, throwable
 								.getClass().getName().getBytes(StandardCharsets.UTF_8)));
 						kafkaHeaders.add(new RecordHeader(X_EXCEPTION_MESSAGE,
@@ -1082,7 +1530,7 @@ public class KafkaMessageChannelBinder extends
 				}
 				String dlqName = StringUtils.hasText(kafkaConsumerProperties.getDlqName())
 						? kafkaConsumerProperties.getDlqName()
-						: "error." + record.topic() + "." + group;
+						: "error." + originalTopic + "." + group;
 				dlqSender.sendToDlq(recordToSend.get(), kafkaHeaders, dlqName, group, throwable,
 						determinDlqPartitionFunction(properties.getExtension().getDlqPartitions()));
 			};
@@ -1090,6 +1538,66 @@ public class KafkaMessageChannelBinder extends
 		return null;
 	}
 
+	private void addOriginalRecordHeaders(Headers kafkaHeaders, ConsumerRecord<?, ?> record) {
+		kafkaHeaders.add(new RecordHeader(X_ORIGINAL_TOPIC,
+				record.topic().getBytes(StandardCharsets.UTF_8)));
+		kafkaHeaders.add(new RecordHeader(X_ORIGINAL_PARTITION,
+				ByteBuffer.allocate(Integer.BYTES)
+						.putInt(record.partition()).array()));
+		kafkaHeaders.add(new RecordHeader(X_ORIGINAL_OFFSET, ByteBuffer
+				.allocate(Long.BYTES).putLong(record.offset()).array()));
+		kafkaHeaders.add(new RecordHeader(X_ORIGINAL_TIMESTAMP,
+				ByteBuffer.allocate(Long.BYTES)
+						.putLong(record.timestamp()).array()));
+		kafkaHeaders.add(new RecordHeader(X_ORIGINAL_TIMESTAMP_TYPE,
+				record.timestampType().toString()
+						.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private Headers retryHeaders(ConsumerRecord<?, ?> record, int retryAttempt,
+			Duration delay, Object failure) {
+
+		Headers kafkaHeaders = new RecordHeaders(record.headers().toArray());
+		kafkaHeaders.remove(X_RETRY_ATTEMPT);
+		kafkaHeaders.remove(X_RETRY_DUE_TIMESTAMP);
+		if (retryAttempt == 0) {
+			addOriginalRecordHeaders(kafkaHeaders, record);
+		}
+		kafkaHeaders.add(new RecordHeader(X_RETRY_ATTEMPT,
+				ByteBuffer.allocate(Integer.BYTES).putInt(retryAttempt + 1).array()));
+		kafkaHeaders.add(new RecordHeader(X_RETRY_DUE_TIMESTAMP,
+				ByteBuffer.allocate(Long.BYTES)
+						.putLong(System.currentTimeMillis() + delay.toMillis()).array()));
+		if (failure instanceof Throwable) {
+			Throwable throwable = (Throwable) failure;
+			kafkaHeaders.remove(X_EXCEPTION_FQCN);
+			kafkaHeaders.remove(X_EXCEPTION_MESSAGE);
+			kafkaHeaders.add(new RecordHeader(X_EXCEPTION_FQCN, throwable
+					.getClass().getName().getBytes(StandardCharsets.UTF_8)));
+			kafkaHeaders.add(new RecordHeader(X_EXCEPTION_MESSAGE,
+					String.valueOf(throwable.getMessage()).getBytes(StandardCharsets.UTF_8)));
+		}
+		return kafkaHeaders;
+	}
+
+	@Override
+	protected void afterUnbindConsumer(ConsumerDestination destination, String group,
+			ExtendedConsumerProperties<KafkaConsumerProperties> consumerProperties) {
+
+		if (this.producerFactoryPool != null) {
+			ProducerFactory<?, ?> dlqProducerFactory = this.dlqProducerFactories
+					.remove(dlqProducerFactoryKey(destination, group));
+			if (dlqProducerFactory != null) {
+				removeClientMetricsTags(dlqProducerFactory, destination.getName() + ".dlq");
+				this.producerFactoryPool.release(dlqProducerFactory);
+			}
+		}
+	}
+
+	private static String dlqProducerFactoryKey(ConsumerDestination destination, String group) {
+		return destination.getName() + ":" + group;
+	}
+
 	private DlqPartitionFunction determinDlqPartitionFunction(Integer dlqPartitions) {
 		if (this.dlqPartitionFunction != null) {
 			return this.dlqPartitionFunction;
@@ -1181,6 +1689,13 @@ public class KafkaMessageChannelBinder extends
 					consumerProperties.getExtension().getStartOffset().name());
 		}
 
+		if (this.clientMetricsBridge != null) {
+			String bindingName = bindingNameHolder.get();
+			Map<String, String> tags = new HashMap<>();
+			tags.put("binding", bindingName != null ? bindingName : consumerGroup);
+			tags.put("group", consumerGroup);
+			return new MetricsAwareConsumerFactory(props, this.clientMetricsBridge, tags);
+		}
 		return new DefaultKafkaConsumerFactory<>(props);
 	}
 
@@ -1189,7 +1704,8 @@ public class KafkaMessageChannelBinder extends
 		return properties.getExtension().getAutoCommitOnError() != null
 				? properties.getExtension().getAutoCommitOnError()
 				: properties.getExtension().isAutoCommitOffset()
-						&& properties.getExtension().isEnableDlq();
+						&& (properties.getExtension().isEnableDlq()
+								|| isRetryTopicsEnabled(properties));
 	}
 
 	private TopicPartitionOffset[] getTopicPartitionOffsets(
@@ -1233,43 +1749,236 @@ public class KafkaMessageChannelBinder extends
 
 		private boolean running = true;
 
+		private boolean stopped;
+
 		private final ProducerFactory<byte[], byte[]> producerFactory;
 
+		private final boolean pooled;
+
+		private boolean released;
+
+		private final String topic;
+
+		private final ExtendedProducerProperties<KafkaProducerProperties> producerProperties;
+
+		private String bindingName;
+
+		private MessageChannel channel;
+
+		private final AtomicInteger partitionCount = new AtomicInteger();
+
+		private SendWindow sendWindow;
+
+		private final boolean batchMode;
+
+		private final boolean sync;
+
+		private final Expression sendTimeoutExpression;
+
+		private final ThreadLocal<List<PendingSend>> pendingSends = new ThreadLocal<>();
+
 		ProducerConfigurationMessageHandler(KafkaTemplate<byte[], byte[]> kafkaTemplate,
 				String topic,
 				ExtendedProducerProperties<KafkaProducerProperties> producerProperties,
-				ProducerFactory<byte[], byte[]> producerFactory) {
+				ProducerFactory<byte[], byte[]> producerFactory, boolean pooled,
+				@Nullable MessageKeyHolder messageKeyHolder) {
 
 			super(kafkaTemplate);
+			// the binder generated expressions are header lookups; avoid SpEL for them
 			if (producerProperties.getExtension().isUseTopicHeader()) {
-				setTopicExpression(PARSER.parseExpression("headers['" + KafkaHeaders.TOPIC + "'] ?: '" + topic + "'"));
+				setTopicExpression(MessageExpressions.headerOrDefault(KafkaHeaders.TOPIC, topic));
 			}
 			else {
 				setTopicExpression(new LiteralExpression(topic));
 			}
 			Expression messageKeyExpression = producerProperties.getExtension().getMessageKeyExpression();
-			if (expressionInterceptorNeeded(producerProperties)) {
-				messageKeyExpression = PARSER.parseExpression("headers['"
-						+ KafkaExpressionEvaluatingInterceptor.MESSAGE_KEY_HEADER
-						+ "']");
+			if (messageKeyHolder != null) {
+				messageKeyExpression = new FunctionExpression<Message<?>>(messageKeyHolder::take);
+			}
+			else if (expressionInterceptorNeeded(producerProperties)) {
+				messageKeyExpression = MessageExpressions
+						.header(KafkaExpressionEvaluatingInterceptor.MESSAGE_KEY_HEADER);
+			}
+			else if (messageKeyExpression != null) {
+				messageKeyExpression = MessageExpressions.compile(messageKeyExpression, getEvaluationContext());
 			}
 			setMessageKeyExpression(messageKeyExpression);
 			setBeanFactory(KafkaMessageChannelBinder.this.getBeanFactory());
 			if (producerProperties.isPartitioned()) {
-				setPartitionIdExpression(PARSER.parseExpression(
-						"headers['" + BinderHeaders.PARTITION_HEADER + "']"));
+				setPartitionIdExpression(MessageExpressions.header(BinderHeaders.PARTITION_HEADER));
 			}
-			if (producerProperties.getExtension().isSync()) {
+			this.sync = producerProperties.getExtension().isSync();
+			if (this.sync) {
 				setSync(true);
 			}
 			if (producerProperties.getExtension().getSendTimeoutExpression() != null) {
-				setSendTimeoutExpression(producerProperties.getExtension().getSendTimeoutExpression());
+				this.sendTimeoutExpression = MessageExpressions.compile(
+						producerProperties.getExtension().getSendTimeoutExpression(), getEvaluationContext());
+				setSendTimeoutExpression(this.sendTimeoutExpression);
 			}
+			else {
+				this.sendTimeoutExpression = null;
+			}
+			this.batchMode = producerProperties.getExtension().isBatchMode();
+			this.topic = topic;
+			this.producerProperties = producerProperties;
 			this.producerFactory = producerFactory;
+			this.pooled = pooled;
+		}
+
+		@Override
+		protected Object handleRequestMessage(Message<?> message) {
+			if (!this.batchMode || !(message.getPayload() instanceof List)) {
+				return super.handleRequestMessage(message);
+			}
+			List<?> elements = (List<?>) message.getPayload();
+			List<PendingSend> sends = new ArrayList<>(elements.size());
+			KafkaTemplate<?, ?> template = getKafkaTemplate();
+			this.pendingSends.set(sends);
+			try {
+				if (template.isTransactional() && !template.inTransaction()) {
+					template.executeInTransaction((t) -> {
+						sendElements(message, elements);
+						return null;
+					});
+				}
+				else {
+					try {
+						sendElements(message, elements);
+					}
+					catch (RuntimeException ex) {
+						if (!template.isTransactional()) {
+							// the records already sent are not rolled back; report them
+							template.flush();
+							completeBatch(message, sends, elements.size(), ex);
+						}
+						throw ex;
+					}
+					template.flush();
+				}
+			}
+			finally {
+				this.pendingSends.remove();
+			}
+			completeBatch(message, sends, elements.size(), null);
+			return null;
+		}
+
+		private void sendElements(Message<?> message, List<?> elements) {
+			for (Object element : elements) {
+				// elements share the (immutable) headers of the batch; no copy; the key
+				// expression is evaluated against each element message
+				super.handleRequestMessage(element instanceof Message
+						? (Message<?>) element
+						: new GenericMessage<>(element != null ? element : KafkaNull.INSTANCE,
+								message.getHeaders()));
+			}
+		}
+
+		@Override
+		public void processSendResult(Message<?> message, ProducerRecord<byte[], byte[]> producerRecord,
+				ListenableFuture<SendResult<byte[], byte[]>> future, MessageChannel metadataChannel)
+				throws InterruptedException, ExecutionException {
+
+			List<PendingSend> sends = this.pendingSends.get();
+			if (sends != null) {
+				sends.add(new PendingSend(producerRecord, future, metadataChannel));
+			}
+			else {
+				super.processSendResult(message, producerRecord, future, metadataChannel);
+			}
+		}
+
+		/**
+		 * Send one message to the success (record metadata) channel, with the metadata
+		 * of all records, or one error message to the failure channel, with the metadata
+		 * of the records that were sent, when all the sends of the batch have completed;
+		 * wait for them if the producer is sync.
+		 */
+		private void completeBatch(Message<?> message, List<PendingSend> sends, int batchSize,
+				@Nullable RuntimeException sendFailure) {
+
+			if (sends.isEmpty()) {
+				return;
+			}
+			MessageChannel metadataChannel = sends.get(0).metadataChannel;
+			MessageChannel failureChannel = getSendFailureChannel();
+			if (metadataChannel != null || failureChannel != null) {
+				AtomicInteger remaining = new AtomicInteger(sends.size());
+				RecordMetadata[] metadata = new RecordMetadata[batchSize];
+				AtomicReference<KafkaSendFailureException> failure = new AtomicReference<>(sendFailure != null
+						? new KafkaSendFailureException(message, null, sendFailure)
+						: null);
+				for (int i = 0; i < sends.size(); i++) {
+					int index = i;
+					PendingSend send = sends.get(i);
+					send.future.addCallback((result) -> {
+						metadata[index] = result.getRecordMetadata();
+						batchSendCompleted(message, remaining, metadata, failure, metadataChannel,
+								failureChannel);
+					}, (ex) -> {
+						failure.compareAndSet(null, new KafkaSendFailureException(message, send.record, ex));
+						batchSendCompleted(message, remaining, metadata, failure, metadataChannel,
+								failureChannel);
+					});
+				}
+			}
+			if (this.sync && sendFailure == null) {
+				Long sendTimeout = this.sendTimeoutExpression != null
+						? this.sendTimeoutExpression.getValue(getEvaluationContext(), message, Long.class)
+						: DEFAULT_BATCH_SEND_TIMEOUT;
+				// one timeout for the whole batch
+				boolean waitForever = sendTimeout == null || sendTimeout < 0;
+				long deadline = waitForever ? 0 : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sendTimeout);
+				try {
+					for (PendingSend send : sends) {
+						if (waitForever) {
+							send.future.get();
+						}
+						else {
+							send.future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+						}
+					}
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new MessageHandlingException(message, "Interrupted waiting for the batch to be sent", ex);
+				}
+				catch (ExecutionException ex) {
+					throw new MessageHandlingException(message, "Failed to send the batch", ex.getCause());
+				}
+				catch (TimeoutException ex) {
+					throw new MessageTimeoutException(message, "Timeout waiting for response from KafkaProducer", ex);
+				}
+			}
+		}
+
+		private void batchSendCompleted(Message<?> message, AtomicInteger remaining, RecordMetadata[] metadata,
+				AtomicReference<KafkaSendFailureException> failure, @Nullable MessageChannel metadataChannel,
+				@Nullable MessageChannel failureChannel) {
+
+			if (remaining.decrementAndGet() > 0) {
+				return;
+			}
+			if (failure.get() != null) {
+				if (failureChannel != null) {
+					this.messagingTemplate.send(failureChannel, new ErrorMessage(failure.get(),
+							Collections.singletonMap(KafkaHeaders.RECORD_METADATA, Arrays.asList(metadata))));
+				}
+			}
+			else if (metadataChannel != null) {
+				this.messagingTemplate.send(metadataChannel, getMessageBuilderFactory().fromMessage(message)
+						.setHeader(KafkaHeaders.RECORD_METADATA, Arrays.asList(metadata))
+						.build());
+			}
 		}
 
 		@Override
 		public void start() {
+			if (this.stopped) {
+				restart();
+				this.stopped = false;
+			}
 			try {
 				super.onInit();
 			}
@@ -1277,14 +1986,59 @@ public class KafkaMessageChannelBinder extends
 				this.logger.error("Initialization errors: ", ex);
 				throw new RuntimeException(ex);
 			}
+			this.running = true;
+		}
+
+		/*
+		 * Acquire again what stop() released; the template keeps using the same factory.
+		 * Only called after stop(); the first start() must not register the watch, the send
+		 * window or the metrics tags a second time.
+		 */
+		private void restart() {
+			KafkaMessageChannelBinder binder = KafkaMessageChannelBinder.this;
+			if (this.pooled && this.released) {
+				DefaultKafkaProducerFactory<byte[], byte[]> producerFactory =
+						(DefaultKafkaProducerFactory<byte[], byte[]>) this.producerFactory;
+				ProducerFactory<byte[], byte[]> shared = binder.producerFactoryPool.acquire(
+						getProducerConfiguration(this.producerProperties), (configs) -> producerFactory);
+				if (shared != producerFactory) {
+					// an equivalent factory was pooled while stopped; keep ours (see stop())
+					binder.producerFactoryPool.release(shared);
+				}
+				this.released = false;
+			}
+			setClientMetricsTags(this.producerFactory, this.bindingName);
+			if (this.sendWindow != null) {
+				binder.addSendWindow(this.sendWindow);
+			}
+			if (binder.configurationProperties.getPartitionRefreshInterval() != null) {
+				watchPartitionCount(this);
+			}
 		}
 
 		@Override
 		public void stop() {
-			if (this.producerFactory instanceof Lifecycle) {
+			removeClientMetricsTags(this.producerFactory, this.bindingName);
+			if (this.pooled) {
+				// the shared producer is closed when the last binding releases it
+				if (!this.released) {
+					if (!KafkaMessageChannelBinder.this.producerFactoryPool.release(this.producerFactory)) {
+						((DefaultKafkaProducerFactory<?, ?>) this.producerFactory).destroy();
+					}
+					this.released = true;
+				}
+			}
+			else if (this.producerFactory instanceof Lifecycle) {
 				((Lifecycle) producerFactory).stop();
 			}
+			if (KafkaMessageChannelBinder.this.partitionCountWatcher != null) {
+				KafkaMessageChannelBinder.this.partitionCountWatcher.unwatch(this);
+			}
+			if (this.sendWindow != null) {
+				removeSendWindow(this.sendWindow);
+			}
 			this.running = false;
+			this.stopped = true;
 		}
 
 		@Override
@@ -1294,6 +2048,27 @@ public class KafkaMessageChannelBinder extends
 
 	}
 
+	/**
+	 * A send of a batch element, completed when the whole batch has been sent.
+	 */
+	private static final class PendingSend {
+
+		private final ProducerRecord<byte[], byte[]> record;
+
+		private final ListenableFuture<SendResult<byte[], byte[]>> future;
+
+		private final MessageChannel metadataChannel;
+
+		PendingSend(ProducerRecord<byte[], byte[]> record, ListenableFuture<SendResult<byte[], byte[]>> future,
+				@Nullable MessageChannel metadataChannel) {
+
+			this.record = record;
+			this.future = future;
+			this.metadataChannel = metadataChannel;
+		}
+
+	}
+
 	/**
 	 * Inner class to capture topic details.
 	 */
@@ -1330,6 +2105,145 @@ public class KafkaMessageChannelBinder extends
 
 	}
 
+	/**
+	 * A producer factory that registers the metrics of the producers it creates with the
+	 * binder's {@link KafkaClientMetricsBridge}, if one has been set, tagged with the
+	 * names of the bindings currently using the factory (a pooled factory is shared); the
+	 * meters are re-registered when those change, and removed when no binding uses the
+	 * factory or when it is destroyed.
+	 */
+	private final class MetricsAwareProducerFactory extends DefaultKafkaProducerFactory<byte[], byte[]> {
+
+		private final Set<Producer<byte[], byte[]>> producers = new HashSet<>();
+
+		private final Set<String> bindingNames = new TreeSet<>();
+
+		MetricsAwareProducerFactory(Map<String, Object> configs) {
+			super(configs);
+		}
+
+		void addMetricsBinding(String bindingName) {
+			synchronized (this.producers) {
+				if (this.bindingNames.add(bindingName)) {
+					rebindMetrics();
+				}
+			}
+		}
+
+		void removeMetricsBinding(String bindingName) {
+			synchronized (this.producers) {
+				if (this.bindingNames.remove(bindingName)) {
+					rebindMetrics();
+				}
+			}
+		}
+
+		@Override
+		protected Producer<byte[], byte[]> createKafkaProducer() {
+			return bindMetrics(super.createKafkaProducer());
+		}
+
+		@Override
+		protected Producer<byte[], byte[]> createTransactionalProducer() {
+			return bindMetrics(super.createTransactionalProducer());
+		}
+
+		@Override
+		protected Producer<byte[], byte[]> createTransactionalProducer(String txIdPrefix) {
+			return bindMetrics(super.createTransactionalProducer(txIdPrefix));
+		}
+
+		@Override
+		protected Producer<byte[], byte[]> createTransactionalProducerForPartition() {
+			return bindMetrics(super.createTransactionalProducerForPartition());
+		}
+
+		@Override
+		protected Producer<byte[], byte[]> createTransactionalProducerForPartition(String txIdPrefix) {
+			return bindMetrics(super.createTransactionalProducerForPartition(txIdPrefix));
+		}
+
+		@Override
+		public void destroy() {
+			synchronized (this.producers) {
+				KafkaClientMetricsBridge bridge = KafkaMessageChannelBinder.this.clientMetricsBridge;
+				if (bridge != null) {
+					bridge.unbind(this);
+				}
+				this.producers.clear();
+			}
+			super.destroy();
+		}
+
+		private Producer<byte[], byte[]> bindMetrics(Producer<byte[], byte[]> producer) {
+			synchronized (this.producers) {
+				KafkaClientMetricsBridge bridge = KafkaMessageChannelBinder.this.clientMetricsBridge;
+				if (this.producers.add(producer) && bridge != null && !this.bindingNames.isEmpty()) {
+					bridge.bind(this, producer::metrics, metricsTags());
+				}
+			}
+			return producer;
+		}
+
+		private void rebindMetrics() {
+			KafkaClientMetricsBridge bridge = KafkaMessageChannelBinder.this.clientMetricsBridge;
+			if (bridge == null) {
+				return;
+			}
+			bridge.unbind(this);
+			if (!this.bindingNames.isEmpty()) {
+				Map<String, String> tags = metricsTags();
+				this.producers.forEach((producer) -> bridge.bind(this, producer::metrics, tags));
+			}
+		}
+
+		private Map<String, String> metricsTags() {
+			return Collections.singletonMap("binding", String.join(",", this.bindingNames));
+		}
+
+	}
+
+	/**
+	 * A consumer factory that registers the metrics of the consumers it creates with the
+	 * {@link KafkaClientMetricsBridge}; the meters are removed when the consumer is closed.
+	 */
+	private static final class MetricsAwareConsumerFactory
+			extends DefaultKafkaConsumerFactory<byte[], byte[]> {
+
+		private final KafkaClientMetricsBridge clientMetricsBridge;
+
+		private final Map<String, String> tags;
+
+		MetricsAwareConsumerFactory(Map<String, Object> configs,
+				KafkaClientMetricsBridge clientMetricsBridge, Map<String, String> tags) {
+
+			super(configs);
+			this.clientMetricsBridge = clientMetricsBridge;
+			this.tags = tags;
+		}
+
+		@Override
+		protected KafkaConsumer<byte[], byte[]> createKafkaConsumer(Map<String, Object> configs) {
+			KafkaClientMetricsBridge bridge = this.clientMetricsBridge;
+			KafkaConsumer<byte[], byte[]> consumer = new KafkaConsumer<byte[], byte[]>(configs) {
+
+				@Override
+				public void close(Duration timeout) {
+					try {
+						super.close(timeout);
+					}
+					finally {
+						bridge.unbind(this);
+					}
+				}
+
+			};
+			bridge.bind(consumer, consumer::metrics, this.tags);
+			return consumer;
+		}
+
+	}
+
 	/**
 	 * Helper class to send to DLQ.
 	 *
@@ -1352,7 +2266,21 @@ public class KafkaMessageChannelBinder extends
 			ProducerRecord<K, V> producerRecord = new ProducerRecord<>(dlqName,
 					partitionFunction.apply(group, consumerRecord, throwable),
 					key, value, headers);
+			send(producerRecord, consumerRecord, "DLQ");
+		}
+
+		@SuppressWarnings("unchecked")
+		void sendToRetryTopic(ConsumerRecord<?, ?> consumerRecord, Headers headers,
+				String retryTopic) {
+			ProducerRecord<K, V> producerRecord = new ProducerRecord<>(retryTopic, null,
+					(K) consumerRecord.key(), (V) consumerRecord.value(), headers);
+			send(producerRecord, consumerRecord, "retry topic " + retryTopic);
+		}
 
+		private void send(ProducerRecord<K, V> producerRecord,
+				ConsumerRecord<?, ?> consumerRecord, String target) {
+			K key = producerRecord.key();
+			V value = producerRecord.value();
 			StringBuilder sb = new StringBuilder().append(" a message with key='")
 					.append(toDisplayString(ObjectUtils.nullSafeToString(key), 50))
 					.append("'").append(" and payload='")
@@ -1367,14 +2295,14 @@ public class KafkaMessageChannelBinder extends
 					@Override
 					public void onFailure(Throwable ex) {
 						KafkaMessageChannelBinder.this.logger
-								.error("Error sending to DLQ " + sb.toString(), ex);
+								.error("Error sending to " + target + sb.toString(), ex);
 					}
 
 					@Override
 					public void onSuccess(SendResult<K, V> result) {
 						if (KafkaMessageChannelBinder.this.logger.isDebugEnabled()) {
 							KafkaMessageChannelBinder.this.logger
-									.debug("Sent to DLQ " + sb.toString());
+									.debug("Sent to " + target + sb.toString());
 						}
 					}
 				});
@@ -1382,7 +2310,7 @@ public class KafkaMessageChannelBinder extends
 			catch (Exception ex) {
 				if (sentDlq == null) {
 					KafkaMessageChannelBinder.this.logger
-							.error("Error sending to DLQ " + sb.toString(), ex);
+							.error("Error sending to " + target + sb.toString(), ex);
 				}
 			}
 
@@ -0,0 +1,409 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+
+import org.springframework.kafka.listener.AcknowledgingConsumerAwareMessageListener;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.GenericMessageListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Dispatches the records of each partition to a fixed number of single-threaded workers,
+ * selected by record key, so that records with the same key are processed in order while
+ * records with different keys are processed concurrently. Offsets are acknowledged (with
+ * {@code AckMode.MANUAL}) only up to the highest contiguous completed offset of each
+ * partition. When the queue of a worker reaches its capacity, the partition of the record
+ * just queued is paused, rather than blocking the consumer thread, and it is resumed when
+ * the queues of the workers it was paused for are half empty again.
+ *
+ * @author agent
+ * @since 3.0
+ */
+final class KeyOrderedDispatcher
+		implements AcknowledgingConsumerAwareMessageListener<Object, Object> {
+
+	private static final Log logger = LogFactory.getLog(KeyOrderedDispatcher.class);
+
+	private final Map<TopicPartition, OffsetTracker> trackers = new ConcurrentHashMap<>();
+
+	private final String name;
+
+	private final int concurrency;
+
+	private final int queueCapacity;
+
+	private final PartitionPauser pauser;
+
+	/*
+	 * The workers whose queue was full when a record of the partition was queued, and the
+	 * consumer that paused the partition.
+	 */
+	private final Map<TopicPartition, Set<Integer>> pausedFor = new HashMap<>();
+
+	private final Map<TopicPartition, Consumer<?, ?>> pausedBy = new HashMap<>();
+
+	private volatile boolean paused;
+
+	private volatile GenericMessageListener<ConsumerRecord<Object, Object>> delegate;
+
+	private volatile ThreadPoolExecutor[] workers;
+
+	KeyOrderedDispatcher(String name, int concurrency, int queueCapacity, PartitionPauser pauser) {
+		this.name = name;
+		this.concurrency = concurrency;
+		this.queueCapacity = queueCapacity;
+		this.pauser = pauser;
+	}
+
+	/**
+	 * Start the workers.
+	 * @param delegate the binding's listener.
+	 */
+	@SuppressWarnings("unchecked")
+	synchronized void start(Object delegate) {
+		this.delegate = (GenericMessageListener<ConsumerRecord<Object, Object>>) delegate;
+		if (this.workers == null) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(
+					this.name + "-key-ordered-");
+			ThreadPoolExecutor[] workers = new ThreadPoolExecutor[this.concurrency];
+			for (int i = 0; i < workers.length; i++) {
+				// unbounded; the partitions are paused when a queue reaches its capacity, so
+				// it only exceeds it by the rest of the records of the current poll
+				workers[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+						new LinkedBlockingQueue<>(), threadFactory);
+			}
+			this.workers = workers;
+		}
+	}
+
+	/**
+	 * Stop the workers, waiting for queued records to be processed.
+	 * @param timeout the maximum time to wait, in milliseconds.
+	 */
+	synchronized void stop(long timeout) {
+		ThreadPoolExecutor[] workers = this.workers;
+		this.workers = null;
+		if (workers != null) {
+			for (ThreadPoolExecutor worker : workers) {
+				worker.shutdown();
+			}
+			long deadline = System.currentTimeMillis() + timeout;
+			try {
+				for (ThreadPoolExecutor worker : workers) {
+					worker.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()),
+							TimeUnit.MILLISECONDS);
+				}
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		this.trackers.values().forEach(OffsetTracker::discard);
+		this.trackers.clear();
+		synchronized (this.pausedFor) {
+			this.pausedFor.clear();
+			this.pausedBy.clear();
+			this.paused = false;
+		}
+	}
+
+	@Override
+	public void onMessage(ConsumerRecord<Object, Object> record,
+			Acknowledgment acknowledgment, Consumer<?, ?> consumer) {
+
+		ThreadPoolExecutor[] workers = this.workers;
+		if (workers == null) {
+			throw new IllegalStateException("Key-ordered dispatcher is not started");
+		}
+		TopicPartition topicPartition = new TopicPartition(record.topic(), record.partition());
+		OffsetTracker tracker = this.trackers.computeIfAbsent(topicPartition,
+				(tp) -> new OffsetTracker());
+		if (tracker.isDiscarded()) {
+			// a previous record of this poll was rejected; the consumer was sought back to it
+			return;
+		}
+		tracker.register(record.offset(), acknowledgment);
+		GenericMessageListener<ConsumerRecord<Object, Object>> delegate = this.delegate;
+		int index = workerFor(record, workers.length);
+		ThreadPoolExecutor worker = workers[index];
+		try {
+			worker.execute(() -> {
+				try {
+					// the consumer is not thread-safe, so it is not exposed to the workers
+					delegate.onMessage(record, null, null);
+				}
+				catch (RuntimeException ex) {
+					logger.error("Key-ordered processing failed for " + record, ex);
+				}
+				finally {
+					tracker.complete(record.offset());
+					if (this.paused && worker.getQueue().size() <= this.queueCapacity / 2) {
+						resumePausedFor(index);
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException ex) {
+			// the workers are stopped; nothing acknowledges this record, so seek back to it
+			// and skip the following records of the partition, which are redelivered with it
+			tracker.deregister(record.offset());
+			tracker.discard();
+			consumer.seek(topicPartition, record.offset());
+			throw ex;
+		}
+		if (worker.getQueue().size() >= this.queueCapacity) {
+			pauseFor(index, topicPartition, consumer);
+		}
+	}
+
+	private void pauseFor(int worker, TopicPartition partition, Consumer<?, ?> consumer) {
+		synchronized (this.pausedFor) {
+			Set<Integer> workers = this.pausedFor.computeIfAbsent(partition, (tp) -> new HashSet<>());
+			if (workers.isEmpty()) {
+				this.pauser.pause(consumer, partition);
+				this.pausedBy.put(partition, consumer);
+			}
+			workers.add(worker);
+			this.paused = true;
+		}
+	}
+
+	private void resumePausedFor(int worker) {
+		synchronized (this.pausedFor) {
+			this.pausedFor.entrySet().removeIf((entry) -> {
+				Set<Integer> workers = entry.getValue();
+				if (workers.remove(worker) && workers.isEmpty()) {
+					this.pauser.resume(this.pausedBy.remove(entry.getKey()), entry.getKey());
+					return true;
+				}
+				return false;
+			});
+			this.paused = !this.pausedFor.isEmpty();
+		}
+	}
+
+	/**
+	 * Wait for the dispatched records of the revoked partitions to be processed, so that
+	 * their offsets are acknowledged before the partitions are revoked; the records of
+	 * the other partitions are not waited for.
+	 * @param partitions the revoked partitions.
+	 * @param timeout the maximum time to wait, in milliseconds.
+	 */
+	void drain(Collection<TopicPartition> partitions, long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		boolean interrupted = false;
+		synchronized (this.pausedFor) {
+			// a revoked partition is no longer paused when assigned again
+			for (TopicPartition partition : partitions) {
+				this.pausedFor.remove(partition);
+				this.pausedBy.remove(partition);
+			}
+			this.paused = !this.pausedFor.isEmpty();
+		}
+		for (TopicPartition partition : partitions) {
+			OffsetTracker tracker = this.trackers.remove(partition);
+			if (tracker == null) {
+				continue;
+			}
+			if (!interrupted) {
+				try {
+					if (!tracker.awaitCompletion(deadline)) {
+						logger.warn("Timed out waiting for " + tracker.getPendingCount() + " key-ordered records of "
+								+ partition + "; they will be redelivered");
+					}
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					interrupted = true;
+				}
+			}
+			tracker.discard();
+		}
+	}
+
+	/**
+	 * Wrap the container's rebalance listener (if any) so that in-flight records are
+	 * drained before offsets are committed on revocation.
+	 * @param delegate the existing listener, or null.
+	 * @param timeout the drain timeout, in milliseconds.
+	 * @return the listener.
+	 */
+	ConsumerAwareRebalanceListener rebalanceListener(@Nullable ConsumerRebalanceListener delegate,
+			long timeout) {
+
+		return new ConsumerAwareRebalanceListener() {
+
+			@Override
+			public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer,
+					Collection<TopicPartition> partitions) {
+
+				drain(partitions, timeout);
+				if (delegate instanceof ConsumerAwareRebalanceListener) {
+					((ConsumerAwareRebalanceListener) delegate)
+							.onPartitionsRevokedBeforeCommit(consumer, partitions);
+				}
+				else if (delegate != null) {
+					delegate.onPartitionsRevoked(partitions);
+				}
+			}
+
+			@Override
+			public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer,
+					Collection<TopicPartition> partitions) {
+
+				if (delegate instanceof ConsumerAwareRebalanceListener) {
+					((ConsumerAwareRebalanceListener) delegate)
+							.onPartitionsRevokedAfterCommit(consumer, partitions);
+				}
+			}
+
+			@Override
+			public void onPartitionsAssigned(Consumer<?, ?> consumer,
+					Collection<TopicPartition> partitions) {
+
+				if (delegate instanceof ConsumerAwareRebalanceListener) {
+					((ConsumerAwareRebalanceListener) delegate)
+							.onPartitionsAssigned(consumer, partitions);
+				}
+				else if (delegate != null) {
+					delegate.onPartitionsAssigned(partitions);
+				}
+			}
+
+		};
+	}
+
+	private static int workerFor(ConsumerRecord<?, ?> record, int workers) {
+		Object key = record.key();
+		int hash;
+		if (key == null) {
+			hash = record.partition();
+		}
+		else if (key instanceof byte[]) {
+			hash = Arrays.hashCode((byte[]) key);
+		}
+		else {
+			hash = key.hashCode();
+		}
+		return Math.floorMod(hash, workers);
+	}
+
+	/**
+	 * Tracks the dispatched offsets of a partition and acknowledges the highest offset
+	 * below which all records have completed.
+	 */
+	static final class OffsetTracker {
+
+		private final TreeMap<Long, Pending> pending = new TreeMap<>();
+
+		private boolean discarded;
+
+		synchronized void register(long offset, Acknowledgment acknowledgment) {
+			this.pending.put(offset, new Pending(acknowledgment));
+		}
+
+		synchronized void complete(long offset) {
+			Pending completed = this.pending.get(offset);
+			if (completed == null) {
+				return;
+			}
+			completed.done = true;
+			Acknowledgment toAck = null;
+			while (!this.pending.isEmpty() && this.pending.firstEntry().getValue().done) {
+				toAck = this.pending.pollFirstEntry().getValue().acknowledgment;
+			}
+			if (toAck != null && !this.discarded) {
+				toAck.acknowledge();
+			}
+			if (this.pending.isEmpty()) {
+				notifyAll();
+			}
+		}
+
+		/*
+		 * Forget an offset that was registered but could not be dispatched.
+		 */
+		synchronized void deregister(long offset) {
+			this.pending.remove(offset);
+			if (this.pending.isEmpty()) {
+				notifyAll();
+			}
+		}
+
+		/*
+		 * Wait until all registered offsets have completed; return false on timeout.
+		 */
+		synchronized boolean awaitCompletion(long deadline) throws InterruptedException {
+			long remaining = deadline - System.currentTimeMillis();
+			while (!this.pending.isEmpty() && remaining > 0) {
+				wait(remaining);
+				remaining = deadline - System.currentTimeMillis();
+			}
+			return this.pending.isEmpty();
+		}
+
+		synchronized void discard() {
+			this.discarded = true;
+			this.pending.clear();
+			notifyAll();
+		}
+
+		synchronized boolean isDiscarded() {
+			return this.discarded;
+		}
+
+		synchronized int getPendingCount() {
+			return this.pending.size();
+		}
+
+	}
+
+	private static final class Pending {
+
+		private final Acknowledgment acknowledgment;
+
+		private boolean done;
+
+		Pending(Acknowledgment acknowledgment) {
+			this.acknowledgment = acknowledgment;
+		}
+
+	}
+
+}
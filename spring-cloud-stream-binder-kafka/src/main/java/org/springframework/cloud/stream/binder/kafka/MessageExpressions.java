@@ -0,0 +1,141 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import java.util.function.Function;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ParseException;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelEvaluationException;
+import org.springframework.expression.spel.SpelMessage;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.integration.expression.FunctionExpression;
+import org.springframework.messaging.Message;
+import org.springframework.util.StringUtils;
+
+/**
+ * Expressions evaluated by the producer for every outbound message. The header lookups
+ * generated by the binder are plain functions; user expressions are compiled to byte
+ * code, and evaluated by the interpreter if the compiled code fails, for example because
+ * the root object has a different type than when it was compiled.
+ *
+ * @author agent
+ * @since 3.0
+ */
+final class MessageExpressions {
+
+	private static final Log logger = LogFactory.getLog(MessageExpressions.class);
+
+	private static final SpelExpressionParser COMPILING_PARSER = new SpelExpressionParser(
+			new SpelParserConfiguration(SpelCompilerMode.IMMEDIATE, MessageExpressions.class.getClassLoader()));
+
+	private MessageExpressions() {
+	}
+
+	/**
+	 * Equivalent of {@code headers['name']}.
+	 * @param name the header name.
+	 * @return the expression.
+	 */
+	static Expression header(String name) {
+		return new FunctionExpression<Message<?>>((message) -> message.getHeaders().get(name));
+	}
+
+	/**
+	 * Equivalent of {@code headers['name'] ?: 'defaultValue'}.
+	 * @param name the header name.
+	 * @param defaultValue the value when the header is missing or empty.
+	 * @return the expression.
+	 */
+	static Expression headerOrDefault(String name, Object defaultValue) {
+		return new FunctionExpression<Message<?>>((message) -> {
+			Object value = message.getHeaders().get(name);
+			return StringUtils.isEmpty(value) ? defaultValue : value;
+		});
+	}
+
+	/**
+	 * Return an expression that evaluates a compiled copy of a SpEL expression against
+	 * the provided evaluation context; other expressions, or any expression when there is
+	 * no evaluation context, are returned as is.
+	 * @param expression the expression.
+	 * @param evaluationContext the evaluation context.
+	 * @return the expression.
+	 */
+	static Expression compile(Expression expression, EvaluationContext evaluationContext) {
+		if (!(expression instanceof SpelExpression) || evaluationContext == null) {
+			return expression;
+		}
+		SpelExpression compiling;
+		try {
+			compiling = COMPILING_PARSER.parseRaw(expression.getExpressionString());
+		}
+		catch (ParseException ex) {
+			return expression;
+		}
+		return new FunctionExpression<>(new CompiledFunction(compiling, expression, evaluationContext));
+	}
+
+	private static final class CompiledFunction implements Function<Object, Object> {
+
+		private final SpelExpression compiling;
+
+		private final Expression interpreted;
+
+		private final EvaluationContext evaluationContext;
+
+		private volatile boolean compilationFailed;
+
+		CompiledFunction(SpelExpression compiling, Expression interpreted,
+				EvaluationContext evaluationContext) {
+
+			this.compiling = compiling;
+			this.interpreted = interpreted;
+			this.evaluationContext = evaluationContext;
+		}
+
+		@Override
+		public Object apply(Object root) {
+			if (!this.compilationFailed) {
+				try {
+					return this.compiling.getValue(this.evaluationContext, root);
+				}
+				catch (SpelEvaluationException ex) {
+					if (!SpelMessage.EXCEPTION_RUNNING_COMPILED_EXPRESSION.equals(ex.getMessageCode())) {
+						throw ex;
+					}
+					this.compilationFailed = true;
+					if (logger.isDebugEnabled()) {
+						logger.debug("Interpreting expression after the compiled code failed: "
+								+ this.interpreted.getExpressionString(), ex);
+					}
+				}
+			}
+			return this.interpreted.getValue(this.evaluationContext, root);
+		}
+
+	}
+
+}
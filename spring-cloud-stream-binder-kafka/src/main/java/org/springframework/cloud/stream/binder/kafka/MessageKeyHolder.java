@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.Message;
+
+/**
+ * Carries the message key evaluated by {@link KafkaExpressionEvaluatingInterceptor} to
+ * the producer message handler of the same binding, on the sending thread, so that the
+ * message does not have to be copied to add the key as a header. Only usable when the
+ * output channel invokes the handler on the sending thread.
+ *
+ * @author agent
+ * @since 3.0
+ */
+final class MessageKeyHolder {
+
+	private static final Object NULL_KEY = new Object();
+
+	private final ThreadLocal<Object> key = new ThreadLocal<>();
+
+	void set(@Nullable Object key) {
+		this.key.set(key == null ? NULL_KEY : key);
+	}
+
+	void clear() {
+		this.key.remove();
+	}
+
+	/**
+	 * Return and clear the key set on this thread; if none was set, return the key
+	 * header of the message.
+	 * @param message the message being sent.
+	 * @return the key.
+	 */
+	@Nullable
+	Object take(Message<?> message) {
+		Object key = this.key.get();
+		if (key == null) {
+			return message.getHeaders().get(KafkaExpressionEvaluatingInterceptor.MESSAGE_KEY_HEADER);
+		}
+		this.key.remove();
+		return key == NULL_KEY ? null : key;
+	}
+
+}
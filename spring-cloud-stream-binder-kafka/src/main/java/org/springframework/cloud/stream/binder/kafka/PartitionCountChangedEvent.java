@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when the binder detects that partitions have been added to the topic of a
+ * producer binding; from then on, partitioned producers use the new partitions.
+ *
+ * @author agent
+ * @since 3.0
+ */
+@SuppressWarnings("serial")
+public class PartitionCountChangedEvent extends ApplicationEvent {
+
+	private final String topic;
+
+	private final int previousPartitionCount;
+
+	private final int partitionCount;
+
+	public PartitionCountChangedEvent(Object source, String topic, int previousPartitionCount,
+			int partitionCount) {
+
+		super(source);
+		this.topic = topic;
+		this.previousPartitionCount = previousPartitionCount;
+		this.partitionCount = partitionCount;
+	}
+
+	public String getTopic() {
+		return this.topic;
+	}
+
+	public int getPreviousPartitionCount() {
+		return this.previousPartitionCount;
+	}
+
+	public int getPartitionCount() {
+		return this.partitionCount;
+	}
+
+	@Override
+	public String toString() {
+		return "PartitionCountChangedEvent [topic=" + this.topic + ", previousPartitionCount="
+				+ this.previousPartitionCount + ", partitionCount=" + this.partitionCount + "]";
+	}
+
+}
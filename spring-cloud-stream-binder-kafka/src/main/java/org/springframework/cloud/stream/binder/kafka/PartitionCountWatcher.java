@@ -0,0 +1,204 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartitionInfo;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Periodically describes the topics of the registered producers, with one request per
+ * refresh, and notifies the listener of a producer when the partition count of its
+ * topic has grown. The (daemon) thread is started when the first producer is registered
+ * and stopped when the last one is removed.
+ *
+ * @author agent
+ * @since 3.0
+ */
+final class PartitionCountWatcher {
+
+	private static final Log logger = LogFactory.getLog(PartitionCountWatcher.class);
+
+	private final Map<Object, Watch> watches = new ConcurrentHashMap<>();
+
+	private final Supplier<AdminClient> adminClientSupplier;
+
+	private final long refreshInterval;
+
+	private final long timeout;
+
+	private ScheduledExecutorService executor;
+
+	private AdminClient adminClient;
+
+	/**
+	 * Construct an instance.
+	 * @param adminClientSupplier supplies the admin client used to describe the topics.
+	 * @param refreshInterval the refresh interval.
+	 * @param timeout the timeout of each request.
+	 */
+	PartitionCountWatcher(Supplier<AdminClient> adminClientSupplier, Duration refreshInterval,
+			Duration timeout) {
+
+		this.adminClientSupplier = adminClientSupplier;
+		this.refreshInterval = refreshInterval.toMillis();
+		this.timeout = timeout.toMillis();
+	}
+
+	/**
+	 * Watch the topic of a producer.
+	 * @param owner the object whose {@link #unwatch(Object)} ends the watch.
+	 * @param topic the topic.
+	 * @param partitionCount the current partition count.
+	 * @param listener invoked on the watcher thread when the partition count has grown.
+	 */
+	void watch(Object owner, String topic, int partitionCount, Listener listener) {
+		this.watches.put(owner, new Watch(topic, partitionCount, listener));
+		synchronized (this) {
+			if (this.executor == null) {
+				CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(
+						"kafka-binder-partition-watcher-");
+				threadFactory.setDaemon(true);
+				this.executor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+				this.executor.scheduleWithFixedDelay(this::refresh, this.refreshInterval,
+						this.refreshInterval, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	/**
+	 * End the watch of a producer; stops the thread if no watches remain.
+	 * @param owner the owner.
+	 */
+	void unwatch(Object owner) {
+		if (this.watches.remove(owner) != null && this.watches.isEmpty()) {
+			stop();
+		}
+	}
+
+	void refresh() {
+		Set<String> topics = new HashSet<>();
+		this.watches.values().forEach((watch) -> topics.add(watch.topic));
+		if (topics.isEmpty()) {
+			return;
+		}
+		try {
+			synchronized (this) {
+				if (this.adminClient == null) {
+					this.adminClient = this.adminClientSupplier.get();
+				}
+			}
+			Map<String, KafkaFuture<TopicDescription>> descriptions = this.adminClient
+					.describeTopics(topics).values();
+			for (Map.Entry<Object, Watch> entry : this.watches.entrySet()) {
+				Watch watch = entry.getValue();
+				try {
+					TopicDescription description = descriptions.get(watch.topic)
+							.get(this.timeout, TimeUnit.MILLISECONDS);
+					int partitionCount = description.partitions().size();
+					if (partitionCount > watch.partitionCount) {
+						int previous = watch.partitionCount;
+						watch.partitionCount = partitionCount;
+						watch.listener.partitionsAdded(previous, partitionInfos(description));
+					}
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				catch (Exception ex) {
+					logger.debug("Cannot refresh the partitions of topic: " + watch.topic, ex);
+				}
+			}
+		}
+		catch (Exception ex) {
+			logger.debug("Cannot refresh partition counts", ex);
+		}
+	}
+
+	private static List<PartitionInfo> partitionInfos(TopicDescription description) {
+		List<PartitionInfo> partitionInfos = new ArrayList<>();
+		for (TopicPartitionInfo partition : description.partitions()) {
+			partitionInfos.add(new PartitionInfo(description.name(), partition.partition(),
+					partition.leader(), partition.replicas().toArray(new Node[0]),
+					partition.isr().toArray(new Node[0])));
+		}
+		return partitionInfos;
+	}
+
+	synchronized void stop() {
+		if (this.executor != null) {
+			this.executor.shutdownNow();
+			this.executor = null;
+		}
+		if (this.adminClient != null) {
+			this.adminClient.close(Duration.ofMillis(this.timeout));
+			this.adminClient = null;
+		}
+	}
+
+	/**
+	 * Notified when the partition count of a watched topic has grown.
+	 */
+	@FunctionalInterface
+	interface Listener {
+
+		/**
+		 * Partitions have been added to the topic.
+		 * @param previousCount the previous partition count.
+		 * @param partitionInfos the current partitions.
+		 */
+		void partitionsAdded(int previousCount, List<PartitionInfo> partitionInfos);
+
+	}
+
+	private static final class Watch {
+
+		private final String topic;
+
+		private final Listener listener;
+
+		private volatile int partitionCount;
+
+		Watch(String topic, int partitionCount, Listener listener) {
+			this.topic = topic;
+			this.partitionCount = partitionCount;
+			this.listener = listener;
+		}
+
+	}
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+
+/**
+ * Pauses single partitions of a consumer and resumes them on request from any thread.
+ * The consumer is not thread-safe, so the requested partitions are resumed by the
+ * consumer thread itself, just before its next poll; only the consumers created by a
+ * factory {@link #decorate decorated} by this class can be resumed.
+ *
+ * @author agent
+ * @since 3.0
+ */
+final class PartitionPauser {
+
+	private final Map<Consumer<?, ?>, Set<TopicPartition>> resumeRequests = new ConcurrentHashMap<>();
+
+	/**
+	 * Pause a partition; must be called on the consumer thread.
+	 * @param consumer the consumer.
+	 * @param partition the partition.
+	 */
+	void pause(Consumer<?, ?> consumer, TopicPartition partition) {
+		Set<TopicPartition> requested = this.resumeRequests.get(consumer);
+		if (requested != null) {
+			requested.remove(partition);
+		}
+		consumer.pause(Collections.singleton(partition));
+	}
+
+	/**
+	 * Request a paused partition to be resumed before the next poll of the consumer;
+	 * ignored if the partition is no longer assigned by then.
+	 * @param consumer the consumer.
+	 * @param partition the partition.
+	 */
+	void resume(Consumer<?, ?> consumer, TopicPartition partition) {
+		Set<TopicPartition> requested = this.resumeRequests.get(consumer);
+		if (requested != null) {
+			requested.add(partition);
+		}
+	}
+
+	/**
+	 * Return a factory whose consumers resume the requested partitions before each poll.
+	 * @param consumerFactory the factory.
+	 * @param <K> the key type.
+	 * @param <V> the value type.
+	 * @return the decorated factory.
+	 */
+	<K, V> ConsumerFactory<K, V> decorate(ConsumerFactory<K, V> consumerFactory) {
+		return new PausableConsumerFactory<>(consumerFactory);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <K, V> Consumer<K, V> pausable(Consumer<K, V> consumer) {
+		Set<TopicPartition> requested = ConcurrentHashMap.newKeySet();
+		ProxyFactory proxyFactory = new ProxyFactory(consumer);
+		proxyFactory.addAdvice((MethodInterceptor) (invocation) -> {
+			String method = invocation.getMethod().getName();
+			if (method.equals("poll") && !requested.isEmpty()) {
+				resumeRequested(consumer, requested);
+			}
+			else if (method.equals("close")) {
+				this.resumeRequests.remove(((ProxyMethodInvocation) invocation).getProxy());
+			}
+			return invocation.proceed();
+		});
+		Consumer<K, V> proxy = (Consumer<K, V>) proxyFactory.getProxy();
+		this.resumeRequests.put(proxy, requested);
+		return proxy;
+	}
+
+	private static void resumeRequested(Consumer<?, ?> consumer, Set<TopicPartition> requested) {
+		Set<TopicPartition> assigned = consumer.assignment();
+		Set<TopicPartition> partitions = new HashSet<>();
+		Iterator<TopicPartition> iterator = requested.iterator();
+		while (iterator.hasNext()) {
+			TopicPartition partition = iterator.next();
+			iterator.remove();
+			if (assigned.contains(partition)) {
+				partitions.add(partition);
+			}
+		}
+		if (!partitions.isEmpty()) {
+			consumer.resume(partitions);
+		}
+	}
+
+	private final class PausableConsumerFactory<K, V> implements ConsumerFactory<K, V> {
+
+		private final ConsumerFactory<K, V> delegate;
+
+		PausableConsumerFactory(ConsumerFactory<K, V> delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public Consumer<K, V> createConsumer(String groupId, String clientIdPrefix, String clientIdSuffix) {
+			return pausable(this.delegate.createConsumer(groupId, clientIdPrefix, clientIdSuffix));
+		}
+
+		@Override
+		public Consumer<K, V> createConsumer(String groupId, String clientIdPrefix, String clientIdSuffix,
+				Properties properties) {
+
+			return pausable(this.delegate.createConsumer(groupId, clientIdPrefix, clientIdSuffix, properties));
+		}
+
+		@Override
+		public boolean isAutoCommit() {
+			return this.delegate.isAutoCommit();
+		}
+
+		@Override
+		public Map<String, Object> getConfigurationProperties() {
+			return this.delegate.getConfigurationProperties();
+		}
+
+		@Override
+		public Deserializer<K> getKeyDeserializer() {
+			return this.delegate.getKeyDeserializer();
+		}
+
+		@Override
+		public Deserializer<V> getValueDeserializer() {
+			return this.delegate.getValueDeserializer();
+		}
+
+	}
+
+}
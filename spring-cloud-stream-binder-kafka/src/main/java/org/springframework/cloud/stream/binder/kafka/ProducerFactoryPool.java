@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.ProducerFactory;
+
+/**
+ * A reference-counted pool of producer factories, keyed by the effective producer
+ * configuration. Bindings (and DLQ senders) with equivalent configuration share a
+ * single factory, and therefore a single {@code KafkaProducer}; the factory is destroyed
+ * when the last reference is released.
+ *
+ * @author agent
+ * @since 3.0
+ */
+final class ProducerFactoryPool {
+
+	private static final Log logger = LogFactory.getLog(ProducerFactoryPool.class);
+
+	private final Map<Map<String, Object>, PooledProducerFactory> factories = new HashMap<>();
+
+	/**
+	 * Obtain a factory for the provided configuration, creating it if necessary, and
+	 * increment its reference count.
+	 * @param configs the effective producer configuration.
+	 * @param factoryCreator creates a new factory when none exists for the configuration.
+	 * @return the shared factory.
+	 */
+	synchronized DefaultKafkaProducerFactory<byte[], byte[]> acquire(Map<String, Object> configs,
+			Function<Map<String, Object>, DefaultKafkaProducerFactory<byte[], byte[]>> factoryCreator) {
+
+		PooledProducerFactory pooled = this.factories.computeIfAbsent(new HashMap<>(configs),
+				(key) -> new PooledProducerFactory(factoryCreator.apply(key)));
+		pooled.references++;
+		if (logger.isDebugEnabled()) {
+			logger.debug("Acquired pooled producer factory; references: " + pooled.references);
+		}
+		return pooled.producerFactory;
+	}
+
+	/**
+	 * Decrement the reference count of the factory, destroying it if this was the last
+	 * reference.
+	 * @param producerFactory the factory.
+	 * @return true if the factory was managed by this pool.
+	 */
+	synchronized boolean release(ProducerFactory<?, ?> producerFactory) {
+		Iterator<PooledProducerFactory> iterator = this.factories.values().iterator();
+		while (iterator.hasNext()) {
+			PooledProducerFactory pooled = iterator.next();
+			if (pooled.producerFactory == producerFactory) {
+				if (--pooled.references <= 0) {
+					iterator.remove();
+					pooled.producerFactory.destroy();
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Return the number of distinct factories currently in the pool.
+	 * @return the factory count.
+	 */
+	synchronized int getFactoryCount() {
+		return this.factories.size();
+	}
+
+	/**
+	 * Return the total number of references held on the pooled factories.
+	 * @return the reference count.
+	 */
+	synchronized int getReferenceCount() {
+		int references = 0;
+		for (PooledProducerFactory pooled : this.factories.values()) {
+			references += pooled.references;
+		}
+		return references;
+	}
+
+	private static final class PooledProducerFactory {
+
+		private final DefaultKafkaProducerFactory<byte[], byte[]> producerFactory;
+
+		private int references;
+
+		PooledProducerFactory(DefaultKafkaProducerFactory<byte[], byte[]> producerFactory) {
+			this.producerFactory = producerFactory;
+		}
+
+	}
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import org.springframework.kafka.listener.AcknowledgingConsumerAwareMessageListener;
+import org.springframework.kafka.listener.ContainerAwareErrorHandler;
+import org.springframework.kafka.listener.GenericMessageListener;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.scheduling.TaskScheduler;
+
+/**
+ * Support classes for consuming retry topics; records are only delivered to the binding
+ * once their due time has passed. Until then, the partition holding the record is
+ * paused, so the consumer thread never sleeps and the other partitions of the retry
+ * topic keep being consumed.
+ *
+ * @author agent
+ * @since 3.0
+ */
+final class RetryTopicSupport {
+
+	private RetryTopicSupport() {
+
+	}
+
+	/**
+	 * Return the retry attempt recorded in the headers, or 0 if the record was not
+	 * consumed from a retry topic.
+	 * @param headers the record headers.
+	 * @return the attempt.
+	 */
+	static int retryAttempt(Headers headers) {
+		Header header = headers.lastHeader(KafkaMessageChannelBinder.X_RETRY_ATTEMPT);
+		return header == null ? 0 : ByteBuffer.wrap(header.value()).getInt();
+	}
+
+	/**
+	 * Return the time at which a retry record is due, or 0 if no due time is present.
+	 * @param headers the record headers.
+	 * @return the due timestamp.
+	 */
+	static long dueTimestamp(Headers headers) {
+		Header header = headers.lastHeader(KafkaMessageChannelBinder.X_RETRY_DUE_TIMESTAMP);
+		return header == null ? 0L : ByteBuffer.wrap(header.value()).getLong();
+	}
+
+	/**
+	 * A listener that delegates to the binding's listener, but rejects records that are
+	 * not yet due with a {@link RetryNotDueException}.
+	 */
+	static class DueTimeAwareMessageListener
+			implements AcknowledgingConsumerAwareMessageListener<Object, Object> {
+
+		private final GenericMessageListener<ConsumerRecord<Object, Object>> delegate;
+
+		@SuppressWarnings("unchecked")
+		DueTimeAwareMessageListener(Object delegate) {
+			this.delegate = (GenericMessageListener<ConsumerRecord<Object, Object>>) delegate;
+		}
+
+		@Override
+		public void onMessage(ConsumerRecord<Object, Object> record,
+				Acknowledgment acknowledgment, Consumer<?, ?> consumer) {
+
+			long due = dueTimestamp(record.headers());
+			if (due > System.currentTimeMillis()) {
+				throw new RetryNotDueException(due);
+			}
+			this.delegate.onMessage(record, acknowledgment, consumer);
+		}
+
+	}
+
+	/**
+	 * Error handler for retry topic containers; when a record is not yet due, the
+	 * unprocessed records are re-seeked and the record's partition is paused until the
+	 * due time. The container's consumers must be created by a factory decorated by the
+	 * {@link PartitionPauser}.
+	 */
+	static class DueTimeErrorHandler implements ContainerAwareErrorHandler {
+
+		private static final Log logger = LogFactory.getLog(DueTimeErrorHandler.class);
+
+		private final TaskScheduler taskScheduler;
+
+		private final PartitionPauser partitionPauser;
+
+		DueTimeErrorHandler(TaskScheduler taskScheduler, PartitionPauser partitionPauser) {
+			this.taskScheduler = taskScheduler;
+			this.partitionPauser = partitionPauser;
+		}
+
+		@Override
+		public void handle(Exception thrownException, List<ConsumerRecord<?, ?>> records,
+				Consumer<?, ?> consumer, MessageListenerContainer container) {
+
+			RetryNotDueException notDue = findNotDue(thrownException);
+			List<ConsumerRecord<?, ?>> toSeek = records;
+			if (notDue == null) {
+				// the binding reports failures via the error channel; just skip the record
+				logger.error("Unexpected error consuming from retry topic; skipping "
+						+ records.get(0), thrownException);
+				toSeek = records.subList(1, records.size());
+			}
+			Map<TopicPartition, Long> offsets = new LinkedHashMap<>();
+			toSeek.forEach((record) -> offsets.putIfAbsent(
+					new TopicPartition(record.topic(), record.partition()), record.offset()));
+			offsets.forEach(consumer::seek);
+			if (notDue != null) {
+				ConsumerRecord<?, ?> record = records.get(0);
+				TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+				this.partitionPauser.pause(consumer, partition);
+				this.taskScheduler.schedule(() -> this.partitionPauser.resume(consumer, partition),
+						new Date(notDue.getDueTimestamp()));
+			}
+		}
+
+		private static RetryNotDueException findNotDue(Throwable exception) {
+			Throwable cause = exception;
+			while (cause != null) {
+				if (cause instanceof RetryNotDueException) {
+					return (RetryNotDueException) cause;
+				}
+				cause = cause.getCause();
+			}
+			return null;
+		}
+
+	}
+
+	/**
+	 * Thrown when a record consumed from a retry topic is not yet due.
+	 */
+	@SuppressWarnings("serial")
+	static class RetryNotDueException extends RuntimeException {
+
+		private final long dueTimestamp;
+
+		RetryNotDueException(long dueTimestamp) {
+			super("Retry not due until " + dueTimestamp);
+			this.dueTimestamp = dueTimestamp;
+		}
+
+		long getDueTimestamp() {
+			return this.dueTimestamp;
+		}
+
+	}
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.ListenableFuture;
+
+/**
+ * Bounds the number of records of a producer binding that have been sent but not yet
+ * acknowledged. A send waits for a free slot for at most the timeout and then fails, so
+ * that a slow broker pushes back on the sending flow instead of filling the producer's
+ * buffer.
+ *
+ * @author agent
+ * @since 3.0
+ */
+final class SendWindow {
+
+	private final String bindingName;
+
+	private final String topic;
+
+	private final int size;
+
+	private final long timeout;
+
+	private final Semaphore permits;
+
+	private MeterRegistry meterRegistry;
+
+	private Meter meter;
+
+	/**
+	 * Construct an instance.
+	 * @param bindingName the binding name.
+	 * @param topic the topic.
+	 * @param size the maximum number of records in flight.
+	 * @param timeout how long, in milliseconds, a send waits for a free slot.
+	 */
+	SendWindow(String bindingName, String topic, int size, long timeout) {
+		this.bindingName = bindingName;
+		this.topic = topic;
+		this.size = size;
+		this.timeout = timeout;
+		this.permits = new Semaphore(size);
+	}
+
+	String getBindingName() {
+		return this.bindingName;
+	}
+
+	String getTopic() {
+		return this.topic;
+	}
+
+	int getSize() {
+		return this.size;
+	}
+
+	int getInFlight() {
+		return this.size - this.permits.availablePermits();
+	}
+
+	/**
+	 * Register the in-flight gauge of this window, unless it is registered already.
+	 * @param registry the registry.
+	 */
+	synchronized void bindMeter(MeterRegistry registry) {
+		if (this.meter == null) {
+			this.meter = Gauge.builder(KafkaBinderMetrics.PRODUCER_IN_FLIGHT_METRIC_NAME, this,
+					SendWindow::getInFlight)
+					.tag("binding", this.bindingName)
+					.tag("topic", this.topic)
+					.description("Records sent but not yet acknowledged, out of maxInFlight")
+					.register(registry);
+			this.meterRegistry = registry;
+		}
+	}
+
+	/**
+	 * Remove the in-flight gauge of this window, if it is registered.
+	 */
+	synchronized void removeMeter() {
+		if (this.meter != null) {
+			this.meterRegistry.remove(this.meter);
+			this.meter = null;
+			this.meterRegistry = null;
+		}
+	}
+
+	void acquire() {
+		try {
+			if (!this.permits.tryAcquire(this.timeout, TimeUnit.MILLISECONDS)) {
+				throw new KafkaException("No send slot became free within " + this.timeout
+						+ "ms; " + this.size + " records are in flight for topic: " + this.topic);
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new KafkaException("Interrupted while waiting for a send slot for topic: " + this.topic, ex);
+		}
+	}
+
+	void release() {
+		this.permits.release();
+	}
+
+	/**
+	 * A {@link KafkaTemplate} that takes a slot of the window for each record until the
+	 * send completes.
+	 */
+	static final class WindowedKafkaTemplate extends KafkaTemplate<byte[], byte[]> {
+
+		private final SendWindow window;
+
+		WindowedKafkaTemplate(ProducerFactory<byte[], byte[]> producerFactory, SendWindow window) {
+			super(producerFactory);
+			this.window = window;
+		}
+
+		@Override
+		protected ListenableFuture<SendResult<byte[], byte[]>> doSend(ProducerRecord<byte[], byte[]> producerRecord) {
+			this.window.acquire();
+			ListenableFuture<SendResult<byte[], byte[]>> future;
+			try {
+				future = super.doSend(producerRecord);
+			}
+			catch (RuntimeException ex) {
+				this.window.release();
+				throw ex;
+			}
+			future.addCallback((result) -> this.window.release(), (ex) -> this.window.release());
+			return future;
+		}
+
+	}
+
+}
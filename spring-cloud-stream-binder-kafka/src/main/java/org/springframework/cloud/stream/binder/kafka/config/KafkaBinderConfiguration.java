@@ -17,6 +17,9 @@
 package org.springframework.cloud.stream.binder.kafka.config;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.binder.MeterBinder;
@@ -26,6 +29,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.kafka.KafkaAutoConfiguration;
 import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -33,13 +37,17 @@ import org.springframework.cloud.stream.annotation.StreamMessageConverter;
 import org.springframework.cloud.stream.binder.Binder;
 import org.springframework.cloud.stream.binder.kafka.KafkaBinderMetrics;
 import org.springframework.cloud.stream.binder.kafka.KafkaBindingRebalanceListener;
+import org.springframework.cloud.stream.binder.kafka.KafkaClientMetricsBridge;
 import org.springframework.cloud.stream.binder.kafka.KafkaMessageChannelBinder;
 import org.springframework.cloud.stream.binder.kafka.KafkaNullConverter;
 import org.springframework.cloud.stream.binder.kafka.properties.JaasLoginModuleConfiguration;
 import org.springframework.cloud.stream.binder.kafka.properties.KafkaBinderConfigurationProperties;
+import org.springframework.cloud.stream.binder.kafka.properties.KafkaConsumerProperties;
 import org.springframework.cloud.stream.binder.kafka.properties.KafkaExtendedBindingProperties;
 import org.springframework.cloud.stream.binder.kafka.provisioning.KafkaTopicProvisioner;
 import org.springframework.cloud.stream.binder.kafka.utils.DlqPartitionFunction;
+import org.springframework.cloud.stream.binder.kafka.utils.KafkaTopicUtils;
+import org.springframework.cloud.stream.config.BindingServiceProperties;
 import org.springframework.cloud.stream.config.ListenerContainerCustomizer;
 import org.springframework.cloud.stream.config.MessageSourceCustomizer;
 import org.springframework.cloud.stream.config.ProducerMessageHandlerCustomizer;
@@ -56,6 +64,8 @@ import org.springframework.kafka.support.LoggingProducerListener;
 import org.springframework.kafka.support.ProducerListener;
 import org.springframework.lang.Nullable;
 import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.util.ObjectUtils;
+import org.springframework.util.StringUtils;
 
 /**
  * Kafka binder configuration class.
@@ -95,8 +105,51 @@ public class KafkaBinderConfiguration {
 
 	@Bean
 	KafkaTopicProvisioner provisioningProvider(
-			KafkaBinderConfigurationProperties configurationProperties) {
-		return new KafkaTopicProvisioner(configurationProperties, this.kafkaProperties);
+			KafkaBinderConfigurationProperties configurationProperties,
+			ObjectProvider<BindingServiceProperties> bindingServiceProperties) {
+
+		KafkaTopicProvisioner provisioner = new KafkaTopicProvisioner(configurationProperties,
+				this.kafkaProperties);
+		BindingServiceProperties bindings = bindingServiceProperties.getIfUnique();
+		if (configurationProperties.isBatchProvisioningEnabled() && bindings != null) {
+			provisioner.setDeclaredTopics(declaredTopics(bindings));
+		}
+		return provisioner;
+	}
+
+	/*
+	 * The destinations of all configured bindings, with the DLQ and retry topics of the
+	 * consumer bindings; bindings of other binders may be included, which only costs a
+	 * larger describe request.
+	 */
+	private Set<String> declaredTopics(BindingServiceProperties bindingServiceProperties) {
+		Set<String> topics = new LinkedHashSet<>();
+		bindingServiceProperties.getBindings().keySet().forEach((bindingName) -> {
+			KafkaConsumerProperties consumerProperties = this.kafkaExtendedBindingProperties
+					.getExtendedConsumerProperties(bindingName);
+			String destination = bindingServiceProperties.getBindingDestination(bindingName);
+			if (!StringUtils.hasText(destination) || consumerProperties.isDestinationIsPattern()) {
+				return;
+			}
+			String group = bindingServiceProperties.getGroup(bindingName);
+			for (String topic : StringUtils.commaDelimitedListToStringArray(destination)) {
+				topic = topic.trim();
+				topics.add(topic);
+				if (StringUtils.hasText(group)) {
+					if (consumerProperties.isEnableDlq()) {
+						topics.add(StringUtils.hasText(consumerProperties.getDlqName())
+								? consumerProperties.getDlqName()
+								: "error." + topic + "." + group);
+					}
+					if (!ObjectUtils.isEmpty(consumerProperties.getRetryTopicDelays())) {
+						for (Duration delay : consumerProperties.getRetryTopicDelays()) {
+							topics.add(KafkaTopicUtils.retryTopicName(topic, group, delay));
+						}
+					}
+				}
+			}
+		});
+		return topics;
 	}
 
 	@SuppressWarnings("unchecked")
@@ -108,7 +161,8 @@ public class KafkaBinderConfiguration {
 			@Nullable MessageSourceCustomizer<KafkaMessageSource<?, ?>> sourceCustomizer,
 			@Nullable ProducerMessageHandlerCustomizer<KafkaProducerMessageHandler<?, ?>> messageHandlerCustomizer,
 			ObjectProvider<KafkaBindingRebalanceListener> rebalanceListener,
-			ObjectProvider<DlqPartitionFunction> dlqPartitionFunction) {
+			ObjectProvider<DlqPartitionFunction> dlqPartitionFunction,
+			ObjectProvider<KafkaClientMetricsBridge> clientMetricsBridge) {
 
 		KafkaMessageChannelBinder kafkaMessageChannelBinder = new KafkaMessageChannelBinder(
 				configurationProperties, provisioningProvider,
@@ -118,6 +172,9 @@ public class KafkaBinderConfiguration {
 		kafkaMessageChannelBinder
 				.setExtendedBindingProperties(this.kafkaExtendedBindingProperties);
 		kafkaMessageChannelBinder.setProducerMessageHandlerCustomizer(messageHandlerCustomizer);
+		if (configurationProperties.isClientMetricsEnabled()) {
+			kafkaMessageChannelBinder.setClientMetricsBridge(clientMetricsBridge.getIfUnique());
+		}
 		return kafkaMessageChannelBinder;
 	}
 
@@ -172,6 +229,15 @@ public class KafkaBinderConfiguration {
 			return new KafkaBinderMetrics(kafkaMessageChannelBinder,
 					configurationProperties, null, meterRegistry);
 		}
+
+		@Bean
+		@ConditionalOnBean(MeterRegistry.class)
+		@ConditionalOnMissingBean(KafkaClientMetricsBridge.class)
+		@ConditionalOnProperty(prefix = "spring.cloud.stream.kafka.binder", name = "client-metrics-enabled",
+				havingValue = "true")
+		public KafkaClientMetricsBridge kafkaClientMetricsBridge(MeterRegistry meterRegistry) {
+			return new KafkaClientMetricsBridge(meterRegistry);
+		}
 	}
 
 	@Configuration
@@ -191,6 +257,17 @@ public class KafkaBinderConfiguration {
 			return new KafkaBinderMetrics(kafkaMessageChannelBinder,
 					configurationProperties, null, meterRegistry);
 		}
+
+		@Bean
+		@ConditionalOnMissingBean(KafkaClientMetricsBridge.class)
+		@ConditionalOnProperty(prefix = "spring.cloud.stream.kafka.binder", name = "client-metrics-enabled",
+				havingValue = "true")
+		public KafkaClientMetricsBridge kafkaClientMetricsBridge(
+				ConfigurableApplicationContext context) {
+
+			return new KafkaClientMetricsBridge(context.getBean("outerContext", ApplicationContext.class)
+					.getBean(MeterRegistry.class));
+		}
 	}
 
 	/**
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import org.springframework.kafka.core.KafkaResourceHolder;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.AfterRollbackProcessor;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author agent
+ */
+public class CoalescingKafkaTransactionManagerTests {
+
+	private static final TopicPartition PARTITION = new TopicPartition("foo", 0);
+
+	@SuppressWarnings("unchecked")
+	private final Producer<byte[], byte[]> producer = mock(Producer.class);
+
+	@SuppressWarnings("unchecked")
+	private final ProducerFactory<byte[], byte[]> producerFactory = mock(ProducerFactory.class);
+
+	{
+		given(this.producerFactory.transactionCapable()).willReturn(true);
+		given(this.producerFactory.createProducer()).willReturn(this.producer);
+	}
+
+	@Test
+	public void testTransactionsCommittedTogether() {
+		CoalescingKafkaTransactionManager transactionManager = new CoalescingKafkaTransactionManager(
+				this.producerFactory, 3, Duration.ofMinutes(1));
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		for (long offset = 0; offset < 5; offset++) {
+			process(template, offset, false);
+		}
+		verify(this.producer, times(2)).beginTransaction();
+		verify(this.producer, times(1)).commitTransaction();
+
+		transactionManager.commitOpenTransactions(Collections.emptyList());
+		verify(this.producer, times(2)).commitTransaction();
+		verify(this.producer, never()).abortTransaction();
+	}
+
+	@Test
+	public void testOpenTransactionCommittedAfterTimeout() {
+		CoalescingKafkaTransactionManager transactionManager = new CoalescingKafkaTransactionManager(
+				this.producerFactory, 100, Duration.ofMillis(50));
+		process(new TransactionTemplate(transactionManager), 0, false);
+		verify(this.producer, timeout(10_000)).commitTransaction();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testRolledBackRecordsReplayed() {
+		CoalescingKafkaTransactionManager transactionManager = new CoalescingKafkaTransactionManager(
+				this.producerFactory, 10, Duration.ofMinutes(1));
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		AfterRollbackProcessor<byte[], byte[]> delegate = mock(AfterRollbackProcessor.class);
+		AfterRollbackProcessor<byte[], byte[]> processor = transactionManager.afterRollbackProcessor(delegate);
+		Consumer<byte[], byte[]> consumer = mock(Consumer.class);
+		given(consumer.assignment()).willReturn(Collections.singleton(PARTITION));
+
+		process(template, 0, false);
+		process(template, 1, false);
+		assertThatThrownBy(() -> process(template, 2, true)).isInstanceOf(IllegalStateException.class);
+		verify(this.producer).abortTransaction();
+		processor.process(records(2, 3), consumer, new IllegalStateException(), true);
+		verify(consumer).seek(PARTITION, 0L);
+		verify(delegate, never()).process(anyList(), any(), any(), anyBoolean());
+
+		// replayed one at a time up to the failed record
+		process(template, 0, false);
+		verify(this.producer, times(1)).commitTransaction();
+		assertThatThrownBy(() -> process(template, 1, true)).isInstanceOf(IllegalStateException.class);
+		processor.process(records(1, 2, 3), consumer, new IllegalStateException(), true);
+		verify(delegate).process(anyList(), any(), any(), anyBoolean());
+		verify(consumer, never()).seek(PARTITION, 1L);
+
+		process(template, 1, false);
+		verify(this.producer, times(2)).commitTransaction();
+		// the failed record has been processed; coalesced again
+		process(template, 2, false);
+		process(template, 3, false);
+		verify(this.producer, times(2)).commitTransaction();
+		transactionManager.commitOpenTransactions(Collections.singletonList(PARTITION));
+		verify(this.producer, times(3)).commitTransaction();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testOpenTransactionCommittedAndReplayClearedWhenContainerStops() {
+		CoalescingKafkaTransactionManager transactionManager = new CoalescingKafkaTransactionManager(
+				this.producerFactory, 10, Duration.ofMinutes(1));
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		AfterRollbackProcessor<byte[], byte[]> processor = transactionManager
+				.afterRollbackProcessor(mock(AfterRollbackProcessor.class));
+		Consumer<byte[], byte[]> consumer = mock(Consumer.class);
+		given(consumer.assignment()).willReturn(Collections.singleton(PARTITION));
+
+		process(template, 0, false);
+		assertThatThrownBy(() -> process(template, 1, true)).isInstanceOf(IllegalStateException.class);
+		processor.process(records(1), consumer, new IllegalStateException(), true);
+		processor.clearThreadState();
+
+		// the next records are coalesced again
+		process(template, 0, false);
+		process(template, 1, false);
+		verify(this.producer, never()).commitTransaction();
+		processor.clearThreadState();
+		verify(this.producer).commitTransaction();
+	}
+
+	private void process(TransactionTemplate template, long offset, boolean fail) {
+		template.execute((status) -> {
+			@SuppressWarnings("unchecked")
+			KafkaResourceHolder<byte[], byte[]> holder = (KafkaResourceHolder<byte[], byte[]>)
+					TransactionSynchronizationManager.getResource(this.producerFactory);
+			if (fail) {
+				throw new IllegalStateException("failed");
+			}
+			holder.getProducer().sendOffsetsToTransaction(
+					Collections.singletonMap(PARTITION, new OffsetAndMetadata(offset + 1)), "group");
+			return null;
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<ConsumerRecord<byte[], byte[]>> records(long... offsets) {
+		ConsumerRecord<byte[], byte[]>[] records = new ConsumerRecord[offsets.length];
+		for (int i = 0; i < offsets.length; i++) {
+			records[i] = new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(), offsets[i], null, null);
+		}
+		return Arrays.asList(records);
+	}
+
+}
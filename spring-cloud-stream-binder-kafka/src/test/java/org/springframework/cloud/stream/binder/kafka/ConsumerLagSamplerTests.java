@@ -0,0 +1,210 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.ListConsumerGroupOffsetsResult;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author agent
+ */
+public class ConsumerLagSamplerTests {
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testLagSampledWithOneRequestPerGroup() {
+		Consumer<?, ?> consumer = mock(Consumer.class);
+		given(consumer.partitionsFor("foo")).willReturn(Arrays.asList(
+				new PartitionInfo("foo", 0, null, null, null),
+				new PartitionInfo("foo", 1, null, null, null)));
+		given(consumer.partitionsFor("bar")).willReturn(Collections.singletonList(
+				new PartitionInfo("bar", 0, null, null, null)));
+		Map<TopicPartition, Long> endOffsets = new HashMap<>();
+		endOffsets.put(new TopicPartition("foo", 0), 100L);
+		endOffsets.put(new TopicPartition("foo", 1), 100L);
+		endOffsets.put(new TopicPartition("bar", 0), 20L);
+		given(consumer.endOffsets(anyCollection(), any(Duration.class))).willReturn(endOffsets);
+		// the uncommitted partitions are positioned at their log start
+		Map<TopicPartition, Long> beginningOffsets = new HashMap<>();
+		beginningOffsets.put(new TopicPartition("foo", 1), 30L);
+		beginningOffsets.put(new TopicPartition("bar", 0), 5L);
+		given(consumer.beginningOffsets(anyCollection(), any(Duration.class))).willReturn(beginningOffsets);
+		AdminClient adminClient = mock(AdminClient.class);
+		ListConsumerGroupOffsetsResult result = mock(ListConsumerGroupOffsetsResult.class);
+		given(result.partitionsToOffsetAndMetadata()).willReturn(KafkaFuture.completedFuture(
+				Collections.singletonMap(new TopicPartition("foo", 0), new OffsetAndMetadata(40L))));
+		given(adminClient.listConsumerGroupOffsets("group")).willReturn(result);
+
+		ConsumerLagSampler sampler = new ConsumerLagSampler(() -> consumer, () -> adminClient,
+				Duration.ofHours(1), Duration.ofHours(1), Duration.ofSeconds(10), false);
+		assertThat(sampler.getLag("foo", "group")).isNaN();
+		sampler.register("foo", "group");
+		sampler.register("bar", "group");
+		// stop the background thread so only the explicit sample is counted
+		sampler.stop();
+		clearInvocations(consumer, adminClient);
+		sampler.sample();
+
+		assertThat(sampler.getLag("foo", "group")).isEqualTo(130.0);
+		assertThat(sampler.getLag("bar", "group")).isEqualTo(15.0);
+		verify(consumer, times(1)).endOffsets(anyCollection(), any(Duration.class));
+		verify(consumer, times(1)).beginningOffsets(
+				new HashSet<>(beginningOffsets.keySet()), Duration.ofSeconds(10));
+		verify(adminClient, times(1)).listConsumerGroupOffsets("group");
+	}
+
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testPartitionAndTimeLag() {
+		Consumer consumer = mock(Consumer.class);
+		TopicPartition foo0 = new TopicPartition("foo", 0);
+		TopicPartition foo1 = new TopicPartition("foo", 1);
+		given(consumer.partitionsFor("foo")).willReturn(Arrays.asList(
+				new PartitionInfo("foo", 0, null, null, null),
+				new PartitionInfo("foo", 1, null, null, null)));
+		Map<TopicPartition, Long> endOffsets = new HashMap<>();
+		endOffsets.put(foo0, 100L);
+		endOffsets.put(foo1, 50L);
+		given(consumer.endOffsets(anyCollection(), any(Duration.class))).willReturn(endOffsets);
+		long timestamp = System.currentTimeMillis() - 60_000L;
+		given(consumer.poll(any(Duration.class))).willReturn(new ConsumerRecords<>(
+				Collections.singletonMap(foo0, Collections.singletonList(new ConsumerRecord<>(
+						"foo", 0, 40L, timestamp, TimestampType.CREATE_TIME, 0L, 0, 0, null, null)))));
+		AdminClient adminClient = mock(AdminClient.class);
+		ListConsumerGroupOffsetsResult result = mock(ListConsumerGroupOffsetsResult.class);
+		Map<TopicPartition, OffsetAndMetadata> committed = new HashMap<>();
+		committed.put(foo0, new OffsetAndMetadata(40L));
+		committed.put(foo1, new OffsetAndMetadata(50L));
+		given(result.partitionsToOffsetAndMetadata()).willReturn(KafkaFuture.completedFuture(committed));
+		given(adminClient.listConsumerGroupOffsets("group")).willReturn(result);
+
+		ConsumerLagSampler sampler = new ConsumerLagSampler(() -> consumer, () -> adminClient,
+				Duration.ofHours(1), Duration.ofHours(1), Duration.ofSeconds(10), true);
+		sampler.register("foo", "group");
+		sampler.stop();
+		clearInvocations(consumer);
+		sampler.sample();
+
+		assertThat(sampler.getLag(foo0, "group")).isEqualTo(60.0);
+		assertThat(sampler.getLag(foo1, "group")).isEqualTo(0.0);
+		assertThat(sampler.getTimeLag(foo0, "group")).isGreaterThanOrEqualTo(60_000.0);
+		assertThat(sampler.getTimeLag(foo1, "group")).isEqualTo(0.0);
+		assertThat(sampler.getTimeLag("foo", "group")).isGreaterThanOrEqualTo(60_000.0);
+		verify(consumer).seek(foo0, 40L);
+		verify(consumer).assign(Collections.singleton(foo0));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testListenersNotifiedOfNewPartitions() {
+		Consumer<?, ?> consumer = mock(Consumer.class);
+		TopicPartition foo0 = new TopicPartition("foo", 0);
+		TopicPartition foo1 = new TopicPartition("foo", 1);
+		given(consumer.partitionsFor("foo")).willReturn(Collections.singletonList(
+				new PartitionInfo("foo", 0, null, null, null)));
+		Map<TopicPartition, Long> endOffsets = new HashMap<>();
+		endOffsets.put(foo0, 100L);
+		endOffsets.put(foo1, 100L);
+		given(consumer.endOffsets(anyCollection(), any(Duration.class))).willReturn(endOffsets);
+		AdminClient adminClient = mock(AdminClient.class);
+		ListConsumerGroupOffsetsResult result = mock(ListConsumerGroupOffsetsResult.class);
+		Map<TopicPartition, OffsetAndMetadata> committed = new HashMap<>();
+		committed.put(foo0, new OffsetAndMetadata(40L));
+		committed.put(foo1, new OffsetAndMetadata(40L));
+		given(result.partitionsToOffsetAndMetadata()).willReturn(KafkaFuture.completedFuture(committed));
+		given(adminClient.listConsumerGroupOffsets("group")).willReturn(result);
+
+		ConsumerLagSampler sampler = new ConsumerLagSampler(() -> consumer, () -> adminClient,
+				Duration.ofHours(1), Duration.ofHours(1), Duration.ofSeconds(10), false);
+		sampler.register("foo", "group");
+		sampler.stop();
+		sampler.sample();
+		List<TopicPartition> notified = new ArrayList<>();
+		sampler.addPartitionListener((group, partition) -> notified.add(partition));
+		assertThat(notified).containsExactly(foo0);
+
+		given(consumer.partitionsFor("foo")).willReturn(Arrays.asList(
+				new PartitionInfo("foo", 0, null, null, null),
+				new PartitionInfo("foo", 1, null, null, null)));
+		sampler.sample();
+		sampler.sample();
+		assertThat(notified).containsExactly(foo0, foo1);
+		assertThat(sampler.getLag(foo1, "group")).isEqualTo(60.0);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testConsumerClosedOnSamplerThreadWhenStoppedDuringSample() throws Exception {
+		Consumer<?, ?> consumer = mock(Consumer.class);
+		given(consumer.partitionsFor("foo")).willReturn(Collections.singletonList(
+				new PartitionInfo("foo", 0, null, null, null)));
+		CountDownLatch sampling = new CountDownLatch(1);
+		willAnswer((invocation) -> {
+			sampling.countDown();
+			Thread.sleep(60_000L);
+			return Collections.emptyMap();
+		}).given(consumer).endOffsets(anyCollection(), any(Duration.class));
+		AtomicReference<String> closedBy = new AtomicReference<>();
+		CountDownLatch closed = new CountDownLatch(1);
+		willAnswer((invocation) -> {
+			closedBy.set(Thread.currentThread().getName());
+			closed.countDown();
+			return null;
+		}).given(consumer).close();
+
+		ConsumerLagSampler sampler = new ConsumerLagSampler(() -> consumer, () -> mock(AdminClient.class),
+				Duration.ofHours(1), Duration.ofHours(1), Duration.ofMillis(100), false);
+		sampler.register("foo", "group");
+		assertThat(sampling.await(10, TimeUnit.SECONDS)).isTrue();
+		sampler.stop();
+		assertThat(closed.await(10, TimeUnit.SECONDS)).isTrue();
+		assertThat(closedBy.get()).startsWith("kafka-binder-lag-sampler-");
+		verify(consumer, times(1)).close();
+	}
+
+}
@@ -19,6 +19,7 @@ package org.springframework.cloud.stream.binder.kafka;
 import java.lang.reflect.Method;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -32,9 +33,13 @@ import java.util.stream.Collectors;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.Deserializer;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -42,19 +47,31 @@ import org.mockito.ArgumentCaptor;
 import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.cloud.stream.binder.Binding;
 import org.springframework.cloud.stream.binder.ExtendedConsumerProperties;
+import org.springframework.cloud.stream.binder.ExtendedProducerProperties;
 import org.springframework.cloud.stream.binder.kafka.properties.KafkaBinderConfigurationProperties;
 import org.springframework.cloud.stream.binder.kafka.properties.KafkaConsumerProperties;
+import org.springframework.cloud.stream.binder.kafka.properties.KafkaProducerProperties;
 import org.springframework.cloud.stream.binder.kafka.provisioning.KafkaTopicProvisioner;
 import org.springframework.cloud.stream.config.ListenerContainerCustomizer;
 import org.springframework.cloud.stream.provisioning.ConsumerDestination;
+import org.springframework.cloud.stream.provisioning.ProducerDestination;
 import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.test.util.TestUtils;
 import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.listener.AbstractMessageListenerContainer;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.support.ErrorMessage;
+import org.springframework.messaging.support.GenericMessage;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
@@ -316,4 +333,184 @@ public class KafkaBinderUnitTests {
 		messageChannelBinding.unbind();
 	}
 
+	@Test
+	public void testPooledProducerReacquiredWhenBindingRestarted() throws Exception {
+		KafkaBinderConfigurationProperties configurationProperties = new KafkaBinderConfigurationProperties(
+				new TestKafkaProperties());
+		configurationProperties.setProducerPoolEnabled(true);
+		KafkaTopicProvisioner provisioningProvider = mock(KafkaTopicProvisioner.class);
+		ProducerDestination dest = mock(ProducerDestination.class);
+		given(dest.getName()).willReturn("pooled");
+		given(provisioningProvider.provisionProducerDestination(anyString(), any())).willReturn(dest);
+		given(provisioningProvider.getPartitionsForTopic(anyInt(), anyBoolean(), any(), any()))
+				.willReturn(Collections.singletonList(new PartitionInfo("pooled", 0, null, null, null)));
+		KafkaMessageChannelBinder binder = new KafkaMessageChannelBinder(configurationProperties,
+				provisioningProvider);
+		GenericApplicationContext context = new GenericApplicationContext();
+		context.refresh();
+		binder.setApplicationContext(context);
+		KafkaProducerProperties extension = new KafkaProducerProperties();
+		extension.setMaxInFlight(10);
+		Binding<MessageChannel> binding = binder.bindProducer("pooled", new DirectChannel(),
+				new ExtendedProducerProperties<>(extension));
+		ProducerFactoryPool pool = binder.getProducerFactoryPool();
+		assertThat(pool.getReferenceCount()).isEqualTo(1);
+		assertThat(binder.getSendWindows()).hasSize(1);
+
+		binding.stop();
+		assertThat(pool.getReferenceCount()).isEqualTo(0);
+		assertThat(binder.getSendWindows()).isEmpty();
+
+		binding.start();
+		assertThat(pool.getReferenceCount()).isEqualTo(1);
+		assertThat(binder.getSendWindows()).hasSize(1);
+		binding.unbind();
+		assertThat(pool.getReferenceCount()).isEqualTo(0);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testBatchModeSendsListElementsAsOneBatch() throws Exception {
+		MockProducer<byte[], byte[]> producer = new MockProducer<byte[], byte[]>(true,
+				new ByteArraySerializer(), new ByteArraySerializer()) {
+
+			@Override
+			public void close() {
+			}
+
+			@Override
+			public void close(Duration timeout) {
+			}
+
+		};
+		KafkaMessageChannelBinder binder = batchModeBinder(producer);
+		GenericApplicationContext context = new GenericApplicationContext();
+		QueueChannel metadata = new QueueChannel();
+		context.registerBean("metadata", QueueChannel.class, () -> metadata);
+		context.refresh();
+		binder.setApplicationContext(context);
+		DirectChannel channel = new DirectChannel();
+		KafkaProducerProperties extension = new KafkaProducerProperties();
+		extension.setBatchMode(true);
+		extension.setSync(true);
+		extension.setRecordMetadataChannel("metadata");
+		extension.setMessageKeyExpression(new SpelExpressionParser().parseExpression("payload"));
+		ExtendedProducerProperties<KafkaProducerProperties> producerProperties = new ExtendedProducerProperties<>(
+				extension);
+		producerProperties.setUseNativeEncoding(true);
+		Binding<MessageChannel> binding = binder.bindProducer("batch", channel, producerProperties);
+		channel.send(new GenericMessage<>(Arrays.asList("foo".getBytes(), "bar".getBytes(), null)));
+
+		assertThat(producer.history()).hasSize(3);
+		assertThat(producer.history().get(1).value()).isEqualTo("bar".getBytes());
+		assertThat(producer.history().get(1).key()).isEqualTo("bar".getBytes());
+		assertThat(producer.history().get(2).value()).isNull();
+		assertThat(producer.flushed()).isTrue();
+		Message<?> result = metadata.receive(10_000);
+		assertThat(result).isNotNull();
+		assertThat((List<RecordMetadata>) result.getHeaders().get(KafkaHeaders.RECORD_METADATA)).hasSize(3);
+		assertThat(metadata.receive(0)).isNull();
+		binding.unbind();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testBatchModeFailureReportsMetadataOfSentRecords() throws Exception {
+		MockProducer<byte[], byte[]> producer = new MockProducer<byte[], byte[]>(false,
+				new ByteArraySerializer(), new ByteArraySerializer()) {
+
+			@Override
+			public void flush() {
+				// completed by the test
+			}
+
+			@Override
+			public void close() {
+			}
+
+			@Override
+			public void close(Duration timeout) {
+			}
+
+		};
+		KafkaMessageChannelBinder binder = batchModeBinder(producer);
+		GenericApplicationContext context = new GenericApplicationContext();
+		context.refresh();
+		binder.setApplicationContext(context);
+		DirectChannel channel = new DirectChannel();
+		KafkaProducerProperties extension = new KafkaProducerProperties();
+		extension.setBatchMode(true);
+		ExtendedProducerProperties<KafkaProducerProperties> producerProperties = new ExtendedProducerProperties<>(
+				extension);
+		producerProperties.setUseNativeEncoding(true);
+		producerProperties.setErrorChannelEnabled(true);
+		Binding<MessageChannel> binding = binder.bindProducer("batch", channel, producerProperties);
+		QueueChannel errors = new QueueChannel();
+		context.getBean("batch.errors", SubscribableChannel.class).subscribe(errors::send);
+		channel.send(new GenericMessage<>(Arrays.asList("foo".getBytes(), "bar".getBytes(), "baz".getBytes())));
+		producer.completeNext();
+		producer.errorNext(new IllegalStateException("failed"));
+		assertThat(errors.receive(0)).isNull();
+		producer.completeNext();
+
+		Message<?> error = errors.receive(10_000);
+		assertThat(error).isInstanceOf(ErrorMessage.class);
+		List<RecordMetadata> metadata = (List<RecordMetadata>) error.getHeaders().get(KafkaHeaders.RECORD_METADATA);
+		assertThat(metadata).hasSize(3);
+		assertThat(metadata.get(0)).isNotNull();
+		assertThat(metadata.get(1)).isNull();
+		assertThat(metadata.get(2)).isNotNull();
+		binding.unbind();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testBatchModeRejectsMessageKeyPassthrough() throws Exception {
+		KafkaMessageChannelBinder binder = batchModeBinder(mock(Producer.class));
+		GenericApplicationContext context = new GenericApplicationContext();
+		context.refresh();
+		binder.setApplicationContext(context);
+		KafkaProducerProperties extension = new KafkaProducerProperties();
+		extension.setBatchMode(true);
+		extension.setMessageKeyPassthrough(true);
+		ExtendedProducerProperties<KafkaProducerProperties> producerProperties = new ExtendedProducerProperties<>(
+				extension);
+		producerProperties.setUseNativeEncoding(true);
+		assertThatThrownBy(() -> binder.bindProducer("batch", new DirectChannel(), producerProperties))
+				.hasStackTraceContaining("messageKeyPassthrough");
+	}
+
+	private KafkaMessageChannelBinder batchModeBinder(Producer<byte[], byte[]> producer) {
+		KafkaBinderConfigurationProperties configurationProperties = new KafkaBinderConfigurationProperties(
+				new TestKafkaProperties());
+		KafkaTopicProvisioner provisioningProvider = mock(KafkaTopicProvisioner.class);
+		ProducerDestination dest = mock(ProducerDestination.class);
+		given(dest.getName()).willReturn("batch");
+		given(provisioningProvider.provisionProducerDestination(anyString(), any())).willReturn(dest);
+		given(provisioningProvider.getPartitionsForTopic(anyInt(), anyBoolean(), any(), any()))
+				.willReturn(Collections.singletonList(new PartitionInfo("batch", 0, null, null, null)));
+		return new KafkaMessageChannelBinder(configurationProperties, provisioningProvider) {
+
+			@Override
+			protected DefaultKafkaProducerFactory<byte[], byte[]> getProducerFactory(String transactionIdPrefix,
+					ExtendedProducerProperties<KafkaProducerProperties> producerProperties) {
+
+				return new DefaultKafkaProducerFactory<byte[], byte[]>(Collections.emptyMap()) {
+
+					@Override
+					public Producer<byte[], byte[]> createProducer() {
+						return producer;
+					}
+
+					@Override
+					public Producer<byte[], byte[]> createProducer(String txIdPrefix) {
+						return producer;
+					}
+
+				};
+			}
+
+		};
+	}
+
 }
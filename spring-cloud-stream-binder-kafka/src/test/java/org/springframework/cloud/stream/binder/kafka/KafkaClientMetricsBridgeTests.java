@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import java.util.Collections;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.Metrics;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author agent
+ */
+public class KafkaClientMetricsBridgeTests {
+
+	@Test
+	public void testClientMetricsRegisteredAndRemoved() {
+		MeterRegistry registry = new SimpleMeterRegistry();
+		KafkaClientMetricsBridge bridge = new KafkaClientMetricsBridge(registry);
+		Metrics metrics = new Metrics();
+		MetricName latency = metrics.metricName("fetch-latency-avg", "consumer-fetch-manager-metrics",
+				"desc", Collections.singletonMap("client-id", "consumer-1"));
+		metrics.addMetric(latency, (config, now) -> 42.0);
+		Object owner = new Object();
+		bridge.bind(owner, metrics::metrics, Collections.singletonMap("binding", "input"));
+
+		assertThat(registry.get("kafka.consumer.fetch.manager.fetch.latency.avg")
+				.tag("client-id", "consumer-1").tag("binding", "input").gauge().value())
+						.isEqualTo(42.0);
+
+		MetricName total = metrics.metricName("records-consumed-total", "consumer-fetch-manager-metrics",
+				"desc", Collections.singletonMap("client-id", "consumer-1"));
+		metrics.addMetric(total, (config, now) -> 7.0);
+		bridge.refresh();
+		assertThat(registry.get("kafka.consumer.fetch.manager.records.consumed.total")
+				.functionCounter().count()).isEqualTo(7.0);
+		assertThat(bridge.getMeterCount()).isEqualTo(registry.getMeters().size());
+
+		bridge.unbind(owner);
+		assertThat(registry.find("kafka.consumer.fetch.manager.fetch.latency.avg").gauge()).isNull();
+		assertThat(bridge.getMeterCount()).isEqualTo(0);
+		bridge.destroy();
+		metrics.close();
+	}
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author agent
+ */
+public class KafkaExpressionEvaluatingInterceptorTests {
+
+	@Test
+	public void testKeyPassedThroughHolderWithoutCopy() {
+		MessageKeyHolder holder = new MessageKeyHolder();
+		DirectChannel channel = new DirectChannel();
+		channel.addInterceptor(new KafkaExpressionEvaluatingInterceptor(
+				new SpelExpressionParser().parseExpression("payload.length() > 3 ? payload : null"),
+				new StandardEvaluationContext(), holder));
+		List<Message<?>> received = new ArrayList<>();
+		List<Object> keys = new ArrayList<>();
+		channel.subscribe((message) -> {
+			received.add(message);
+			keys.add(holder.take(message));
+		});
+		Message<String> message = MessageBuilder.withPayload("quux").build();
+		channel.send(message);
+		channel.send(MessageBuilder.withPayload("foo").build());
+
+		assertThat(received.get(0)).isSameAs(message);
+		assertThat(received.get(0).getHeaders())
+				.doesNotContainKey(KafkaExpressionEvaluatingInterceptor.MESSAGE_KEY_HEADER);
+		assertThat(keys).containsExactly("quux", null);
+		assertThat(holder.take(MessageBuilder.withPayload("bar")
+				.setHeader(KafkaExpressionEvaluatingInterceptor.MESSAGE_KEY_HEADER, "baz").build()))
+						.isEqualTo("baz");
+	}
+
+}
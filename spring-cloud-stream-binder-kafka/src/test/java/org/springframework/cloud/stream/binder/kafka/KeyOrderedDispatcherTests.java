@@ -0,0 +1,196 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.AcknowledgingConsumerAwareMessageListener;
+import org.springframework.kafka.support.Acknowledgment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author agent
+ */
+public class KeyOrderedDispatcherTests {
+
+	@Test
+	public void testOnlyContiguousOffsetsAcknowledged() {
+		KeyOrderedDispatcher.OffsetTracker tracker = new KeyOrderedDispatcher.OffsetTracker();
+		Acknowledgment ack0 = mock(Acknowledgment.class);
+		Acknowledgment ack1 = mock(Acknowledgment.class);
+		Acknowledgment ack2 = mock(Acknowledgment.class);
+		tracker.register(0L, ack0);
+		tracker.register(1L, ack1);
+		tracker.register(2L, ack2);
+		tracker.complete(2L);
+		verify(ack2, never()).acknowledge();
+		tracker.complete(1L);
+		verify(ack1, never()).acknowledge();
+		tracker.complete(0L);
+		verify(ack0, never()).acknowledge();
+		verify(ack1, never()).acknowledge();
+		verify(ack2).acknowledge();
+		assertThat(tracker.getPendingCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void testDeregisteredOffsetNotAwaited() {
+		KeyOrderedDispatcher.OffsetTracker tracker = new KeyOrderedDispatcher.OffsetTracker();
+		Acknowledgment ack0 = mock(Acknowledgment.class);
+		Acknowledgment ack1 = mock(Acknowledgment.class);
+		tracker.register(0L, ack0);
+		tracker.register(1L, ack1);
+		tracker.deregister(1L);
+		tracker.complete(0L);
+		verify(ack0).acknowledge();
+		verify(ack1, never()).acknowledge();
+		assertThat(tracker.getPendingCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void testDrainWaitsForRevokedPartitionsOnly() throws Exception {
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AcknowledgingConsumerAwareMessageListener<Object, Object> delegate =
+				(record, acknowledgment, consumer) -> {
+					if (record.partition() == 1) {
+						blocked.countDown();
+						try {
+							release.await(10, TimeUnit.SECONDS);
+						}
+						catch (InterruptedException ex) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				};
+		KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher("test", 2, 10, new PartitionPauser());
+		dispatcher.start(delegate);
+		Acknowledgment ack0 = mock(Acknowledgment.class);
+		Acknowledgment ack1 = mock(Acknowledgment.class);
+		// the keys select different workers
+		dispatcher.onMessage(new ConsumerRecord<>("foo", 1, 0, 1, "value"), ack1, mock(Consumer.class));
+		dispatcher.onMessage(new ConsumerRecord<>("foo", 0, 0, 0, "value"), ack0, mock(Consumer.class));
+		assertThat(blocked.await(10, TimeUnit.SECONDS)).isTrue();
+		long start = System.currentTimeMillis();
+		dispatcher.drain(Collections.singletonList(new TopicPartition("foo", 0)), 10_000L);
+		assertThat(System.currentTimeMillis() - start).isLessThan(5_000L);
+		verify(ack0).acknowledge();
+		verify(ack1, never()).acknowledge();
+		release.countDown();
+		dispatcher.drain(Collections.singletonList(new TopicPartition("foo", 1)), 10_000L);
+		verify(ack1).acknowledge();
+		dispatcher.stop(10_000L);
+	}
+
+	@Test
+	public void testPerKeyOrderingAndDrain() throws Exception {
+		Map<Object, List<Long>> processed = new ConcurrentHashMap<>();
+		CountDownLatch latch = new CountDownLatch(100);
+		AcknowledgingConsumerAwareMessageListener<Object, Object> delegate =
+				(record, acknowledgment, consumer) -> {
+					processed.computeIfAbsent(record.key(),
+							(k) -> Collections.synchronizedList(new ArrayList<>())).add(record.offset());
+					latch.countDown();
+				};
+		KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher("test", 4, 10, new PartitionPauser());
+		dispatcher.start(delegate);
+		Acknowledgment last = mock(Acknowledgment.class);
+		for (int i = 0; i < 100; i++) {
+			ConsumerRecord<Object, Object> record = new ConsumerRecord<>("foo", 0, i,
+					"key" + (i % 7), "value");
+			dispatcher.onMessage(record, i == 99 ? last : mock(Acknowledgment.class),
+					mock(Consumer.class));
+		}
+		assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+		dispatcher.drain(Collections.singletonList(new TopicPartition("foo", 0)), 10_000L);
+		verify(last).acknowledge();
+		assertThat(processed).hasSize(7);
+		processed.values().forEach((offsets) -> assertThat(offsets).isSorted());
+		dispatcher.stop(10_000L);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testPartitionPausedWhenQueueFullAndResumedBeforePollWhenDrained() throws Exception {
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch processed = new CountDownLatch(4);
+		AcknowledgingConsumerAwareMessageListener<Object, Object> delegate =
+				(record, acknowledgment, consumer) -> {
+					if (record.offset() == 0) {
+						blocked.countDown();
+						try {
+							release.await(10, TimeUnit.SECONDS);
+						}
+						catch (InterruptedException ex) {
+							Thread.currentThread().interrupt();
+						}
+					}
+					processed.countDown();
+				};
+		TopicPartition partition = new TopicPartition("foo", 0);
+		Consumer<Object, Object> target = mock(Consumer.class);
+		given(target.assignment()).willReturn(Collections.singleton(partition));
+		ConsumerFactory<Object, Object> consumerFactory = mock(ConsumerFactory.class);
+		given(consumerFactory.createConsumer(any(), any(), any(), any())).willReturn(target);
+		PartitionPauser pauser = new PartitionPauser();
+		Consumer<Object, Object> consumer = pauser.decorate(consumerFactory).createConsumer("group", "client",
+				null, null);
+		KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher("test", 1, 2, pauser);
+		dispatcher.start(delegate);
+		dispatcher.onMessage(new ConsumerRecord<>("foo", 0, 0, "key", "value"), mock(Acknowledgment.class),
+				consumer);
+		assertThat(blocked.await(10, TimeUnit.SECONDS)).isTrue();
+		dispatcher.onMessage(new ConsumerRecord<>("foo", 0, 1, "key", "value"), mock(Acknowledgment.class),
+				consumer);
+		verify(target, never()).pause(any());
+		dispatcher.onMessage(new ConsumerRecord<>("foo", 0, 2, "key", "value"), mock(Acknowledgment.class),
+				consumer);
+		verify(target).pause(Collections.singleton(partition));
+		// queued beyond the capacity rather than blocking the consumer thread
+		dispatcher.onMessage(new ConsumerRecord<>("foo", 0, 3, "key", "value"), mock(Acknowledgment.class),
+				consumer);
+
+		consumer.poll(Duration.ZERO);
+		verify(target, never()).resume(any());
+		release.countDown();
+		assertThat(processed.await(10, TimeUnit.SECONDS)).isTrue();
+		consumer.poll(Duration.ZERO);
+		verify(target).resume(Collections.singleton(partition));
+		dispatcher.stop(10_000L);
+	}
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import org.junit.Test;
+
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author agent
+ */
+public class MessageExpressionsTests {
+
+	@Test
+	public void testHeaderLookups() {
+		EvaluationContext context = new StandardEvaluationContext();
+		Message<String> message = MessageBuilder.withPayload("foo").setHeader("topic", "bar")
+				.setHeader("partition", 2).setHeader("empty", "").build();
+		assertThat(MessageExpressions.header("partition").getValue(context, message, Integer.class))
+				.isEqualTo(2);
+		assertThat(MessageExpressions.header("missing").getValue(context, message)).isNull();
+		assertThat(MessageExpressions.headerOrDefault("topic", "baz").getValue(context, message, String.class))
+				.isEqualTo("bar");
+		assertThat(MessageExpressions.headerOrDefault("missing", "baz").getValue(context, message, String.class))
+				.isEqualTo("baz");
+		assertThat(MessageExpressions.headerOrDefault("empty", "baz").getValue(context, message, String.class))
+				.isEqualTo("baz");
+	}
+
+	@Test
+	public void testCompiledExpressionFallsBackToInterpreter() {
+		EvaluationContext context = new StandardEvaluationContext();
+		Expression expression = MessageExpressions.compile(
+				new SpelExpressionParser().parseExpression("payload.length()"), context);
+		for (int i = 0; i < 3; i++) {
+			assertThat(expression.getValue(context, MessageBuilder.withPayload("foo").build()))
+					.isEqualTo(3);
+		}
+		assertThat(expression.getValue(context, MessageBuilder.withPayload(new StringBuilder("quux")).build()))
+				.isEqualTo(4);
+		assertThat(expression.getValue(context, MessageBuilder.withPayload("ab").build())).isEqualTo(2);
+	}
+
+}
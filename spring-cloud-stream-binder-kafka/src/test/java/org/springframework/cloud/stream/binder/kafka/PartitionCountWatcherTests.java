@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.DescribeTopicsResult;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.TopicPartitionInfo;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author agent
+ */
+public class PartitionCountWatcherTests {
+
+	@Test
+	public void testListenerNotifiedOnGrowthOnly() {
+		AdminClient adminClient = mock(AdminClient.class);
+		DescribeTopicsResult result = mock(DescribeTopicsResult.class);
+		given(adminClient.describeTopics(anyCollection())).willReturn(result);
+		PartitionCountWatcher watcher = new PartitionCountWatcher(() -> adminClient,
+				Duration.ofHours(1), Duration.ofSeconds(10));
+		List<Integer> notified = new ArrayList<>();
+		watcher.watch("owner", "foo", 2, (previous, infos) -> {
+			notified.add(previous);
+			notified.add(infos.size());
+		});
+		watcher.stop();
+
+		given(result.values()).willReturn(Collections.singletonMap("foo",
+				KafkaFuture.completedFuture(description("foo", 2))));
+		watcher.refresh();
+		assertThat(notified).isEmpty();
+
+		given(result.values()).willReturn(Collections.singletonMap("foo",
+				KafkaFuture.completedFuture(description("foo", 4))));
+		watcher.refresh();
+		watcher.refresh();
+		assertThat(notified).containsExactly(2, 4);
+
+		watcher.unwatch("owner");
+		given(result.values()).willReturn(Collections.singletonMap("foo",
+				KafkaFuture.completedFuture(description("foo", 6))));
+		watcher.refresh();
+		assertThat(notified).containsExactly(2, 4);
+	}
+
+	private static TopicDescription description(String topic, int partitions) {
+		List<TopicPartitionInfo> infos = new ArrayList<>();
+		for (int i = 0; i < partitions; i++) {
+			infos.add(new TopicPartitionInfo(i, null, Collections.emptyList(),
+					Collections.emptyList()));
+		}
+		return new TopicDescription(topic, false, infos);
+	}
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.junit.Test;
+
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author agent
+ */
+public class ProducerFactoryPoolTests {
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testEquivalentConfigurationsShareFactory() {
+		ProducerFactoryPool pool = new ProducerFactoryPool();
+		DefaultKafkaProducerFactory<byte[], byte[]> factory = mock(DefaultKafkaProducerFactory.class);
+		DefaultKafkaProducerFactory<byte[], byte[]> other = mock(DefaultKafkaProducerFactory.class);
+
+		DefaultKafkaProducerFactory<byte[], byte[]> first = pool.acquire(config("1"), (c) -> factory);
+		DefaultKafkaProducerFactory<byte[], byte[]> second = pool.acquire(config("1"), (c) -> other);
+		DefaultKafkaProducerFactory<byte[], byte[]> third = pool.acquire(config("5"), (c) -> other);
+
+		assertThat(first).isSameAs(factory);
+		assertThat(second).isSameAs(factory);
+		assertThat(third).isSameAs(other);
+		assertThat(pool.getFactoryCount()).isEqualTo(2);
+		assertThat(pool.getReferenceCount()).isEqualTo(3);
+
+		assertThat(pool.release(factory)).isTrue();
+		verify(factory, never()).destroy();
+		assertThat(pool.release(factory)).isTrue();
+		verify(factory).destroy();
+		assertThat(pool.getFactoryCount()).isEqualTo(1);
+		assertThat(pool.getReferenceCount()).isEqualTo(1);
+		assertThat(pool.release(factory)).isFalse();
+	}
+
+	private static Map<String, Object> config(String lingerMs) {
+		Map<String, Object> config = new HashMap<>();
+		config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
+		config.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+		return config;
+	}
+
+}
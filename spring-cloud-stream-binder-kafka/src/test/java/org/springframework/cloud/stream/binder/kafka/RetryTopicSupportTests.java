@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.ListenerExecutionFailedException;
+import org.springframework.kafka.listener.MessageListener;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.TaskScheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author agent
+ */
+public class RetryTopicSupportTests {
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testRecordNotDueIsRejected() {
+		MessageListener<Object, Object> delegate = mock(MessageListener.class);
+		RetryTopicSupport.DueTimeAwareMessageListener listener =
+				new RetryTopicSupport.DueTimeAwareMessageListener(delegate);
+		long due = System.currentTimeMillis() + 60_000;
+		ConsumerRecord<Object, Object> record = retryRecord(0, due);
+		assertThatThrownBy(() -> listener.onMessage(record, null, null))
+				.isInstanceOf(RetryTopicSupport.RetryNotDueException.class);
+		verify(delegate, never()).onMessage(any(), any(), any());
+
+		ConsumerRecord<Object, Object> dueRecord = retryRecord(1, System.currentTimeMillis() - 1);
+		listener.onMessage(dueRecord, null, null);
+		verify(delegate).onMessage(dueRecord, null, null);
+		assertThat(RetryTopicSupport.retryAttempt(dueRecord.headers())).isEqualTo(1);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testPartitionPausedUntilDue() {
+		TaskScheduler scheduler = mock(TaskScheduler.class);
+		Consumer<Object, Object> target = mock(Consumer.class);
+		ConsumerFactory<Object, Object> consumerFactory = mock(ConsumerFactory.class);
+		given(consumerFactory.createConsumer(any(), any(), any())).willReturn(target);
+		PartitionPauser pauser = new PartitionPauser();
+		Consumer<Object, Object> consumer = pauser.decorate(consumerFactory).createConsumer("bar", null, null);
+		MessageListenerContainer container = mock(MessageListenerContainer.class);
+		TopicPartition partition = new TopicPartition("retry-1s.foo.bar", 0);
+		given(target.assignment()).willReturn(new HashSet<>(Arrays.asList(partition,
+				new TopicPartition("retry-1s.foo.bar", 1))));
+		long due = System.currentTimeMillis() + 60_000;
+		RetryTopicSupport.DueTimeErrorHandler handler = new RetryTopicSupport.DueTimeErrorHandler(scheduler,
+				pauser);
+		handler.handle(new ListenerExecutionFailedException("test",
+						new RetryTopicSupport.RetryNotDueException(due)),
+				Arrays.asList(retryRecord(3, due), retryRecord(4, due)), consumer, container);
+		verify(target).seek(partition, 3L);
+		verify(target).pause(Collections.singleton(partition));
+		verify(container, never()).pause();
+		ArgumentCaptor<Runnable> resume = ArgumentCaptor.forClass(Runnable.class);
+		verify(scheduler).schedule(resume.capture(), eq(new Date(due)));
+
+		consumer.poll(Duration.ZERO);
+		verify(target, never()).resume(any());
+		resume.getValue().run();
+		consumer.poll(Duration.ZERO);
+		verify(target).resume(Collections.singleton(partition));
+	}
+
+	@Test
+	public void testUnexpectedErrorSkipsFailedRecord() {
+		TaskScheduler scheduler = mock(TaskScheduler.class);
+		Consumer<?, ?> consumer = mock(Consumer.class);
+		MessageListenerContainer container = mock(MessageListenerContainer.class);
+		RetryTopicSupport.DueTimeErrorHandler handler = new RetryTopicSupport.DueTimeErrorHandler(scheduler,
+				new PartitionPauser());
+		handler.handle(new IllegalStateException("test"),
+				Arrays.asList(retryRecord(3, 0L), retryRecord(4, 0L)), consumer, container);
+		verify(consumer).seek(new TopicPartition("retry-1s.foo.bar", 0), 4L);
+		verify(consumer, never()).pause(any());
+	}
+
+	private static ConsumerRecord<Object, Object> retryRecord(long offset, long due) {
+		ConsumerRecord<Object, Object> record = new ConsumerRecord<>("retry-1s.foo.bar", 0,
+				offset, null, "foo");
+		record.headers().add(KafkaMessageChannelBinder.X_RETRY_ATTEMPT,
+				ByteBuffer.allocate(Integer.BYTES).putInt(1).array());
+		record.headers().add(KafkaMessageChannelBinder.X_RETRY_DUE_TIMESTAMP,
+				ByteBuffer.allocate(Long.BYTES).putLong(due).array());
+		return record;
+	}
+
+}
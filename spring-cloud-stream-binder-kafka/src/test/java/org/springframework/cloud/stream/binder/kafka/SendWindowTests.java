@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.stream.binder.kafka;
+
+import java.time.Duration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.junit.Test;
+
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.core.ProducerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author agent
+ */
+public class SendWindowTests {
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testSendsRejectedWhileWindowFull() {
+		MockProducer<byte[], byte[]> producer = new MockProducer<byte[], byte[]>(false,
+				new ByteArraySerializer(), new ByteArraySerializer()) {
+
+			@Override
+			public void close() {
+			}
+
+			@Override
+			public void close(Duration timeout) {
+			}
+
+		};
+		SendWindow window = new SendWindow("output", "foo", 2, 0);
+		ProducerFactory<byte[], byte[]> producerFactory = mock(ProducerFactory.class);
+		given(producerFactory.createProducer(isNull())).willReturn(producer);
+		SendWindow.WindowedKafkaTemplate template = new SendWindow.WindowedKafkaTemplate(producerFactory,
+				window);
+		template.send("foo", "a".getBytes());
+		template.send("foo", "b".getBytes());
+		assertThat(window.getInFlight()).isEqualTo(2);
+		assertThatThrownBy(() -> template.send("foo", "c".getBytes()))
+				.isInstanceOf(KafkaException.class)
+				.hasMessageContaining("2 records are in flight");
+
+		producer.completeNext();
+		assertThat(window.getInFlight()).isEqualTo(1);
+		template.send("foo", "c".getBytes());
+		producer.errorNext(new RuntimeException("test"));
+		producer.completeNext();
+		assertThat(window.getInFlight()).isEqualTo(0);
+		assertThat(producer.history()).hasSize(3);
+	}
+
+	@Test
+	public void testGaugeRegisteredOnceAndRemoved() {
+		MeterRegistry registry = new SimpleMeterRegistry();
+		SendWindow window = new SendWindow("output", "foo", 2, 0);
+		window.bindMeter(registry);
+		window.bindMeter(registry);
+		assertThat(registry.find(KafkaBinderMetrics.PRODUCER_IN_FLIGHT_METRIC_NAME).tag("binding", "output")
+				.gauges()).hasSize(1);
+		window.removeMeter();
+		assertThat(registry.find(KafkaBinderMetrics.PRODUCER_IN_FLIGHT_METRIC_NAME).gauges()).isEmpty();
+		window.bindMeter(registry);
+		assertThat(registry.find(KafkaBinderMetrics.PRODUCER_IN_FLIGHT_METRIC_NAME).gauge()).isNotNull();
+	}
+
+}